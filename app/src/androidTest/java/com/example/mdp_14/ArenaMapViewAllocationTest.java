@@ -0,0 +1,147 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that drawing {@link ArenaMapView} allocates nothing in steady state, with
+ * obstacles, a recognized target, a selection, the robot and a drag tooltip on screen,
+ * and that neither does handling drag moves.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ArenaMapViewAllocationTest {
+    private static final int SIZE_PX = 800;
+    private static final int WARMUP_FRAMES = 50;
+    private static final int FRAMES = 2000;
+
+    // The runtime counter is process-wide; leave room for unrelated background work
+    private static final long MAX_BYTES_PER_FRAME = 8;
+
+    @Test
+    public void steadyStateDrawAllocatesNothing() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final long[] allocated = {-1};
+
+        instrumentation.runOnMainSync(() -> {
+            ArenaMapView view = new ArenaMapView(instrumentation.getTargetContext());
+            view.measure(View.MeasureSpec.makeMeasureSpec(SIZE_PX, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(SIZE_PX, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, SIZE_PX, SIZE_PX);
+
+            Obstacle plain = new Obstacle(2, 2);
+            Obstacle recognized = new Obstacle(10, 5);
+            recognized.setRecognizedTargetId("A");
+            Obstacle dragged = new Obstacle(15, 15);
+            view.addObstacle(plain);
+            view.addObstacle(recognized);
+            view.addObstacle(dragged);
+            view.setSelectedObstacle(plain);
+            view.updateRobotPosition(1, 1, Robot.Direction.NORTH);
+
+            // Start dragging so the tooltip is drawn too
+            float cell = SIZE_PX / 25f;
+            long now = SystemClock.uptimeMillis();
+            float[] position = new float[2];
+            view.gridToScreen(dragged.getGridX(), dragged.getGridY(), position);
+            MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, position[0], position[1], 0);
+            MotionEvent move = MotionEvent.obtain(now, now + 16, MotionEvent.ACTION_MOVE,
+                    position[0] - cell, position[1], 0);
+            view.onTouchEvent(down);
+            view.onTouchEvent(move);
+            down.recycle();
+            move.recycle();
+
+            Bitmap bitmap = Bitmap.createBitmap(SIZE_PX, SIZE_PX, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                view.draw(canvas);
+            }
+
+            long before = allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) {
+                view.draw(canvas);
+            }
+            if (before >= 0) {
+                allocated[0] = allocatedBytes() - before;
+            }
+
+            bitmap.recycle();
+        });
+
+        assertTrue("Runtime does not report allocations", allocated[0] >= 0);
+        assertTrue("Allocated " + allocated[0] + " bytes over " + FRAMES + " frames",
+                allocated[0] <= FRAMES * MAX_BYTES_PER_FRAME);
+    }
+
+    @Test
+    public void dragMovesAllocateNothing() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final long[] allocated = {-1};
+
+        instrumentation.runOnMainSync(() -> {
+            ArenaMapView view = new ArenaMapView(instrumentation.getTargetContext());
+            view.measure(View.MeasureSpec.makeMeasureSpec(SIZE_PX, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(SIZE_PX, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, SIZE_PX, SIZE_PX);
+
+            Obstacle dragged = new Obstacle(10, 10);
+            view.addObstacle(new Obstacle(2, 2));
+            view.addObstacle(dragged);
+            view.addObstacle(new Obstacle(15, 5));
+
+            float cell = SIZE_PX / 25f;
+            long now = SystemClock.uptimeMillis();
+            float[] position = new float[2];
+            view.gridToScreen(dragged.getGridX(), dragged.getGridY(), position);
+            MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, position[0], position[1], 0);
+            MotionEvent move = MotionEvent.obtain(now, now + 4, MotionEvent.ACTION_MOVE, position[0], position[1], 0);
+            view.onTouchEvent(down);
+
+            // Each move lands one cell over from the last. The frame callback can't run
+            // while this holds the main thread, so every move is applied right away:
+            // snapping, re-indexing and invalidation all happen each time.
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                move.setLocation(position[0] + (i % 2) * cell, position[1]);
+                view.onTouchEvent(move);
+                view.flushTouchMove();
+            }
+            long before = allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) {
+                move.setLocation(position[0] + (i % 2) * cell, position[1]);
+                view.onTouchEvent(move);
+                view.flushTouchMove();
+            }
+            if (before >= 0) {
+                allocated[0] = allocatedBytes() - before;
+            }
+            // The last move was one cell right of the start
+            assertEquals(11, dragged.getGridX());
+
+            down.recycle();
+            move.recycle();
+        });
+
+        assertTrue("Runtime does not report allocations", allocated[0] >= 0);
+        assertTrue("Allocated " + allocated[0] + " bytes over " + FRAMES + " moves",
+                allocated[0] <= FRAMES * MAX_BYTES_PER_FRAME);
+    }
+
+    private static long allocatedBytes() {
+        String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        return value != null ? Long.parseLong(value) : -1;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+
+import android.app.Instrumentation;
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the inbound pipeline (BluetoothService -> conflation -> MainActivity ->
+ * ArenaMapView) with a {@link StandInRobot} over a loopback link at increasing
+ * telemetry rates, and writes one JSON result file per run to
+ * {@code <external files>/benchmarks/} for comparing builds:
+ *
+ *   adb pull /sdcard/Android/data/com.example.mdp_14/files/benchmarks
+ *
+ * Per rate it reports sustained throughput, dispatch latency percentiles (frame
+ * arrival to UI application), dropped UI frames and the heap allocation rate. The
+ * runtime only counts allocation for the whole process, which includes the stand-in
+ * robot building its messages, so each rate is also played into a sink that
+ * discards the bytes and that baseline is subtracted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InboundPipelineBenchmark {
+    private static final String TAG = "InboundPipelineBenchmark";
+
+    // A real run reports location at about 10-20 Hz; the top rates are 100x that
+    private static final double[] RATES_HZ = {20, 50, 100, 200, 500, 1000, 2000};
+    private static final long PHASE_MS = 3000;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+    private static final long HANDSHAKE_TIMEOUT_MS = 5_000;
+    private static final long MIN_TICK_MS = 4;
+
+    @Test
+    public void inboundThroughputAtIncreasingRates() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            final BluetoothService[] holder = new BluetoothService[1];
+            scenario.onActivity(activity -> holder[0] = activity.getBluetoothService());
+            BluetoothService service = holder[0];
+            final PipelineMetrics metrics = service.getPipelineMetrics();
+
+            LoopbackTransport[] pair = LoopbackTransport.createPair();
+            StandInRobot robot = new StandInRobot(false);
+            robot.connect(pair[1]);
+            service.connect(pair[0]);
+            awaitHandshake(instrumentation, metrics);
+
+            FrameTracker frames = new FrameTracker(metrics);
+            instrumentation.runOnMainSync(frames::start);
+
+            JSONArray results = new JSONArray();
+            try {
+                for (double rate : RATES_HZ) {
+                    results.put(measure(instrumentation, service, metrics, robot, rate));
+                }
+            } finally {
+                instrumentation.runOnMainSync(frames::stop);
+                robot.close();
+                service.stop();
+            }
+
+            JSONObject report = new JSONObject();
+            report.put("benchmark", "inbound-pipeline");
+            report.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+            report.put("sdk", Build.VERSION.SDK_INT);
+            report.put("timestamp", System.currentTimeMillis());
+            report.put("phase_ms", PHASE_MS);
+            report.put("results", results);
+            writeReport(instrumentation, report);
+        }
+    }
+
+    private JSONObject measure(Instrumentation instrumentation, BluetoothService service,
+                               final PipelineMetrics metrics, StandInRobot robot, double rate)
+            throws InterruptedException, JSONException {
+        // Keep ticks at least a few ms apart so sleep granularity doesn't cap the rate
+        int burst = (int) Math.max(1, Math.ceil(rate * MIN_TICK_MS / 1000.0));
+        StandInRobot.Phase phase = new StandInRobot.Phase()
+                .rate(rate)
+                .duration(PHASE_MS)
+                .burst(burst)
+                .statusEvery(20)
+                .imageRecEvery(100);
+
+        long robotAllocated = robotOnlyAllocation(phase);
+
+        instrumentation.runOnMainSync(metrics::reset);
+        long conflatedBefore = service.getInbound().getConflatedCount();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        long emitted = robot.play(phase);
+        long phaseEnd = System.nanoTime();
+
+        // Wait for the backlog to reach the UI
+        long deadline = phaseEnd + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MS);
+        while ((metrics.getFramesReceived() < emitted || service.getInbound().getPendingCount() > 0)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        instrumentation.waitForIdleSync();
+        long end = System.nanoTime();
+
+        long allocatedAfter = allocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 || robotAllocated < 0
+                ? -1 : Math.max(0, allocatedAfter - allocatedBefore - robotAllocated);
+        double seconds = (end - start) / 1e9;
+        LatencyHistogram latency = metrics.getDispatchLatency();
+
+        JSONObject result = new JSONObject();
+        result.put("rate_hz", rate);
+        result.put("emitted", emitted);
+        result.put("received", metrics.getFramesReceived());
+        result.put("applied", metrics.getEventsApplied());
+        result.put("conflated", service.getInbound().getConflatedCount() - conflatedBefore);
+        result.put("throughput_per_s", Math.round(metrics.getFramesReceived() / seconds));
+        result.put("drain_ms", TimeUnit.NANOSECONDS.toMillis(end - phaseEnd));
+        result.put("latency_p50_ms", latency.getPercentileMs(50));
+        result.put("latency_p90_ms", latency.getPercentileMs(90));
+        result.put("latency_p99_ms", latency.getPercentileMs(99));
+        result.put("latency_max_ms", latency.getMaxMs());
+        result.put("ui_frames", metrics.getUiFrames());
+        result.put("dropped_frames", metrics.getDroppedFrames());
+        result.put("alloc_bytes_per_s", allocated < 0 ? JSONObject.NULL : Math.round(allocated / seconds));
+        result.put("alloc_bytes_per_message", allocated < 0 || emitted == 0
+                ? JSONObject.NULL : allocated / emitted);
+        Log.i(TAG, result.toString());
+
+        // Telemetry is never lost, only conflated
+        assertEquals(emitted, metrics.getFramesReceived());
+        return result;
+    }
+
+    /**
+     * Wait for the robot's hello reply to reach the app. It goes through the same
+     * dispatch as telemetry, so it must land before the first reset or it is counted.
+     */
+    private static void awaitHandshake(Instrumentation instrumentation, PipelineMetrics metrics)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HANDSHAKE_TIMEOUT_MS);
+        while (metrics.getFramesReceived() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("no hello reply from the stand-in robot", 1, metrics.getFramesReceived());
+        instrumentation.waitForIdleSync();
+    }
+
+    /**
+     * Bytes the process allocates while a fresh robot plays phase into a sink that
+     * discards everything: the robot's own share of the pipeline measurement.
+     * Returns -1 if the runtime doesn't count allocation.
+     */
+    private static long robotOnlyAllocation(StandInRobot.Phase phase) throws InterruptedException {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        final InputStream sink = pair[0].getInputStream();
+        Thread drain = new Thread(() -> {
+            byte[] buffer = new byte[4096];
+            try {
+                while (sink.read(buffer, 0, buffer.length) != -1) {
+                    // Discard
+                }
+            } catch (IOException ignored) {
+                // Closed
+            }
+        }, "BenchmarkSink");
+        drain.start();
+
+        StandInRobot robot = new StandInRobot(false);
+        try {
+            robot.connect(pair[1]);
+            long before = allocatedBytes();
+            robot.play(phase);
+            long after = allocatedBytes();
+            return before < 0 || after < 0 ? -1 : after - before;
+        } catch (IOException e) {
+            throw new AssertionError("loopback connect failed", e);
+        } finally {
+            robot.close();
+            pair[0].close();
+            drain.join();
+        }
+    }
+
+    /**
+     * Bytes allocated by the whole process so far, or -1 if the runtime doesn't say
+     */
+    private static long allocatedBytes() {
+        String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        try {
+            return value != null ? Long.parseLong(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeReport(Instrumentation instrumentation, JSONObject report)
+            throws IOException, JSONException {
+        File dir = instrumentation.getTargetContext().getExternalFilesDir("benchmarks");
+        if (dir == null) {
+            throw new IOException("No external files directory");
+        }
+        String name = "inbound-pipeline-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".json";
+        File file = new File(dir, name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(report.toString(2));
+        }
+        Log.i(TAG, "Results written to " + file);
+    }
+
+    /**
+     * Feeds every UI frame to the metrics while a benchmark runs (main thread)
+     */
+    private static final class FrameTracker implements Choreographer.FrameCallback {
+        private final PipelineMetrics metrics;
+        private boolean running = false;
+
+        FrameTracker(PipelineMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        void start() {
+            running = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            running = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (running) {
+                metrics.onUiFrame(frameTimeNanos);
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+}
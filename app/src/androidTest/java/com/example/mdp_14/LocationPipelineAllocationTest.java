@@ -0,0 +1,127 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.os.Debug;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that steady-state location telemetry allocates nothing end to end: the
+ * service's reader thread, heartbeat tap, dispatch and metrics, the handler message
+ * to the activity, and the activity moving the robot on the arena map and redrawing.
+ *
+ * The robot side writes pre-encoded frames straight into a loopback link, so nothing
+ * but the app allocates while measuring.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LocationPipelineAllocationTest {
+    private static final int WARMUP_MESSAGES = 500;
+    private static final int MESSAGES = 2000;
+    private static final long MESSAGE_INTERVAL_MS = 1;
+
+    // The runtime counter is process-wide; leave room for unrelated background work
+    private static final long MAX_BYTES_PER_MESSAGE = 8;
+
+    @Test
+    public void steadyStateLocationAllocatesNothing() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        // Alternate JSON and binary poses sweeping across a row
+        byte[][] frames = new byte[34][];
+        for (int i = 0; i < frames.length; i++) {
+            int x = i % 17;
+            frames[i] = i % 2 == 0
+                    ? ("{\"cat\": \"location\", \"value\": {\"x\": " + x + ", \"y\": 4, \"d\": 2}}\n")
+                            .getBytes(StandardCharsets.UTF_8)
+                    : BinaryCodec.encodeLocation(x, 5, 4);
+        }
+
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            final BluetoothService[] holder = new BluetoothService[1];
+            scenario.onActivity(activity -> holder[0] = activity.getBluetoothService());
+            BluetoothService service = holder[0];
+            PipelineMetrics metrics = service.getPipelineMetrics();
+
+            // No pings while measuring; the location frames keep the link alive anyway
+            service.setHeartbeatTimeouts(60_000, 120_000);
+            LoopbackTransport[] pair = LoopbackTransport.createPair();
+            Thread drain = discard(pair[1].getInputStream());
+            OutputStream robot = pair[1].getOutputStream();
+            service.connect(pair[0]);
+
+            try {
+                // Answer the app's hello without resume, so nothing is held or retried
+                byte[] hello = "{\"cat\": \"hello\", \"value\": {\"codec\": \"json\"}}\n"
+                        .getBytes(StandardCharsets.UTF_8);
+                robot.write(hello, 0, hello.length);
+
+                // Warm up so buffers, pools and the handshake are out of the way
+                play(robot, frames, WARMUP_MESSAGES);
+                Thread.sleep(200);
+                instrumentation.waitForIdleSync();
+
+                long appliedBefore = metrics.getEventsApplied();
+                long before = allocatedBytes();
+                play(robot, frames, MESSAGES);
+                Thread.sleep(200);
+                instrumentation.waitForIdleSync();
+                long allocated = allocatedBytes() - before;
+                long applied = metrics.getEventsApplied() - appliedBefore;
+
+                assertTrue("Runtime does not report allocations", before >= 0);
+                // Conflated to about one per UI frame, but the apply path must have run
+                assertTrue("Applied only " + applied + " poses", applied > 10);
+                assertTrue("Allocated " + allocated + " bytes over " + MESSAGES + " messages",
+                        allocated <= MESSAGES * MAX_BYTES_PER_MESSAGE);
+            } finally {
+                service.stop();
+                pair[1].close();
+                drain.join();
+            }
+        }
+    }
+
+    private static void play(OutputStream robot, byte[][] frames, int count)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < count; i++) {
+            byte[] frame = frames[i % frames.length];
+            robot.write(frame, 0, frame.length);
+            Thread.sleep(MESSAGE_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Read and drop whatever the app sends, so its writes never block
+     */
+    private static Thread discard(final InputStream in) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[4096];
+            try {
+                while (in.read(buffer, 0, buffer.length) != -1) {
+                    // Discard
+                }
+            } catch (IOException ignored) {
+                // Closed
+            }
+        }, "RobotSideDrain");
+        thread.start();
+        return thread;
+    }
+
+    private static long allocatedBytes() {
+        String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        return value != null ? Long.parseLong(value) : -1;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recording through the real service and activity while disconnected,
+ * as between two connections.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TrafficReplayTest {
+    private static final long REPLAY_TIMEOUT_MS = 5000;
+
+    @Test
+    public void replayedHelloLeavesTheLinkStateAlone() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        File file = new File(instrumentation.getTargetContext().getCacheDir(), "replay-hello.mdpr");
+
+        // A robot that picks the binary codec and doesn't support resume, then reports a pose
+        TrafficRecorder recorder = new TrafficRecorder(file);
+        byte[] hello = "{\"cat\": \"hello\", \"value\": {\"codec\": \"bin1\"}}\n".getBytes(StandardCharsets.UTF_8);
+        byte[] location = "{\"cat\": \"location\", \"value\": {\"x\": 5, \"y\": 6, \"d\": 0}}\n"
+                .getBytes(StandardCharsets.UTF_8);
+        recorder.onInbound(hello, 0, hello.length);
+        recorder.onInbound(location, 0, location.length);
+        recorder.close();
+        assertTrue(recorder.awaitClosed(REPLAY_TIMEOUT_MS));
+
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            final BluetoothService[] holder = new BluetoothService[1];
+            scenario.onActivity(activity -> holder[0] = activity.getBluetoothService());
+            BluetoothService service = holder[0];
+
+            // The previous link negotiated resume and left a message to deliver on reconnect
+            service.setResumeEnabled(true);
+            SessionResume.Entry held = service.write("{\"cat\": \"control\", \"value\": \"held\"}",
+                    OutboundScheduler.PRIORITY_CONTROL);
+            assertNotNull(held);
+            String sessionId = service.getSessionId();
+            long lastSequence = service.getLastSequence();
+            long framesBefore = service.getPipelineMetrics().getFramesReceived();
+
+            service.startReplay(file, ReplayDriver.SPEED_MAX);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REPLAY_TIMEOUT_MS);
+            while (service.isReplaying() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertFalse("replay did not finish", service.isReplaying());
+            instrumentation.waitForIdleSync();
+
+            // Only the location reached the pipeline
+            assertEquals(framesBefore + 1, service.getPipelineMetrics().getFramesReceived());
+            assertTrue(service.isResumeEnabled());
+            assertEquals(sessionId, service.getSessionId());
+            assertEquals(lastSequence, service.getLastSequence());
+            final boolean[] binary = {true};
+            scenario.onActivity(current -> binary[0] = current.isBinaryCodecActive());
+            assertFalse(binary[0]);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.mdp_14;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index of the obstacles on the arena: a per-cell occupancy array of
+ * obstacle ids plus a sorted id array, so hit-testing a cell is O(1) and finding an
+ * obstacle by id a binary search, whatever the arena size. Everything is kept in
+ * plain arrays, so lookups and updates during a drag allocate nothing.
+ *
+ * The index remembers where it placed each obstacle, so after an obstacle is moved
+ * or resized {@link #update} can clear its old cells. Obstacles may overlap; a cell
+ * then belongs to the one added first, as with a scan of the obstacle list.
+ *
+ * Not thread-safe; the view uses it on the UI thread only.
+ */
+public class ArenaIndex {
+    private static final int EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int gridSize;
+    private final int[] cells;
+    private int count = 0;
+    // In insertion order, which decides ownership of overlapping cells
+    private Entry[] entries = new Entry[INITIAL_CAPACITY];
+    // The same entries sorted by obstacle id, for lookups by id
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private Entry[] byId = new Entry[INITIAL_CAPACITY];
+
+    /**
+     * An indexed obstacle and the cells it was placed on
+     */
+    private static final class Entry {
+        final Obstacle obstacle;
+        int left, bottom, right, top;  // Cell range [left, right) x [bottom, top), clipped to the grid
+
+        Entry(Obstacle obstacle) {
+            this.obstacle = obstacle;
+        }
+    }
+
+    public ArenaIndex(int gridSize) {
+        this.gridSize = gridSize;
+        this.cells = new int[gridSize * gridSize];
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Index an obstacle at its current position. Adding one that is already indexed
+     * (by id) replaces it.
+     */
+    public void add(Obstacle obstacle) {
+        int id = obstacle.getId();
+        remove(id);
+        Entry entry = new Entry(obstacle);
+        setBounds(entry);
+        if (count == entries.length) {
+            int capacity = count * 2;
+            entries = Arrays.copyOf(entries, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            byId = Arrays.copyOf(byId, capacity);
+        }
+        entries[count] = entry;
+        int index = -(Arrays.binarySearch(ids, 0, count, id) + 1);
+        System.arraycopy(ids, index, ids, index + 1, count - index);
+        System.arraycopy(byId, index, byId, index + 1, count - index);
+        ids[index] = id;
+        byId[index] = entry;
+        count++;
+        // Newest, so it only gets cells nobody else owns
+        fill(entry, entry.left, entry.bottom, entry.right, entry.top);
+    }
+
+    /**
+     * Re-index an obstacle after it moved or changed size
+     */
+    public void update(Obstacle obstacle) {
+        Entry entry = find(obstacle.getId());
+        if (entry == null || entry.obstacle != obstacle) {
+            return;
+        }
+        int left = entry.left;
+        int bottom = entry.bottom;
+        int right = entry.right;
+        int top = entry.top;
+        setBounds(entry);
+        refill(Math.min(left, entry.left), Math.min(bottom, entry.bottom),
+                Math.max(right, entry.right), Math.max(top, entry.top));
+    }
+
+    public void remove(Obstacle obstacle) {
+        Entry entry = find(obstacle.getId());
+        if (entry != null && entry.obstacle == obstacle) {
+            remove(obstacle.getId());
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0, count, null);
+        Arrays.fill(byId, 0, count, null);
+        count = 0;
+        Arrays.fill(cells, EMPTY);
+    }
+
+    /**
+     * The obstacle covering a cell, or null if it is empty or outside the grid
+     */
+    public Obstacle obstacleAt(int gridX, int gridY) {
+        if (gridX < 0 || gridX >= gridSize || gridY < 0 || gridY >= gridSize) {
+            return null;
+        }
+        int id = cells[gridY * gridSize + gridX];
+        return id == EMPTY ? null : findById(id);
+    }
+
+    public Obstacle findById(int id) {
+        Entry entry = find(id);
+        return entry != null ? entry.obstacle : null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private Entry find(int id) {
+        int index = Arrays.binarySearch(ids, 0, count, id);
+        return index >= 0 ? byId[index] : null;
+    }
+
+    private void remove(int id) {
+        int index = Arrays.binarySearch(ids, 0, count, id);
+        if (index < 0) {
+            return;
+        }
+        Entry entry = byId[index];
+        System.arraycopy(ids, index + 1, ids, index, count - index - 1);
+        System.arraycopy(byId, index + 1, byId, index, count - index - 1);
+        int order = 0;
+        while (entries[order] != entry) {
+            order++;
+        }
+        System.arraycopy(entries, order + 1, entries, order, count - order - 1);
+        count--;
+        entries[count] = null;
+        byId[count] = null;
+        refill(entry.left, entry.bottom, entry.right, entry.top);
+    }
+
+    /**
+     * Record the cells the obstacle covers now, clipped to the grid
+     */
+    private void setBounds(Entry entry) {
+        Obstacle obstacle = entry.obstacle;
+        entry.left = Math.max(0, obstacle.getGridX());
+        entry.bottom = Math.max(0, obstacle.getGridY());
+        entry.right = Math.min(gridSize, obstacle.getGridX() + obstacle.getWidth());
+        entry.top = Math.min(gridSize, obstacle.getGridY() + obstacle.getHeight());
+    }
+
+    /**
+     * Recompute the owners of a range of cells from every obstacle, in insertion
+     * order. Obstacles outside the range are skipped, so this is cheap when
+     * obstacles don't overlap.
+     */
+    private void refill(int left, int bottom, int right, int top) {
+        for (int y = bottom; y < top; y++) {
+            Arrays.fill(cells, y * gridSize + left, y * gridSize + Math.max(left, right), EMPTY);
+        }
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries[i];
+            fill(entry, Math.max(left, entry.left), Math.max(bottom, entry.bottom),
+                    Math.min(right, entry.right), Math.min(top, entry.top));
+        }
+    }
+
+    /**
+     * Claim the empty cells of a range for the entry's obstacle
+     */
+    private void fill(Entry entry, int left, int bottom, int right, int top) {
+        int id = entry.obstacle.getId();
+        for (int y = bottom; y < top; y++) {
+            int row = y * gridSize;
+            for (int x = left; x < right; x++) {
+                if (cells[row + x] == EMPTY) {
+                    cells[row + x] = id;
+                }
+            }
+        }
+    }
+}
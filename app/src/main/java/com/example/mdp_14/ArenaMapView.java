@@ -2,45 +2,106 @@ package com.example.mdp_14;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.SurfaceView;
 import android.view.View;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Custom view for displaying the MDP arena map with draggable obstacles and robot.
- * Supports a 20x20 grid with obstacles that can be placed, moved, and edited.
+ * The grid is 20x20 by default and can be set up to {@link #MAX_GRID_SIZE} cells a
+ * side; obstacles can be placed, moved, and edited.
+ *
+ * Pinch zooms and dragging empty space pans. Drag and pan moves are coalesced and
+ * applied once per frame, however fast the touch screen reports them.
+ *
+ * The view owns the model, touch handling and viewport; drawing is done by an
+ * {@link ArenaRenderer} from an {@link ArenaSnapshot} of that state. By default the
+ * snapshot is drawn right away in onDraw. With {@link #setRenderSurface} it is
+ * handed to an {@link ArenaRenderThread} instead, which draws it into a SurfaceView
+ * over this view, off the UI thread.
+ *
+ * Changes invalidate only the cells they touch: the union of an entity's previous
+ * and new bounds. The whole view is redrawn only when its size changes.
+ *
+ * The robot is drawn from a {@link RobotMotion}, stepped on every vsync while it
+ * moves, so location updates at a few Hz still animate at the display rate.
+ *
+ * An optional track overlay shows where the robot has been: a visit heatmap and the
+ * recent trail as a line.
  */
 public class ArenaMapView extends View {
-    private static final int GRID_SIZE = 20;
+    public static final int DEFAULT_GRID_SIZE = 20;
+    public static final int MIN_GRID_SIZE = 5;
+    public static final int MAX_GRID_SIZE = 200;
 
+    private static final float LABEL_MARGIN_LEFT = 30f;    // For row labels on left
+    private static final float LABEL_MARGIN_BOTTOM = 30f;  // For column labels at bottom
+
+    // Zoom stops when cells reach this size
+    private static final float MAX_CELL_SIZE_PX = 120f;
+
+    // Trail positions kept for the track overlay
+    private static final int TRAIL_CAPACITY = 1024;
+
+    // Extra pixels around a dirty region for the selection stroke and antialiasing
+    private static final int DIRTY_MARGIN = 4;
+
+    private int gridSize = DEFAULT_GRID_SIZE;
+
+    // Viewport: screen position of grid cell (0, top row) and the cell size. The
+    // fitted cell size shows the whole arena; zooming only ever enlarges it.
     private float cellSize;
     private float offsetX, offsetY;
-
-    // Paints
-    private Paint gridPaint;
-    private Paint obstaclePaint;
-    private Paint obstacleDeletePaint;  // For drag-to-delete visual feedback
-    private Paint targetIndicatorPaint;
-    private Paint targetTextPaint;
-    private Paint gridLabelPaint;
-    private Paint selectedPaint;
-    private Paint robotPaint;
-    private Paint robotDirectionPaint;
-    private Paint tooltipBgPaint;
-    private Paint tooltipTextPaint;
+    private float fitCellSize;
+    private final RectF gridArea = new RectF();  // Where the grid may be drawn, inside the labels
+
+    // Drawing: in onDraw from viewSnapshot, or on renderThread when set
+    private final ArenaRenderer renderer = new ArenaRenderer();
+    private final ArenaSnapshot viewSnapshot = new ArenaSnapshot();
+    private ArenaRenderThread renderThread = null;
+
+    // Performance HUD: the caller's text buffers, and where draw times go while shown
+    private char[][] hudLines;
+    private int[] hudLengths;
+    private int hudLineCount = 0;
+    private final RectF hudBounds = new RectF();
+    private FrameTimeWindow drawStats = null;
+
+    // Dirty regions. Bounds as last invalidated, kept in grid cells (left/top are
+    // the low x/y) so they stay valid across size changes; the drag overlay moves
+    // freely so it is kept in screen pixels.
+    private final Map<Obstacle, Rect> obstacleCells = new HashMap<>();
+    private final Rect robotCells = new Rect();
+    private final RectF dragBounds = new RectF();
+    private final Rect dirtyCells = new Rect();
+    private final RectF dirtyBounds = new RectF();
+    private final RectF tooltipBounds = new RectF();
 
     // Data
     private List<Obstacle> obstacles = new ArrayList<>();
+    private ArenaIndex obstacleIndex = new ArenaIndex(DEFAULT_GRID_SIZE);  // Cell and id lookups
     private Robot robot = null;
 
+    // Robot track: visits and trail
+    private RobotTrack robotTrack = new RobotTrack(DEFAULT_GRID_SIZE, TRAIL_CAPACITY);
+    private boolean showTrack = false;
+
+    // Drawn robot pose, animated between location updates
+    private final RobotMotion robotMotion = new RobotMotion();
+    private boolean robotAnimating = false;
+
     // Drag state
     private Obstacle draggedObstacle = null;
     private Obstacle selectedObstacle = null;
@@ -51,11 +112,21 @@ public class ArenaMapView extends View {
     private float draggedScreenX, draggedScreenY;
     private boolean isOutsideGrid = false;
 
+    // Pan state: one finger on empty space, or the focus of a pinch
+    private boolean isPanning = false;
+    private float lastPanX, lastPanY;
+    private float lastFocusX, lastFocusY;
+
+    // Newest pointer position of a drag or pan, applied once per frame
+    private float pendingTouchX, pendingTouchY;
+    private boolean touchMovePending = false;
+
     // Lock state
     private boolean isDragLocked = false;
 
     private OnObstacleActionListener listener;
     private GestureDetector gestureDetector;
+    private ScaleGestureDetector scaleDetector;
 
     public interface OnObstacleActionListener {
         void onObstacleLongPress(Obstacle obstacle);
@@ -82,65 +153,7 @@ public class ArenaMapView extends View {
     }
 
     private void init() {
-        // Grid lines paint
-        gridPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        gridPaint.setColor(Color.parseColor("#403D7EFF"));
-        gridPaint.setStrokeWidth(1f);
-        gridPaint.setStyle(Paint.Style.STROKE);
-
-        // Obstacle fill paint
-        obstaclePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        obstaclePaint.setColor(Color.BLACK);
-        obstaclePaint.setStyle(Paint.Style.FILL);
-
-        // Obstacle delete preview paint (red, semi-transparent)
-        obstacleDeletePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        obstacleDeletePaint.setColor(Color.parseColor("#80FF0000"));  // Semi-transparent red
-        obstacleDeletePaint.setStyle(Paint.Style.FILL);
-
-        // Target indicator paint
-        targetIndicatorPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        targetIndicatorPaint.setColor(Color.RED);
-        targetIndicatorPaint.setStyle(Paint.Style.FILL);
-
-        // Target text paint
-        targetTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        targetTextPaint.setColor(Color.WHITE);
-        targetTextPaint.setTextAlign(Paint.Align.CENTER);
-
-        // Grid label paint
-        gridLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        gridLabelPaint.setColor(Color.parseColor("#9BA5C0"));
-        gridLabelPaint.setTextSize(24f);
-        gridLabelPaint.setTextAlign(Paint.Align.CENTER);
-
-        // Selected highlight
-        selectedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        selectedPaint.setColor(Color.parseColor("#3D7EFF"));
-        selectedPaint.setStrokeWidth(4f);
-        selectedPaint.setStyle(Paint.Style.STROKE);
-
-        // Tooltip paint
-        tooltipBgPaint = new Paint();
-        tooltipBgPaint.setColor(Color.parseColor("#DD000000"));
-        tooltipBgPaint.setStyle(Paint.Style.FILL);
-        tooltipBgPaint.setAntiAlias(true);
-
-        tooltipTextPaint = new Paint();
-        tooltipTextPaint.setColor(Color.WHITE);
-        tooltipTextPaint.setTextSize(18);
-        tooltipTextPaint.setTextAlign(Paint.Align.CENTER);
-        tooltipTextPaint.setAntiAlias(true);
-
-        // Robot body paint
-        robotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        robotPaint.setColor(Color.parseColor("#00C9A0")); // Green
-        robotPaint.setStyle(Paint.Style.FILL);
-
-        // Robot direction indicator paint
-        robotDirectionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        robotDirectionPaint.setColor(Color.parseColor("#007A62")); // Dark green
-        robotDirectionPaint.setStyle(Paint.Style.FILL);
+        robotMotion.setMaxPosition(gridSize - Robot.SIZE);
 
         // Gesture detector for long press
         gestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
@@ -148,33 +161,56 @@ public class ArenaMapView extends View {
             public void onLongPress(MotionEvent e) {
                 if (isDragLocked) return;
 
-                int[] gridPos = screenToGrid(e.getX(), e.getY());
-                Obstacle obstacle = findObstacleAt(gridPos[0], gridPos[1]);
+                Obstacle obstacle = findObstacleAt(screenToGridX(e.getX()), screenToGridY(e.getY()));
                 if (obstacle != null && listener != null) {
-                    selectedObstacle = obstacle;
-                    invalidate();
+                    changeSelection(obstacle);
                     listener.onObstacleLongPress(obstacle);
                 }
             }
 
             @Override
             public boolean onSingleTapUp(MotionEvent e) {
-                int[] gridPos = screenToGrid(e.getX(), e.getY());
-                Obstacle obstacle = findObstacleAt(gridPos[0], gridPos[1]);
+                int gridX = screenToGridX(e.getX());
+                int gridY = screenToGridY(e.getY());
+                Obstacle obstacle = findObstacleAt(gridX, gridY);
                 if (obstacle != null) {
-                    selectedObstacle = obstacle;
-                    invalidate();
+                    changeSelection(obstacle);
                     if (listener != null) {
                         listener.onObstacleSelected(obstacle);
                     }
                 } else {
                     if (listener != null) {
-                        listener.onEmptyCellTap(gridPos[0], gridPos[1]);
+                        listener.onEmptyCellTap(gridX, gridY);
                     }
                 }
                 return true;
             }
         });
+
+        // Pinch to zoom around the fingers, moving them together pans
+        scaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                if (draggedObstacle != null || isDraggingRobot) {
+                    return false;
+                }
+                isPanning = false;
+                lastFocusX = detector.getFocusX();
+                lastFocusY = detector.getFocusY();
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float focusX = detector.getFocusX();
+                float focusY = detector.getFocusY();
+                zoomBy(detector.getScaleFactor(), focusX, focusY);
+                panBy(focusX - lastFocusX, focusY - lastFocusY);
+                lastFocusX = focusX;
+                lastFocusY = focusY;
+                return true;
+            }
+        });
     }
 
     @Override
@@ -183,6 +219,18 @@ public class ArenaMapView extends View {
         calculateDimensions();
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopRobotAnimation();
+        cancelTouchMove();
+        if (renderThread != null) {
+            renderThread.quit();
+            renderThread = null;
+        }
+        renderer.release();
+    }
+
     private void calculateDimensions() {
         // Read padding set from XML or code
         float padTop    = getPaddingTop();
@@ -191,348 +239,198 @@ public class ArenaMapView extends View {
         int width = getWidth();
         int height = getHeight();
 
-        float labelMarginLeft = 30f;   // For row labels on left
-        float labelMarginBottom = 30f; // For column labels at bottom
-
-        float availableWidth = width - labelMarginLeft;
-        float availableHeight = height - padTop  - padBottom - labelMarginBottom;
+        gridArea.set(LABEL_MARGIN_LEFT, padTop, width, height - padBottom - LABEL_MARGIN_BOTTOM);
+        fitCellSize = Math.min(gridArea.width() / gridSize, gridArea.height() / gridSize);
 
-        cellSize = Math.min(availableWidth / GRID_SIZE, availableHeight / GRID_SIZE);
-
-        float gridWidth = cellSize * GRID_SIZE;
-        float gridHeight = cellSize * GRID_SIZE;
-        offsetX = labelMarginLeft + (availableWidth - gridWidth) / 2;
-        offsetY = padTop + (availableHeight - gridHeight) / 2;
-
-        targetTextPaint.setTextSize(cellSize * 0.5f);
-        gridLabelPaint.setTextSize(cellSize * 0.4f);
+        // Start fully zoomed out, with the grid centred
+        cellSize = fitCellSize;
+        offsetX = clampOffset(0, gridArea.left, gridArea.right);
+        offsetY = clampOffset(0, gridArea.top, gridArea.bottom);
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
-
-        // Draw inset map background with rounded corners
-        Paint mapBgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mapBgPaint.setColor(Color.parseColor("#E8EFFE"));
-        mapBgPaint.setStyle(Paint.Style.FILL);
-
-        RectF mapRect = new RectF(
-                offsetX,
-                offsetY,
-                offsetX + GRID_SIZE * cellSize,
-                offsetY + GRID_SIZE * cellSize
-        );
-        float cornerRadius = 12f; // dp — adjust to taste
-        canvas.drawRoundRect(mapRect, cornerRadius, cornerRadius, mapBgPaint);
-
-//        canvas.drawColor(Color.WHITE);
-        drawGrid(canvas);
-
-        // Draw obstacles (skip the one being dragged, we'll draw it separately)
-        for (Obstacle obstacle : obstacles) {
-            if (obstacle != draggedObstacle) {
-                drawObstacle(canvas, obstacle, obstacle == selectedObstacle);
-            }
-        }
-
-        // Draw dragged obstacle at its current drag position
-        if (draggedObstacle != null) {
-            drawDraggedObstacle(canvas, draggedObstacle);
-        }
+    // Viewport
 
-        // Draw robot on top
-        if (robot != null) {
-            drawRobot(canvas);
-        }
+    /**
+     * Zoom by a factor around a screen point, between fitting the whole arena and
+     * MAX_CELL_SIZE_PX cells
+     */
+    private void zoomBy(float factor, float focusX, float focusY) {
+        float maxCellSize = Math.max(fitCellSize, MAX_CELL_SIZE_PX);
+        float newCellSize = Math.max(fitCellSize, Math.min(maxCellSize, cellSize * factor));
+        // Keep the grid point under the focus where it is
+        float gridX = (focusX - offsetX) / cellSize;
+        float gridY = (focusY - offsetY) / cellSize;
+        setViewport(newCellSize, focusX - gridX * newCellSize, focusY - gridY * newCellSize);
     }
 
-    private void drawGrid(Canvas canvas) {
-        // Draw vertical lines
-        for (int i = 0; i <= GRID_SIZE; i++) {
-            float x = offsetX + i * cellSize;
-            canvas.drawLine(x, offsetY, x, offsetY + GRID_SIZE * cellSize, gridPaint);
-        }
-
-        // Draw horizontal lines
-        for (int i = 0; i <= GRID_SIZE; i++) {
-            float y = offsetY + i * cellSize;
-            canvas.drawLine(offsetX, y, offsetX + GRID_SIZE * cellSize, y, gridPaint);
-        }
+    private void panBy(float dx, float dy) {
+        setViewport(cellSize, offsetX + dx, offsetY + dy);
+    }
 
-        // Draw column labels (0-19) at bottom
-        for (int i = 0; i < GRID_SIZE; i++) {
-            float x = offsetX + i * cellSize + cellSize / 2;
-            canvas.drawText(String.valueOf(i), x, offsetY + GRID_SIZE * cellSize + gridLabelPaint.getTextSize() + 5, gridLabelPaint);
+    /**
+     * Move the viewport, keeping the grid centred when it fits and the view covered
+     * when it doesn't. A viewport change redraws everything, like a size change.
+     */
+    private void setViewport(float newCellSize, float newOffsetX, float newOffsetY) {
+        float previousCellSize = cellSize;
+        cellSize = newCellSize;
+        newOffsetX = clampOffset(newOffsetX, gridArea.left, gridArea.right);
+        newOffsetY = clampOffset(newOffsetY, gridArea.top, gridArea.bottom);
+        if (newCellSize == previousCellSize && newOffsetX == offsetX && newOffsetY == offsetY) {
+            return;
         }
+        offsetX = newOffsetX;
+        offsetY = newOffsetY;
+        invalidate();
+    }
 
-        // Draw row labels (0-19) with 0 at bottom, 19 at top
-        for (int i = 0; i < GRID_SIZE; i++) {
-            int gridY = GRID_SIZE - 1 - i;  // Flip: screen row 0 = grid row 19
-            float y = offsetY + i * cellSize + cellSize / 2 + gridLabelPaint.getTextSize() / 3;
-            canvas.drawText(String.valueOf(gridY), offsetX - 15, y, gridLabelPaint);
+    /**
+     * Clamp the grid's start along one axis for the current cell size
+     */
+    private float clampOffset(float offset, float areaStart, float areaEnd) {
+        float extent = gridSize * cellSize;
+        if (extent <= areaEnd - areaStart) {
+            return areaStart + (areaEnd - areaStart - extent) / 2;
         }
+        return Math.max(areaEnd - extent, Math.min(areaStart, offset));
     }
 
-    private void drawObstacle(Canvas canvas, Obstacle obstacle, boolean isSelected) {
-        float left = offsetX + obstacle.getGridX() * cellSize;
-        // Flip Y: gridY=0 at bottom, so higher gridY = lower screen Y
-        float top = offsetY + (GRID_SIZE - obstacle.getGridY() - obstacle.getHeight()) * cellSize;
-        float right = left + obstacle.getWidth() * cellSize;
-        float bottom = top + obstacle.getHeight() * cellSize;
-
-        RectF rect = new RectF(left + 2, top + 2, right - 2, bottom - 2);
-        canvas.drawRect(rect, obstaclePaint);
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
 
-        if (isSelected) {
-            canvas.drawRect(rect, selectedPaint);
+        if (renderThread != null) {
+            // The render thread draws; just hand it the current state
+            ArenaSnapshot snapshot = renderThread.obtainSnapshot();
+            captureSnapshot(snapshot, renderThread.getRenderer());
+            renderThread.publish(snapshot);
+            return;
         }
-
-        // Always draw target face indicator (red bar showing which face has the target image)
-        drawTargetFaceIndicator(canvas, obstacle, left, top, right, bottom);
-
-        // Draw obstacle ID (small white number)
-        float centerX = (left + right) / 2;
-        float centerY = (top + bottom) / 2;
-
-        if (obstacle.hasRecognizedTarget()) {
-            // If target has been recognized, show only the recognized target ID (no obstacle ID)
-            Paint largeTargetPaint = new Paint(targetTextPaint);
-            largeTargetPaint.setTextSize(cellSize * 0.7f);
-            largeTargetPaint.setFakeBoldText(true);
-            canvas.drawText(obstacle.getRecognizedTargetId(), centerX, centerY + largeTargetPaint.getTextSize() / 3, largeTargetPaint);
-        } else {
-            // No recognized target yet, just show obstacle ID in center (smaller font)
-            Paint smallIdPaint = new Paint(targetTextPaint);
-            smallIdPaint.setTextSize(cellSize * 0.35f);
-            canvas.drawText(String.valueOf(obstacle.getId()), centerX, centerY + smallIdPaint.getTextSize() / 3, smallIdPaint);
+        // With hardware acceleration this times recording the frame, not the GPU work
+        FrameTimeWindow stats = drawStats;
+        long start = stats != null ? System.nanoTime() : 0;
+        captureSnapshot(viewSnapshot, renderer);
+        renderer.draw(canvas, viewSnapshot);
+        if (stats != null) {
+            stats.record(System.nanoTime() - start);
         }
     }
 
     /**
-     * Draw obstacle being dragged at its current screen position with delete feedback
+     * Copy what the renderer needs out of the model. Allocates nothing once the
+     * snapshot's arrays have grown to fit.
      */
-    private void drawDraggedObstacle(Canvas canvas, Obstacle obstacle) {
-        float left = draggedScreenX;
-        float top = draggedScreenY;
-        float right = left + obstacle.getWidth() * cellSize;
-        float bottom = top + obstacle.getHeight() * cellSize;
-
-        RectF rect = new RectF(left + 2, top + 2, right - 2, bottom - 2);
-
-        // Use delete paint if outside grid, otherwise normal paint
-        if (isOutsideGrid) {
-            canvas.drawRect(rect, obstacleDeletePaint);
-        } else {
-            canvas.drawRect(rect, obstaclePaint);
-            canvas.drawRect(rect, selectedPaint);  // Always show selection when dragging
+    private void captureSnapshot(ArenaSnapshot snapshot, ArenaRenderer target) {
+        snapshot.width = getWidth();
+        snapshot.height = getHeight();
+        snapshot.gridSize = gridSize;
+        snapshot.cellSize = cellSize;
+        snapshot.offsetX = offsetX;
+        snapshot.offsetY = offsetY;
+        snapshot.gridArea.set(gridArea);
+
+        // Obstacles, skipping the one being dragged (drawn separately). Indexed
+        // loop: a for-each would allocate an Iterator every frame.
+        snapshot.ensureObstacleCapacity(obstacles.size());
+        snapshot.selectedIndex = -1;
+        int count = 0;
+        for (int i = 0; i < obstacles.size(); i++) {
+            Obstacle obstacle = obstacles.get(i);
+            if (obstacle == draggedObstacle) {
+                continue;
+            }
+            if (obstacle == selectedObstacle) {
+                snapshot.selectedIndex = count;
+            }
+            snapshot.setObstacle(count++, obstacle);
         }
+        snapshot.obstacleCount = count;
 
-        // Draw target face indicator
-        drawTargetFaceIndicator(canvas, obstacle, left, top, right, bottom);
-
-        // Draw obstacle ID (smaller font)
-        float centerX = (left + right) / 2;
-        float centerY = (top + bottom) / 2;
-        Paint smallIdPaint = new Paint(targetTextPaint);
-        smallIdPaint.setTextSize(cellSize * 0.35f);
-        canvas.drawText(String.valueOf(obstacle.getId()), centerX, centerY + smallIdPaint.getTextSize() / 3, smallIdPaint);
-
-        if (!isOutsideGrid) {
-            drawCoordinateTooltip(canvas, obstacle, centerX, top);
+        snapshot.dragging = draggedObstacle != null;
+        if (draggedObstacle != null) {
+            snapshot.dragScreenX = draggedScreenX;
+            snapshot.dragScreenY = draggedScreenY;
+            snapshot.dragGridX = draggedObstacle.getGridX();
+            snapshot.dragGridY = draggedObstacle.getGridY();
+            snapshot.dragWidth = draggedObstacle.getWidth();
+            snapshot.dragHeight = draggedObstacle.getHeight();
+            snapshot.dragFace = draggedObstacle.getTargetFace();
+            snapshot.dragLabel = draggedObstacle.getIdLabel();
+            snapshot.dragOutside = isOutsideGrid;
         }
-    }
-
-    private void drawCoordinateTooltip(Canvas canvas, Obstacle obstacle, float centerX, float obstacleTop) {
-        String coordText = "(" + obstacle.getGridX() + "," + obstacle.getGridY() + ")";
-
-        float textWidth = tooltipTextPaint.measureText(coordText);
-        float paddingVertical = 20;
-        float tooltipWidth = textWidth + cellSize * 0.8f;
-        float tooltipHeight = tooltipTextPaint.getTextSize() + (paddingVertical * 2);
-
-        float tooltipX = centerX - tooltipWidth / 2;
-        float tooltipY = obstacleTop - tooltipHeight - cellSize * 0.3f;
 
-        RectF tooltipRect = new RectF(tooltipX, tooltipY, tooltipX + tooltipWidth, tooltipY + tooltipHeight);
-        canvas.drawRoundRect(tooltipRect, cellSize * 0.2f, cellSize * 0.2f, tooltipBgPaint);
+        snapshot.hasRobot = robot != null;
+        snapshot.robotMotion.copyFrom(robotMotion);
 
-        // Draw text at vertical center of tooltip
-        float textCenterY = tooltipY + tooltipHeight / 2;
-        Paint.FontMetrics fm = tooltipTextPaint.getFontMetrics();
-        float textY = textCenterY - (fm.descent + fm.ascent) / 2;
-
-        canvas.drawText(coordText, centerX, textY, tooltipTextPaint);
-    }
-
-    /**
-     * Draw the red indicator bar showing which face has the target image
-     */
-    private void drawTargetFaceIndicator(Canvas canvas, Obstacle obstacle,
-                                          float left, float top, float right, float bottom) {
-        float indicatorThickness = cellSize * 0.15f;
-        RectF indicatorRect;
-
-        switch (obstacle.getTargetFace()) {
-            case NORTH:
-                indicatorRect = new RectF(left + 2, top + 2, right - 2, top + indicatorThickness);
-                break;
-            case SOUTH:
-                indicatorRect = new RectF(left + 2, bottom - indicatorThickness, right - 2, bottom - 2);
-                break;
-            case EAST:
-                indicatorRect = new RectF(right - indicatorThickness, top + 2, right - 2, bottom - 2);
-                break;
-            case WEST:
-                indicatorRect = new RectF(left + 2, top + 2, left + indicatorThickness, bottom - 2);
-                break;
-            default:
-                return;
+        snapshot.showTrack = showTrack;
+        if (showTrack) {
+            snapshot.setTrack(robotTrack, target.needsTrackVisits(robotTrack));
         }
 
-        canvas.drawRect(indicatorRect, targetIndicatorPaint);
-    }
-
-    private void drawRobot(Canvas canvas) {
-        float left = offsetX + robot.getGridX() * cellSize;
-        // Flip Y: gridY=0 at bottom
-        float top = offsetY + (GRID_SIZE - robot.getGridY() - Robot.SIZE) * cellSize;
-        float right = left + Robot.SIZE * cellSize;
-        float bottom = top + Robot.SIZE * cellSize;
-
-        // Draw robot body (green square)
-        RectF rect = new RectF(left + 3, top + 3, right - 3, bottom - 3);
-        canvas.drawRect(rect, robotPaint);
-
-        // Draw direction triangle
-        float centerX = (left + right) / 2;
-        float centerY = (top + bottom) / 2;
-        float triangleSize = cellSize * 0.6f;
-
-        Path triangle = new Path();
-        switch (robot.getFacing()) {
-            case NORTH:
-                triangle.moveTo(centerX, top + 6);                          // Top point
-                triangle.lineTo(centerX - triangleSize / 2, centerY);       // Bottom left
-                triangle.lineTo(centerX + triangleSize / 2, centerY);       // Bottom right
-                break;
-            case SOUTH:
-                triangle.moveTo(centerX, bottom - 6);                       // Bottom point
-                triangle.lineTo(centerX - triangleSize / 2, centerY);       // Top left
-                triangle.lineTo(centerX + triangleSize / 2, centerY);       // Top right
-                break;
-            case EAST:
-                triangle.moveTo(right - 6, centerY);                        // Right point
-                triangle.lineTo(centerX, centerY - triangleSize / 2);       // Top left
-                triangle.lineTo(centerX, centerY + triangleSize / 2);       // Bottom left
-                break;
-            case WEST:
-                triangle.moveTo(left + 6, centerY);                         // Left point
-                triangle.lineTo(centerX, centerY - triangleSize / 2);       // Top right
-                triangle.lineTo(centerX, centerY + triangleSize / 2);       // Bottom right
-                break;
+        if (hudLineCount > 0) {
+            snapshot.setHud(hudLines, hudLengths, hudLineCount);
+        } else {
+            snapshot.hudLineCount = 0;
         }
-        triangle.close();
-        canvas.drawPath(triangle, robotDirectionPaint);
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         gestureDetector.onTouchEvent(event);
+        scaleDetector.onTouchEvent(event);
+
+        // Panning and zooming work even when dragging is locked
+        if (handleViewportTouch(event)) {
+            return true;
+        }
 
         // If drag is locked, only allow tap/selection, not dragging
         if (isDragLocked) {
             return true;
         }
 
-        int[] gridPos = screenToGrid(event.getX(), event.getY());
-        int gridX = gridPos[0];
-        int gridY = gridPos[1];
-
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
+                int gridX = screenToGridX(event.getX());
+                int gridY = screenToGridY(event.getY());
+
                 // Check robot first (it's on top)
                 if (robot != null && robot.containsPoint(gridX, gridY)) {
                     isDraggingRobot = true;
                     dragOffsetX = event.getX() - (offsetX + robot.getGridX() * cellSize);
                     // Flip Y for drag offset calculation
-                    dragOffsetY = event.getY() - (offsetY + (GRID_SIZE - robot.getGridY() - Robot.SIZE) * cellSize);
+                    dragOffsetY = event.getY() - (offsetY + (gridSize - robot.getGridY() - Robot.SIZE) * cellSize);
                     return true;
                 }
 
                 // Then check obstacles
                 Obstacle obstacle = findObstacleAt(gridX, gridY);
                 if (obstacle != null) {
+                    changeSelection(obstacle);
                     draggedObstacle = obstacle;
-                    selectedObstacle = obstacle;
                     // Calculate drag offset from touch point to obstacle's top-left corner
                     draggedScreenX = offsetX + obstacle.getGridX() * cellSize;
-                    draggedScreenY = offsetY + (GRID_SIZE - obstacle.getGridY() - obstacle.getHeight()) * cellSize;
+                    draggedScreenY = offsetY + (gridSize - obstacle.getGridY() - obstacle.getHeight()) * cellSize;
                     dragOffsetX = event.getX() - draggedScreenX;
                     dragOffsetY = event.getY() - draggedScreenY;
                     isOutsideGrid = false;
-                    invalidate();
+                    invalidateObstacle(obstacle);
+                    invalidateDrag();
                     return true;
                 }
                 break;
 
             case MotionEvent.ACTION_MOVE:
-                if (isDraggingRobot && robot != null) {
-                    float newX = event.getX() - dragOffsetX;
-                    float newY = event.getY() - dragOffsetY;
-                    int newGridX = Math.round((newX - offsetX) / cellSize);
-                    // Flip Y: convert screen position to grid position
-                    int newScreenGridY = Math.round((newY - offsetY) / cellSize);
-                    int newGridY = GRID_SIZE - Robot.SIZE - newScreenGridY;
-
-                    // Clamp to grid bounds (robot is 3x3)
-                    newGridX = Math.max(0, Math.min(GRID_SIZE - Robot.SIZE, newGridX));
-                    newGridY = Math.max(0, Math.min(GRID_SIZE - Robot.SIZE, newGridY));
-
-                    if (newGridX != robot.getGridX() || newGridY != robot.getGridY()) {
-                        robot.setGridX(newGridX);
-                        robot.setGridY(newGridY);
-                        invalidate();
-                    }
-                    return true;
-                }
-
-                if (draggedObstacle != null) {
-                    // Track screen position for visual feedback
-                    draggedScreenX = event.getX() - dragOffsetX;
-                    draggedScreenY = event.getY() - dragOffsetY;
-
-                    // Calculate grid position (unclamped to check if outside)
-                    int newGridX = Math.round((draggedScreenX - offsetX) / cellSize);
-                    int newScreenGridY = Math.round((draggedScreenY - offsetY) / cellSize);
-                    int newGridY = GRID_SIZE - draggedObstacle.getHeight() - newScreenGridY;
-
-                    // Check if obstacle is outside the grid (for delete feedback)
-                    float gridLeft = offsetX;
-                    float gridTop = offsetY;
-                    float gridRight = offsetX + GRID_SIZE * cellSize;
-                    float gridBottom = offsetY + GRID_SIZE * cellSize;
-                    float obsCenterX = draggedScreenX + (draggedObstacle.getWidth() * cellSize) / 2;
-                    float obsCenterY = draggedScreenY + (draggedObstacle.getHeight() * cellSize) / 2;
-
-                    isOutsideGrid = obsCenterX < gridLeft || obsCenterX > gridRight ||
-                                    obsCenterY < gridTop || obsCenterY > gridBottom;
-
-                    // Update grid position only if inside grid bounds
-                    if (!isOutsideGrid) {
-                        newGridX = Math.max(0, Math.min(GRID_SIZE - draggedObstacle.getWidth(), newGridX));
-                        newGridY = Math.max(0, Math.min(GRID_SIZE - draggedObstacle.getHeight(), newGridY));
-                        draggedObstacle.setGridX(newGridX);
-                        draggedObstacle.setGridY(newGridY);
-                    }
-
-                    invalidate();
+                if ((isDraggingRobot && robot != null) || draggedObstacle != null) {
+                    queueTouchMove(event);
                     return true;
                 }
                 break;
 
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL:
+                // Settle on the last move before reporting where things ended up
+                flushTouchMove();
                 if (isDraggingRobot && robot != null && listener != null) {
                     listener.onRobotPositionChanged(robot);
                 }
@@ -543,6 +441,8 @@ public class ArenaMapView extends View {
                         // Remove the obstacle if dropped outside the grid
                         Obstacle removedObstacle = draggedObstacle;
                         obstacles.remove(draggedObstacle);
+                        obstacleIndex.remove(draggedObstacle);
+                        forgetObstacle(draggedObstacle);
                         if (selectedObstacle == draggedObstacle) {
                             selectedObstacle = null;
                         }
@@ -550,13 +450,14 @@ public class ArenaMapView extends View {
                             listener.onObstacleRemovedByDrag(removedObstacle);
                         }
                     } else {
+                        invalidateObstacle(draggedObstacle);
                         if (listener != null) {
                             listener.onObstaclePositionChanged(draggedObstacle);
                         }
                     }
                     draggedObstacle = null;
                     isOutsideGrid = false;
-                    invalidate();
+                    invalidateDrag();
                 }
                 break;
         }
@@ -564,23 +465,410 @@ public class ArenaMapView extends View {
         return true;
     }
 
-    private int[] screenToGrid(float screenX, float screenY) {
+    /**
+     * One finger on empty space pans; a pinch (handled by the scale detector) takes
+     * over while two fingers are down. Returns true if the event was used.
+     */
+    private boolean handleViewportTouch(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                int cellX = screenToGridX(event.getX());
+                int cellY = screenToGridY(event.getY());
+                boolean onRobot = robot != null && robot.containsPoint(cellX, cellY);
+                isPanning = isDragLocked || (!onRobot && findObstacleAt(cellX, cellY) == null);
+                lastPanX = event.getX();
+                lastPanY = event.getY();
+                return isPanning;
+
+            case MotionEvent.ACTION_MOVE:
+                if (isPanning && !scaleDetector.isInProgress()) {
+                    queueTouchMove(event);
+                }
+                return isPanning || scaleDetector.isInProgress();
+
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // The pinch pans from here on
+                flushTouchMove();
+                isPanning = false;
+                return scaleDetector.isInProgress();
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (isPanning) {
+                    flushTouchMove();
+                }
+                boolean wasPanning = isPanning;
+                isPanning = false;
+                return wasPanning;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Grid column under a screen x, clamped to the grid
+     */
+    private int screenToGridX(float screenX) {
         int gridX = (int) ((screenX - offsetX) / cellSize);
+        return Math.max(0, Math.min(gridSize - 1, gridX));
+    }
+
+    /**
+     * Grid row under a screen y, clamped to the grid
+     */
+    private int screenToGridY(float screenY) {
         int screenGridY = (int) ((screenY - offsetY) / cellSize);
-        // Flip Y: screen row 0 (top) = grid row 19, screen row 19 (bottom) = grid row 0
-        int gridY = GRID_SIZE - 1 - screenGridY;
-        gridX = Math.max(0, Math.min(GRID_SIZE - 1, gridX));
-        gridY = Math.max(0, Math.min(GRID_SIZE - 1, gridY));
-        return new int[]{gridX, gridY};
+        // Flip Y: screen row 0 (top) = top grid row, bottom screen row = grid row 0
+        int gridY = gridSize - 1 - screenGridY;
+        return Math.max(0, Math.min(gridSize - 1, gridY));
+    }
+
+    /**
+     * Screen position of the centre of a grid cell, written into out[0..1]
+     */
+    void gridToScreen(int gridX, int gridY, float[] out) {
+        out[0] = offsetX + (gridX + 0.5f) * cellSize;
+        // Flip Y: gridY=0 at bottom
+        out[1] = offsetY + (gridSize - gridY - 0.5f) * cellSize;
     }
 
     private Obstacle findObstacleAt(int gridX, int gridY) {
-        for (Obstacle obstacle : obstacles) {
-            if (obstacle.containsPoint(gridX, gridY)) {
-                return obstacle;
+        return obstacleIndex.obstacleAt(gridX, gridY);
+    }
+
+    // Drag and pan moves
+
+    private final Choreographer.FrameCallback touchMoveCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            touchMovePending = false;
+            applyTouchMove();
+        }
+    };
+
+    /**
+     * Remember the newest pointer position and apply it on the next frame. Input is
+     * handled before animation callbacks, so this runs in the same frame. However
+     * many moves arrive in between, snapping and invalidation happen once. The
+     * historical samples of a batched move are earlier positions from the same
+     * frame and are superseded by the newest one.
+     */
+    private void queueTouchMove(MotionEvent event) {
+        pendingTouchX = event.getX();
+        pendingTouchY = event.getY();
+        if (!touchMovePending) {
+            touchMovePending = true;
+            Choreographer.getInstance().postFrameCallback(touchMoveCallback);
+        }
+    }
+
+    /**
+     * Apply a queued move right away, e.g. before the gesture ends. Package-private
+     * so tests on the main thread, where the frame callback can't run, can apply
+     * each move.
+     */
+    void flushTouchMove() {
+        if (touchMovePending) {
+            cancelTouchMove();
+            applyTouchMove();
+        }
+    }
+
+    private void cancelTouchMove() {
+        if (touchMovePending) {
+            touchMovePending = false;
+            Choreographer.getInstance().removeFrameCallback(touchMoveCallback);
+        }
+    }
+
+    private void applyTouchMove() {
+        if (isPanning) {
+            if (!scaleDetector.isInProgress()) {
+                panBy(pendingTouchX - lastPanX, pendingTouchY - lastPanY);
+            }
+            lastPanX = pendingTouchX;
+            lastPanY = pendingTouchY;
+        } else if (isDraggingRobot && robot != null) {
+            dragRobotTo(pendingTouchX, pendingTouchY);
+        } else if (draggedObstacle != null) {
+            dragObstacleTo(pendingTouchX, pendingTouchY);
+        }
+    }
+
+    /**
+     * Snap the dragged robot to the cell under the pointer; redraws only if the
+     * cell changed
+     */
+    private void dragRobotTo(float touchX, float touchY) {
+        float newX = touchX - dragOffsetX;
+        float newY = touchY - dragOffsetY;
+        int newGridX = Math.round((newX - offsetX) / cellSize);
+        // Flip Y: convert screen position to grid position
+        int newScreenGridY = Math.round((newY - offsetY) / cellSize);
+        int newGridY = gridSize - Robot.SIZE - newScreenGridY;
+
+        // Clamp to grid bounds (robot is 3x3)
+        newGridX = Math.max(0, Math.min(gridSize - Robot.SIZE, newGridX));
+        newGridY = Math.max(0, Math.min(gridSize - Robot.SIZE, newGridY));
+
+        if (newGridX != robot.getGridX() || newGridY != robot.getGridY()) {
+            robot.setGridX(newGridX);
+            robot.setGridY(newGridY);
+            snapRobot();
+        }
+    }
+
+    /**
+     * Move the dragged obstacle's overlay with the pointer and snap the obstacle
+     * to the cell under it. The model, index and tooltip text change only when the
+     * cell does; the overlay is redrawn only if the pointer moved.
+     */
+    private void dragObstacleTo(float touchX, float touchY) {
+        float screenX = touchX - dragOffsetX;
+        float screenY = touchY - dragOffsetY;
+        if (screenX == draggedScreenX && screenY == draggedScreenY) {
+            return;
+        }
+        // Track screen position for visual feedback
+        draggedScreenX = screenX;
+        draggedScreenY = screenY;
+
+        // Calculate grid position (unclamped to check if outside)
+        int newGridX = Math.round((draggedScreenX - offsetX) / cellSize);
+        int newScreenGridY = Math.round((draggedScreenY - offsetY) / cellSize);
+        int newGridY = gridSize - draggedObstacle.getHeight() - newScreenGridY;
+
+        // Check if obstacle is outside the visible grid (for delete feedback)
+        float gridLeft = Math.max(offsetX, gridArea.left);
+        float gridTop = Math.max(offsetY, gridArea.top);
+        float gridRight = Math.min(offsetX + gridSize * cellSize, gridArea.right);
+        float gridBottom = Math.min(offsetY + gridSize * cellSize, gridArea.bottom);
+        float obsCenterX = draggedScreenX + (draggedObstacle.getWidth() * cellSize) / 2;
+        float obsCenterY = draggedScreenY + (draggedObstacle.getHeight() * cellSize) / 2;
+
+        isOutsideGrid = obsCenterX < gridLeft || obsCenterX > gridRight ||
+                        obsCenterY < gridTop || obsCenterY > gridBottom;
+
+        // Update grid position only if inside grid bounds
+        if (!isOutsideGrid) {
+            newGridX = Math.max(0, Math.min(gridSize - draggedObstacle.getWidth(), newGridX));
+            newGridY = Math.max(0, Math.min(gridSize - draggedObstacle.getHeight(), newGridY));
+            if (newGridX != draggedObstacle.getGridX() || newGridY != draggedObstacle.getGridY()) {
+                draggedObstacle.setGridX(newGridX);
+                draggedObstacle.setGridY(newGridY);
+                obstacleIndex.update(draggedObstacle);
+            }
+        }
+
+        invalidateDrag();
+    }
+
+    // Robot animation
+
+    private final Choreographer.FrameCallback robotFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            robotAnimating = robotMotion.sample(frameTimeNanos);
+            invalidateRobot();
+            if (robotAnimating) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
+
+    /**
+     * Draw the robot exactly where the model says, cancelling any animation
+     */
+    private void snapRobot() {
+        stopRobotAnimation();
+        if (robot != null) {
+            robotMotion.snap(robot.getGridX(), robot.getGridY(), headingOf(robot.getFacing()));
+        }
+        invalidateRobot();
+    }
+
+    private void startRobotAnimation() {
+        // The render thread animates the robot itself
+        if (!robotAnimating && renderThread == null) {
+            robotAnimating = true;
+            Choreographer.getInstance().postFrameCallback(robotFrameCallback);
+        }
+    }
+
+    private void stopRobotAnimation() {
+        if (robotAnimating) {
+            robotAnimating = false;
+            Choreographer.getInstance().removeFrameCallback(robotFrameCallback);
+        }
+    }
+
+    /**
+     * Heading in degrees clockwise from north; the numeric codes are 45 degree steps
+     */
+    private static float headingOf(Robot.Direction direction) {
+        return direction.getNumeric() * 45f;
+    }
+
+    // Robot track
+
+    /**
+     * Add a pose to the track and redraw the cells the newest (and any dropped)
+     * trail segment covers
+     */
+    private void recordTrack(int x, int y) {
+        int points = robotTrack.getTrailLength();
+        int lastX = points > 0 ? robotTrack.getTrailX(points - 1) : x;
+        int lastY = points > 0 ? robotTrack.getTrailY(points - 1) : y;
+        boolean full = points == TRAIL_CAPACITY;
+        int oldestX = full ? robotTrack.getTrailX(0) : 0;
+        int oldestY = full ? robotTrack.getTrailY(0) : 0;
+        if (!robotTrack.record(x, y)) {
+            return;
+        }
+
+        if (showTrack) {
+            invalidateTrailSegment(lastX, lastY, x, y);
+            if (full) {
+                // The oldest segment is gone; the new oldest point is where it ended
+                invalidateTrailSegment(oldestX, oldestY, robotTrack.getTrailX(0), robotTrack.getTrailY(0));
+            }
+        }
+    }
+
+    /**
+     * Invalidate both footprints of a trail segment and everything between them
+     */
+    private void invalidateTrailSegment(int x1, int y1, int x2, int y2) {
+        dirtyCells.set(Math.min(x1, x2), Math.min(y1, y2),
+                Math.max(x1, x2) + Robot.SIZE, Math.max(y1, y2) + Robot.SIZE);
+        invalidateCells(dirtyCells);
+    }
+
+    // Dirty-region invalidation
+
+    /**
+     * Redraw an obstacle's previous and current cells. Only obstacles added to the
+     * view are tracked; others are ignored.
+     */
+    private void invalidateObstacle(Obstacle obstacle) {
+        Rect cells = obstacleCells.get(obstacle);
+        if (cells == null) {
+            return;
+        }
+        dirtyCells.set(obstacle.getGridX(), obstacle.getGridY(),
+                obstacle.getGridX() + obstacle.getWidth(), obstacle.getGridY() + obstacle.getHeight());
+        cells.union(dirtyCells);
+        invalidateCells(cells);
+        cells.set(dirtyCells);
+    }
+
+    /**
+     * Redraw the last cells of an obstacle leaving the view and stop tracking it
+     */
+    private void forgetObstacle(Obstacle obstacle) {
+        Rect cells = obstacleCells.remove(obstacle);
+        if (cells != null) {
+            invalidateCells(cells);
+        }
+    }
+
+    /**
+     * Redraw the robot's previous and current footprint (either may be absent). The
+     * drawn position can be between cells while animating, so round outwards.
+     */
+    private void invalidateRobot() {
+        if (robot != null) {
+            int left = (int) Math.floor(robotMotion.getX());
+            int bottom = (int) Math.floor(robotMotion.getY());
+            dirtyCells.set(left, bottom,
+                    (int) Math.ceil(robotMotion.getX()) + Robot.SIZE,
+                    (int) Math.ceil(robotMotion.getY()) + Robot.SIZE);
+            robotCells.union(dirtyCells);
+            invalidateCells(robotCells);
+            robotCells.set(dirtyCells);
+        } else {
+            invalidateCells(robotCells);
+            robotCells.setEmpty();
+        }
+    }
+
+    /**
+     * Redraw the dragged obstacle and its tooltip where they were and where they are now
+     */
+    private void invalidateDrag() {
+        dirtyBounds.set(dragBounds);
+        if (draggedObstacle != null) {
+            float width = draggedObstacle.getWidth() * cellSize;
+            dragBounds.set(draggedScreenX, draggedScreenY,
+                    draggedScreenX + width, draggedScreenY + draggedObstacle.getHeight() * cellSize);
+            if (!isOutsideGrid) {
+                renderer.layoutTooltip(draggedObstacle.getGridX(), draggedObstacle.getGridY(), cellSize,
+                        draggedScreenX + width / 2, draggedScreenY, tooltipBounds);
+                dragBounds.union(tooltipBounds);
             }
+            dirtyBounds.union(dragBounds);
+        } else {
+            dragBounds.setEmpty();
+        }
+        invalidateBounds(dirtyBounds);
+    }
+
+    /**
+     * Redraw the HUD box where it was and where it is now
+     */
+    private void invalidateHud() {
+        dirtyBounds.set(hudBounds);
+        if (hudLineCount > 0) {
+            renderer.layoutHud(hudLines, hudLengths, hudLineCount, gridArea, hudBounds);
+            dirtyBounds.union(hudBounds);
+        } else {
+            hudBounds.setEmpty();
+        }
+        invalidateBounds(dirtyBounds);
+    }
+
+    /**
+     * Invalidate a screen rectangle, rounded outwards
+     */
+    private void invalidateBounds(RectF bounds) {
+        if (!bounds.isEmpty()) {
+            invalidate((int) Math.floor(bounds.left) - DIRTY_MARGIN,
+                    (int) Math.floor(bounds.top) - DIRTY_MARGIN,
+                    (int) Math.ceil(bounds.right) + DIRTY_MARGIN,
+                    (int) Math.ceil(bounds.bottom) + DIRTY_MARGIN);
+        }
+    }
+
+    /**
+     * Invalidate the screen area covered by a rectangle of grid cells
+     */
+    private void invalidateCells(Rect cells) {
+        if (cells.isEmpty()) {
+            return;
+        }
+        // Flip Y: the cells' low y (top) is the bottom edge on screen
+        invalidate((int) Math.floor(offsetX + cells.left * cellSize) - DIRTY_MARGIN,
+                (int) Math.floor(offsetY + (gridSize - cells.bottom) * cellSize) - DIRTY_MARGIN,
+                (int) Math.ceil(offsetX + cells.right * cellSize) + DIRTY_MARGIN,
+                (int) Math.ceil(offsetY + (gridSize - cells.top) * cellSize) + DIRTY_MARGIN);
+    }
+
+    /**
+     * Move the selection highlight, redrawing only the two obstacles involved
+     */
+    private void changeSelection(Obstacle obstacle) {
+        if (obstacle == selectedObstacle) {
+            return;
+        }
+        Obstacle previous = selectedObstacle;
+        selectedObstacle = obstacle;
+        if (previous != null) {
+            invalidateObstacle(previous);
+        }
+        if (obstacle != null) {
+            invalidateObstacle(obstacle);
         }
-        return null;
     }
 
     // Public API methods
@@ -591,7 +879,9 @@ public class ArenaMapView extends View {
 
     public void addObstacle(Obstacle obstacle) {
         obstacles.add(obstacle);
-        invalidate();
+        obstacleIndex.add(obstacle);
+        obstacleCells.put(obstacle, new Rect());
+        invalidateObstacle(obstacle);
     }
 
     public void addObstacle(int gridX, int gridY) {
@@ -604,55 +894,120 @@ public class ArenaMapView extends View {
 
     public void removeObstacle(Obstacle obstacle) {
         obstacles.remove(obstacle);
+        obstacleIndex.remove(obstacle);
+        forgetObstacle(obstacle);
         if (selectedObstacle == obstacle) {
             selectedObstacle = null;
         }
-        invalidate();
     }
 
     public void clearObstacles() {
+        for (Rect cells : obstacleCells.values()) {
+            invalidateCells(cells);
+        }
+        obstacleCells.clear();
         obstacles.clear();
+        obstacleIndex.clear();
         selectedObstacle = null;
         Obstacle.resetIdCounter();
-        invalidate();
     }
 
     public List<Obstacle> getObstacles() {
         return new ArrayList<>(obstacles);
     }
 
+    /**
+     * The obstacle with the given id, or null. Unlike searching
+     * {@link #getObstacles()} this doesn't copy the list.
+     */
+    public Obstacle findObstacleById(int id) {
+        return obstacleIndex.findById(id);
+    }
+
     public Obstacle getSelectedObstacle() {
         return selectedObstacle;
     }
 
     public void setSelectedObstacle(Obstacle obstacle) {
-        selectedObstacle = obstacle;
-        invalidate();
+        changeSelection(obstacle);
     }
 
     public void clearSelection() {
-        selectedObstacle = null;
-        invalidate();
+        changeSelection(null);
     }
 
+    /**
+     * Redraw an obstacle after its position, size, face or target changed
+     */
     public void updateObstacle(Obstacle obstacle) {
-        invalidate();
+        obstacleIndex.update(obstacle);
+        invalidateObstacle(obstacle);
     }
 
     public int getGridSize() {
-        return GRID_SIZE;
+        return gridSize;
+    }
+
+    /**
+     * Resize the arena to size x size cells (clamped to MIN_GRID_SIZE..MAX_GRID_SIZE).
+     * Obstacles and the robot are moved back inside if they no longer fit, and the
+     * view zooms out to show the whole arena.
+     */
+    public void setGridSize(int size) {
+        size = Math.max(MIN_GRID_SIZE, Math.min(MAX_GRID_SIZE, size));
+        if (size == gridSize) {
+            return;
+        }
+        gridSize = size;
+
+        obstacleIndex = new ArenaIndex(size);
+        for (int i = 0; i < obstacles.size(); i++) {
+            Obstacle obstacle = obstacles.get(i);
+            obstacle.setWidth(Math.min(obstacle.getWidth(), size));
+            obstacle.setHeight(Math.min(obstacle.getHeight(), size));
+            obstacle.setGridX(Math.min(obstacle.getGridX(), size - obstacle.getWidth()));
+            obstacle.setGridY(Math.min(obstacle.getGridY(), size - obstacle.getHeight()));
+            obstacleIndex.add(obstacle);
+            Rect cells = obstacleCells.get(obstacle);
+            if (cells != null) {
+                cells.set(obstacle.getGridX(), obstacle.getGridY(),
+                        obstacle.getGridX() + obstacle.getWidth(), obstacle.getGridY() + obstacle.getHeight());
+            }
+        }
+
+        // Track history is in old cell coordinates
+        robotTrack = new RobotTrack(size, TRAIL_CAPACITY);
+
+        robotMotion.setMaxPosition(size - Robot.SIZE);
+        if (robot != null) {
+            robot.setGridX(Math.min(robot.getGridX(), size - Robot.SIZE));
+            robot.setGridY(Math.min(robot.getGridY(), size - Robot.SIZE));
+            snapRobot();
+        }
+
+        // A layout change: everything moves
+        calculateDimensions();
+        invalidate();
+    }
+
+    /**
+     * Zoom out to show the whole arena
+     */
+    public void resetViewport() {
+        calculateDimensions();
+        invalidate();
     }
 
     // Robot methods
 
     public void spawnRobot() {
         robot = new Robot();
-        invalidate();
+        snapRobot();
     }
 
     public void removeRobot() {
         robot = null;
-        invalidate();
+        snapRobot();
     }
 
     public Robot getRobot() {
@@ -661,24 +1016,131 @@ public class ArenaMapView extends View {
 
     public void setRobot(Robot robot) {
         this.robot = robot;
-        invalidate();
+        snapRobot();
     }
 
+    /**
+     * Apply an authoritative pose from the robot. The model takes it at once; the
+     * drawn robot animates towards it on the following frames.
+     */
     public void updateRobotPosition(int x, int y, Robot.Direction direction) {
         if (robot == null) {
             robot = new Robot(x, y, direction);
-        } else {
-            robot.setGridX(x);
-            robot.setGridY(y);
-            robot.setFacing(direction);
+            recordTrack(x, y);
+            snapRobot();
+            return;
         }
-        invalidate();
+        robot.setGridX(x);
+        robot.setGridY(y);
+        robot.setFacing(direction);
+        recordTrack(x, y);
+        long now = System.nanoTime();
+        if (renderThread != null) {
+            // Nothing samples the motion on this thread; catch the drawn pose up so
+            // the next segment starts where the render thread has the robot
+            robotMotion.sample(now);
+        }
+        robotMotion.onPose(x, y, headingOf(direction), now);
+        invalidateRobot();
+        startRobotAnimation();
     }
 
     public boolean hasRobot() {
         return robot != null;
     }
 
+    /**
+     * Show or hide the track overlay (visit heatmap and trail). The track is
+     * recorded either way.
+     */
+    public void setTrackVisible(boolean visible) {
+        if (showTrack != visible) {
+            showTrack = visible;
+            invalidate();
+        }
+    }
+
+    public boolean isTrackVisible() {
+        return showTrack;
+    }
+
+    /**
+     * Forget where the robot has been, e.g. at the start of a run
+     */
+    public void clearRobotTrack() {
+        robotTrack.clear();
+        if (showTrack) {
+            invalidate();
+        }
+    }
+
+    public RobotTrack getRobotTrack() {
+        return robotTrack;
+    }
+
+    /**
+     * Extrapolate the drawn robot between location updates instead of easing
+     * towards each one; see {@link RobotMotion}
+     */
+    public void setRobotDeadReckoning(boolean enabled) {
+        robotMotion.setDeadReckoning(enabled);
+    }
+
+    // Rendering mode
+
+    /**
+     * Draw the arena on a render thread into surfaceView instead of in onDraw, or
+     * back in onDraw if null. The surface view must sit exactly under this view
+     * (which keeps handling touches and draws nothing itself) and be made visible
+     * by the caller; it is set up to show on top, with a transparent background.
+     */
+    public void setRenderSurface(SurfaceView surfaceView) {
+        if (renderThread != null) {
+            renderThread.quit();
+            renderThread = null;
+        }
+        if (surfaceView != null) {
+            surfaceView.setZOrderOnTop(true);
+            surfaceView.getHolder().setFormat(PixelFormat.TRANSLUCENT);
+            renderThread = new ArenaRenderThread(surfaceView.getHolder());
+            renderThread.setDrawStats(drawStats);
+            renderThread.start();
+            // The render thread animates the robot from here on
+            stopRobotAnimation();
+            renderer.release();
+        }
+        invalidate();
+    }
+
+    public boolean isRenderingOnThread() {
+        return renderThread != null;
+    }
+
+    // Performance HUD
+
+    /**
+     * Show count lines of text (line i is lengths[i] chars) in a box over the map,
+     * or hide it if lines is null. The buffers are kept and read on every draw, so
+     * update them in place and call this again to redraw.
+     */
+    public void setHudText(char[][] lines, int[] lengths, int count) {
+        hudLines = lines;
+        hudLengths = lengths;
+        hudLineCount = lines != null ? count : 0;
+        invalidateHud();
+    }
+
+    /**
+     * Record how long each map frame takes to draw into stats (on whichever thread
+     * draws), or stop timing if null
+     */
+    public void setDrawStats(FrameTimeWindow stats) {
+        drawStats = stats;
+        if (renderThread != null) {
+            renderThread.setDrawStats(stats);
+        }
+    }
+
     // Lock methods
 
     public void setDragLocked(boolean locked) {
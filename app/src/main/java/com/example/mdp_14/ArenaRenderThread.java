@@ -0,0 +1,241 @@
+package com.example.mdp_14;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+/**
+ * Draws the arena on a dedicated thread into a surface, so a busy UI thread (touch
+ * handling, inbound message processing) doesn't hold up drawing and vice versa.
+ *
+ * The UI thread takes a snapshot from {@link #obtainSnapshot()}, fills it and
+ * {@link #publish}es it; the render thread draws the newest published snapshot and
+ * gives older ones back to a small pool. Only the newest snapshot is ever drawn, so
+ * if the UI thread publishes faster than frames can be drawn the extra ones are
+ * dropped rather than queued. While the robot is animating the thread keeps drawing
+ * the same snapshot, sampling its robot motion every frame; posting a frame blocks
+ * until the surface has a free buffer, which paces the loop to the display.
+ *
+ * The surface is expected to be transparent and laid out exactly over the view
+ * that publishes the snapshots.
+ */
+public class ArenaRenderThread implements SurfaceHolder.Callback, Runnable {
+    private static final String TAG = "ArenaRenderThread";
+
+    // One being drawn, one published, one being filled
+    private static final int POOL_SIZE = 3;
+
+    private final SurfaceHolder holder;
+    private final ArenaRenderer renderer = new ArenaRenderer();
+
+    // Guarded by lock
+    private final Object lock = new Object();
+    private final ArenaSnapshot[] pool = new ArenaSnapshot[POOL_SIZE];
+    private int pooled = 0;
+    private ArenaSnapshot published = null;   // Newest snapshot, not picked up yet
+    private boolean hasSurface = false;
+    private boolean redraw = false;           // Surface changed, draw the current snapshot again
+    private boolean drawing = false;          // Surface locked by the render thread
+    private boolean running = false;
+
+    private Thread thread;
+    private volatile FrameTimeWindow drawStats = null;
+
+    public ArenaRenderThread(SurfaceHolder holder) {
+        this.holder = holder;
+        renderer.setAnimatesRobot(true);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool[pooled++] = new ArenaSnapshot();
+        }
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        holder.addCallback(this);
+        if (holder.getSurface() != null && holder.getSurface().isValid()) {
+            // Created before we were listening
+            surfaceCreated(holder);
+        }
+        thread = new Thread(this, TAG);
+        thread.start();
+    }
+
+    /**
+     * Stop the thread and wait for it to finish its frame
+     */
+    public void quit() {
+        holder.removeCallback(this);
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Record how long each frame takes to draw into stats, or stop if null
+     */
+    void setDrawStats(FrameTimeWindow stats) {
+        drawStats = stats;
+    }
+
+    /**
+     * Renderer used on the render thread; only for {@link ArenaRenderer#needsTrackVisits}
+     */
+    ArenaRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * A snapshot for the caller to fill and publish
+     */
+    ArenaSnapshot obtainSnapshot() {
+        synchronized (lock) {
+            if (pooled > 0) {
+                ArenaSnapshot snapshot = pool[--pooled];
+                pool[pooled] = null;
+                return snapshot;
+            }
+        }
+        // Pool drained (shouldn't happen with one publisher); grow rather than block
+        return new ArenaSnapshot();
+    }
+
+    /**
+     * Hand a filled snapshot over for drawing. The caller must not touch it again.
+     */
+    void publish(ArenaSnapshot snapshot) {
+        synchronized (lock) {
+            if (published != null) {
+                recycle(published);
+            }
+            published = snapshot;
+            lock.notifyAll();
+        }
+    }
+
+    // Called with lock held
+    private void recycle(ArenaSnapshot snapshot) {
+        if (pooled < POOL_SIZE) {
+            pool[pooled++] = snapshot;
+        }
+    }
+
+    @Override
+    public void run() {
+        ArenaSnapshot current = null;
+        boolean animating = false;
+        while (true) {
+            synchronized (lock) {
+                while (running && (!hasSurface || (published == null && !redraw && !animating))) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+                if (!running) {
+                    break;
+                }
+                if (published != null) {
+                    if (current != null) {
+                        recycle(current);
+                    }
+                    current = published;
+                    published = null;
+                }
+                redraw = false;
+                drawing = true;
+            }
+
+            try {
+                if (current != null) {
+                    animating = drawFrame(current);
+                }
+            } finally {
+                synchronized (lock) {
+                    drawing = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+        renderer.release();
+    }
+
+    /**
+     * Draw one snapshot into the surface. Returns true if the robot is still animating.
+     */
+    private boolean drawFrame(ArenaSnapshot snapshot) {
+        Canvas canvas = null;
+        try {
+            canvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    ? holder.lockHardwareCanvas() : holder.lockCanvas();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not lock the surface", e);
+        }
+        if (canvas == null) {
+            return false;
+        }
+        FrameTimeWindow stats = drawStats;
+        long start = stats != null ? System.nanoTime() : 0;
+        try {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            return renderer.draw(canvas, snapshot);
+        } finally {
+            if (stats != null) {
+                stats.record(System.nanoTime() - start);
+            }
+            holder.unlockCanvasAndPost(canvas);
+        }
+    }
+
+    // SurfaceHolder.Callback, on the UI thread
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        synchronized (lock) {
+            hasSurface = true;
+            redraw = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (lock) {
+            redraw = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface goes away when this returns, so wait out a frame in progress
+        synchronized (lock) {
+            hasSurface = false;
+            while (drawing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,744 @@
+package com.example.mdp_14;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+/**
+ * Draws the arena from an {@link ArenaSnapshot}. Used by {@link ArenaMapView} to
+ * draw in onDraw, and by {@link ArenaRenderThread} to draw into a surface off the UI
+ * thread; a renderer is only ever used from one thread.
+ *
+ * Drawing is layered: the background, grid and labels change only with the size or
+ * viewport, so they are rendered into a cached bitmap when either changes. Each
+ * frame blits that and draws only the track, obstacles, the robot and drag overlays
+ * on top, without allocating.
+ *
+ * Everything is culled to the visible cells, and grid lines and labels are thinned
+ * out as cells get small, so drawing cost depends on the view size rather than the
+ * arena size.
+ *
+ * The track heatmap is kept in a bitmap with one pixel per cell. The renderer keeps
+ * its own visit counts and only paints the cells under trail positions it hasn't
+ * seen yet; when it can't catch up from the trail (after a clear, a resize, or more
+ * new positions than the trail holds) it asks for a full copy of the visits with
+ * {@link #needsTrackVisits}.
+ */
+public class ArenaRenderer {
+    private static final float MAP_CORNER_RADIUS = 12f;
+
+    // Level of detail: grid lines closer than this are thinned out, labels are kept
+    // between these sizes and thinned out instead of shrinking, and obstacle details
+    // are skipped on cells smaller than MIN_DETAIL_CELL_PX
+    private static final float MIN_LINE_SPACING_PX = 6f;
+    private static final float MIN_LABEL_TEXT_PX = 14f;
+    private static final float MAX_LABEL_TEXT_PX = 24f;
+    private static final float MIN_DETAIL_CELL_PX = 12f;
+
+    // Heatmap colour steps
+    private static final int HEAT_LEVELS = 8;
+
+    // Performance HUD box, in the top left corner of the grid area
+    private static final float HUD_MARGIN = 8f;
+    private static final float HUD_PADDING = 8f;
+    private static final float HUD_TEXT_PX = 22f;
+
+    // Paints
+    private final Paint mapBgPaint;
+    private final Paint gridPaint;
+    private final Paint obstaclePaint;
+    private final Paint obstacleDeletePaint;  // For drag-to-delete visual feedback
+    private final Paint targetIndicatorPaint;
+    private final Paint gridLabelPaint;
+    private final Paint selectedPaint;
+    private final Paint robotPaint;
+    private final Paint robotDirectionPaint;
+    private final Paint tooltipBgPaint;
+    private final Paint tooltipTextPaint;
+    private final Paint obstacleIdPaint;       // Obstacle number, before recognition
+    private final Paint recognizedTargetPaint; // Recognized target id, larger and bold
+    private final Paint heatPaint;             // Heatmap bitmap, unfiltered so cells stay sharp
+    private final Paint trailPaint;
+    private final Paint hudBgPaint;
+    private final Paint hudTextPaint;
+    private final float hudLineHeight;
+    private final float hudAscent;
+    private float textCellSize = -1;           // Cell size the text sizes were set for
+
+    // Static layer: background, grid lines and labels, redrawn when the viewport changes
+    private Bitmap gridLayer;
+    private Canvas gridLayerCanvas;
+    private int layerGridSize;
+    private float layerCellSize, layerOffsetX, layerOffsetY;
+    private final RectF layerGridArea = new RectF();
+    private final RectF mapRect = new RectF();
+    private float[] gridLines = new float[0];
+    private final char[] labelChars = new char[8];
+
+    // Heatmap: visit counts as far as this renderer has seen them, one pixel per cell
+    // (row 0 = top grid row). Read by needsTrackVisits() from the UI thread.
+    private Bitmap heatLayer;
+    private int[] heatVisits = new int[0];
+    private volatile int heatGridSize = -1;
+    private volatile int heatGeneration;
+    private volatile long heatRecordCount;
+    private final int[] heatColors = new int[HEAT_LEVELS + 1];
+    private final RectF heatRect = new RectF();
+    private float[] trailLines = new float[0];
+
+    // Drawn robot pose; sampled here too when animatesRobot
+    private final RobotMotion robotPose = new RobotMotion();
+    private boolean animatesRobot = false;
+
+    // Scratch objects reused by every frame so drawing allocates nothing
+    private final RectF drawRect = new RectF();
+    private final RectF indicatorRect = new RectF();
+    private final Path robotPath = new Path();
+    private final Paint.FontMetrics tooltipFontMetrics = new Paint.FontMetrics();
+    private final RectF hudRect = new RectF();
+
+    // Tooltip text "(x,y)", rebuilt only when the coordinates change
+    private final char[] tooltipChars = new char[24];
+    private int tooltipLength = 0;
+    private int tooltipGridX = -1;
+    private int tooltipGridY = -1;
+    private float tooltipTextWidth;
+
+    public ArenaRenderer() {
+        // Map background paint
+        mapBgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mapBgPaint.setColor(Color.parseColor("#E8EFFE"));
+        mapBgPaint.setStyle(Paint.Style.FILL);
+
+        // Grid lines paint
+        gridPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        gridPaint.setColor(Color.parseColor("#403D7EFF"));
+        gridPaint.setStrokeWidth(1f);
+        gridPaint.setStyle(Paint.Style.STROKE);
+
+        // Obstacle fill paint
+        obstaclePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        obstaclePaint.setColor(Color.BLACK);
+        obstaclePaint.setStyle(Paint.Style.FILL);
+
+        // Obstacle delete preview paint (red, semi-transparent)
+        obstacleDeletePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        obstacleDeletePaint.setColor(Color.parseColor("#80FF0000"));  // Semi-transparent red
+        obstacleDeletePaint.setStyle(Paint.Style.FILL);
+
+        // Target indicator paint
+        targetIndicatorPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        targetIndicatorPaint.setColor(Color.RED);
+        targetIndicatorPaint.setStyle(Paint.Style.FILL);
+
+        // Obstacle number and recognized target paints (sizes follow the cell size)
+        obstacleIdPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        obstacleIdPaint.setColor(Color.WHITE);
+        obstacleIdPaint.setTextAlign(Paint.Align.CENTER);
+        recognizedTargetPaint = new Paint(obstacleIdPaint);
+        recognizedTargetPaint.setFakeBoldText(true);
+
+        // Grid label paint
+        gridLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        gridLabelPaint.setColor(Color.parseColor("#9BA5C0"));
+        gridLabelPaint.setTextSize(24f);
+        gridLabelPaint.setTextAlign(Paint.Align.CENTER);
+
+        // Selected highlight
+        selectedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        selectedPaint.setColor(Color.parseColor("#3D7EFF"));
+        selectedPaint.setStrokeWidth(4f);
+        selectedPaint.setStyle(Paint.Style.STROKE);
+
+        // Tooltip paint
+        tooltipBgPaint = new Paint();
+        tooltipBgPaint.setColor(Color.parseColor("#DD000000"));
+        tooltipBgPaint.setStyle(Paint.Style.FILL);
+        tooltipBgPaint.setAntiAlias(true);
+
+        tooltipTextPaint = new Paint();
+        tooltipTextPaint.setColor(Color.WHITE);
+        tooltipTextPaint.setTextSize(18);
+        tooltipTextPaint.setTextAlign(Paint.Align.CENTER);
+        tooltipTextPaint.setAntiAlias(true);
+
+        // Robot body paint
+        robotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        robotPaint.setColor(Color.parseColor("#00C9A0")); // Green
+        robotPaint.setStyle(Paint.Style.FILL);
+
+        // Track overlay: heatmap from translucent amber (1 visit) to red (HEAT_LEVELS+)
+        heatPaint = new Paint();
+        heatPaint.setFilterBitmap(false);
+        for (int level = 1; level <= HEAT_LEVELS; level++) {
+            float t = (level - 1) / (float) (HEAT_LEVELS - 1);
+            heatColors[level] = Color.argb((int) (60 + 100 * t), 255, (int) (193 - 150 * t), (int) (7 + 47 * t));
+        }
+
+        trailPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        trailPaint.setColor(Color.parseColor("#B3007A62")); // Translucent dark green, as the robot
+        trailPaint.setStrokeWidth(3f);
+        trailPaint.setStyle(Paint.Style.STROKE);
+
+        // Robot direction indicator paint
+        robotDirectionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        robotDirectionPaint.setColor(Color.parseColor("#007A62")); // Dark green
+        robotDirectionPaint.setStyle(Paint.Style.FILL);
+
+        // Performance HUD: monospace so the numbers don't jitter as they change
+        hudBgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        hudBgPaint.setColor(Color.parseColor("#B3000000"));
+        hudBgPaint.setStyle(Paint.Style.FILL);
+
+        hudTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        hudTextPaint.setColor(Color.WHITE);
+        hudTextPaint.setTextSize(HUD_TEXT_PX);
+        hudTextPaint.setTypeface(Typeface.MONOSPACE);
+        Paint.FontMetrics hudFontMetrics = new Paint.FontMetrics();
+        hudTextPaint.getFontMetrics(hudFontMetrics);
+        hudAscent = hudFontMetrics.ascent;
+        hudLineHeight = hudFontMetrics.descent - hudFontMetrics.ascent;
+    }
+
+    /**
+     * Sample the snapshot's robot motion at draw time instead of drawing its pose as
+     * captured. For renderers that run their own frame loop.
+     */
+    public void setAnimatesRobot(boolean animatesRobot) {
+        this.animatesRobot = animatesRobot;
+    }
+
+    /**
+     * Draw a frame. Returns true if the robot is still animating and another frame
+     * should follow (only when animating the robot here).
+     */
+    public boolean draw(Canvas canvas, ArenaSnapshot snapshot) {
+        if (snapshot.cellSize != textCellSize) {
+            updateTextSizes(snapshot.cellSize);
+        }
+
+        // Static layer: one bitmap blit instead of the background, lines and labels
+        if (gridLayer == null || gridLayer.getWidth() != snapshot.width
+                || gridLayer.getHeight() != snapshot.height) {
+            rebuildGridLayer(snapshot);
+        } else if (!isGridLayerValid(snapshot)) {
+            renderGridLayer(snapshot);
+        }
+        if (gridLayer != null) {
+            canvas.drawBitmap(gridLayer, 0, 0, null);
+        } else {
+            drawStaticLayer(canvas, snapshot);
+        }
+
+        // Dynamic layer: only what can change between frames. Nothing below
+        // allocates; paints, rects, the path and label text are all reused.
+        // Obstacles and the robot stay inside the grid area, clear of the labels.
+        int saveCount = canvas.save();
+        canvas.clipRect(snapshot.gridArea);
+
+        if (snapshot.showTrack) {
+            drawTrack(canvas, snapshot);
+        }
+
+        for (int i = 0; i < snapshot.obstacleCount; i++) {
+            drawObstacle(canvas, snapshot, i);
+        }
+
+        // Draw robot on top
+        boolean animating = false;
+        if (snapshot.hasRobot) {
+            robotPose.copyFrom(snapshot.robotMotion);
+            if (animatesRobot) {
+                animating = robotPose.sample(System.nanoTime());
+            }
+            drawRobot(canvas, snapshot);
+        }
+        canvas.restoreToCount(saveCount);
+
+        // Draw dragged obstacle at its current drag position, which may be off the grid
+        if (snapshot.dragging) {
+            drawDraggedObstacle(canvas, snapshot);
+        }
+
+        if (snapshot.hudLineCount > 0) {
+            drawHud(canvas, snapshot);
+        }
+        return animating;
+    }
+
+    /**
+     * Whether the next snapshot should carry a full copy of the track's visits,
+     * because the heatmap can't be brought up to date from the trail alone. Safe to
+     * call from any thread; a stale answer costs one extra copy or one frame without
+     * the newest heat.
+     */
+    public boolean needsTrackVisits(RobotTrack track) {
+        long unseen = track.getRecordCount() - heatRecordCount;
+        return track.getGridSize() != heatGridSize || track.getGeneration() != heatGeneration
+                || unseen < 0 || unseen > track.getTrailLength();
+    }
+
+    /**
+     * Free the cached bitmaps; they are recreated by the next draw
+     */
+    public void release() {
+        if (gridLayer != null) {
+            gridLayer.recycle();
+            gridLayer = null;
+            gridLayerCanvas = null;
+        }
+        if (heatLayer != null) {
+            heatLayer.recycle();
+            heatLayer = null;
+        }
+        heatGridSize = -1;
+    }
+
+    private void updateTextSizes(float cellSize) {
+        textCellSize = cellSize;
+        obstacleIdPaint.setTextSize(cellSize * 0.35f);
+        recognizedTargetPaint.setTextSize(cellSize * 0.7f);
+        gridLabelPaint.setTextSize(Math.max(MIN_LABEL_TEXT_PX, Math.min(MAX_LABEL_TEXT_PX, cellSize * 0.4f)));
+    }
+
+    /**
+     * Whether a screen rectangle overlaps the visible part of the grid
+     */
+    private static boolean isVisible(ArenaSnapshot s, float left, float top, float right, float bottom) {
+        return right > s.gridArea.left && left < s.gridArea.right && bottom > s.gridArea.top && top < s.gridArea.bottom;
+    }
+
+    /**
+     * Smallest step of 1, 2 or 5 times a power of ten that is at least minCells,
+     * for thinning out grid lines and labels
+     */
+    private static int niceStep(float minCells) {
+        int step = 1;
+        while (true) {
+            if (step >= minCells) return step;
+            if (step * 2 >= minCells) return step * 2;
+            if (step * 5 >= minCells) return step * 5;
+            step *= 10;
+        }
+    }
+
+    // Static layer
+
+    /**
+     * Allocate the view-sized static layer bitmap and render it. Runs when the size
+     * changes; viewport changes re-render into the same bitmap.
+     */
+    private void rebuildGridLayer(ArenaSnapshot s) {
+        if (gridLayer != null) {
+            gridLayer.recycle();
+            gridLayer = null;
+            gridLayerCanvas = null;
+        }
+        if (s.width <= 0 || s.height <= 0 || s.cellSize <= 0) {
+            return;
+        }
+        gridLayer = Bitmap.createBitmap(s.width, s.height, Bitmap.Config.ARGB_8888);
+        gridLayerCanvas = new Canvas(gridLayer);
+        renderGridLayer(s);
+    }
+
+    private boolean isGridLayerValid(ArenaSnapshot s) {
+        return s.gridSize == layerGridSize && s.cellSize == layerCellSize
+                && s.offsetX == layerOffsetX && s.offsetY == layerOffsetY
+                && s.gridArea.equals(layerGridArea);
+    }
+
+    private void renderGridLayer(ArenaSnapshot s) {
+        gridLayer.eraseColor(Color.TRANSPARENT);
+        drawStaticLayer(gridLayerCanvas, s);
+        layerGridSize = s.gridSize;
+        layerCellSize = s.cellSize;
+        layerOffsetX = s.offsetX;
+        layerOffsetY = s.offsetY;
+        layerGridArea.set(s.gridArea);
+    }
+
+    /**
+     * Inset map background with rounded corners, grid lines and row/column labels,
+     * for the visible part of the grid only
+     */
+    private void drawStaticLayer(Canvas canvas, ArenaSnapshot s) {
+        float extent = s.gridSize * s.cellSize;
+        mapRect.set(
+                Math.max(s.offsetX, s.gridArea.left),
+                Math.max(s.offsetY, s.gridArea.top),
+                Math.min(s.offsetX + extent, s.gridArea.right),
+                Math.min(s.offsetY + extent, s.gridArea.bottom)
+        );
+        canvas.drawRoundRect(mapRect, MAP_CORNER_RADIUS, MAP_CORNER_RADIUS, mapBgPaint);
+
+        drawGrid(canvas, s);
+    }
+
+    private void drawGrid(Canvas canvas, ArenaSnapshot s) {
+        int gridSize = s.gridSize;
+        float cellSize = s.cellSize;
+        float offsetX = s.offsetX;
+        float offsetY = s.offsetY;
+
+        // Visible columns and screen rows (row 0 at the top), as line indices
+        int firstColumn = Math.max(0, (int) Math.floor((mapRect.left - offsetX) / cellSize));
+        int lastColumn = Math.min(gridSize, (int) Math.ceil((mapRect.right - offsetX) / cellSize));
+        int firstRow = Math.max(0, (int) Math.floor((mapRect.top - offsetY) / cellSize));
+        int lastRow = Math.min(gridSize, (int) Math.ceil((mapRect.bottom - offsetY) / cellSize));
+
+        // Thin lines out when cells get tiny, always keeping the outer border.
+        // All vertical and horizontal lines in one call.
+        int lineStep = niceStep(MIN_LINE_SPACING_PX / cellSize);
+        int maxLines = (lastColumn - firstColumn) / lineStep + (lastRow - firstRow) / lineStep + 6;
+        if (gridLines.length < maxLines * 4) {
+            gridLines = new float[maxLines * 4];
+        }
+        float[] lines = gridLines;
+        int n = 0;
+        for (int i = firstColumn; i <= lastColumn; i++) {
+            if (i % lineStep == 0 || i == gridSize) {
+                float x = offsetX + i * cellSize;
+                lines[n++] = x;
+                lines[n++] = mapRect.top;
+                lines[n++] = x;
+                lines[n++] = mapRect.bottom;
+            }
+        }
+        for (int i = firstRow; i <= lastRow; i++) {
+            if (i % lineStep == 0 || i == gridSize) {
+                float y = offsetY + i * cellSize;
+                lines[n++] = mapRect.left;
+                lines[n++] = y;
+                lines[n++] = mapRect.right;
+                lines[n++] = y;
+            }
+        }
+        canvas.drawLines(lines, 0, n, gridPaint);
+
+        // Labels keep a readable size; show every column/row, or every 2nd, 5th, 10th...
+        float textSize = gridLabelPaint.getTextSize();
+        int digits = gridSize > 100 ? 3 : 2;
+        int columnStep = niceStep(textSize * 0.6f * (digits + 1) / cellSize);
+        int rowStep = niceStep(textSize * 1.2f / cellSize);
+
+        // Column labels at the bottom, 0 on the left
+        float labelY = mapRect.bottom + textSize + 5;
+        for (int i = firstColumn; i < lastColumn; i++) {
+            float x = offsetX + i * cellSize + cellSize / 2;
+            if (i % columnStep == 0 && x >= mapRect.left && x <= mapRect.right) {
+                int length = TextChars.appendInt(labelChars, 0, i);
+                canvas.drawText(labelChars, 0, length, x, labelY, gridLabelPaint);
+            }
+        }
+
+        // Row labels on the left, 0 at the bottom
+        float labelX = mapRect.left - 15;
+        for (int i = firstRow; i < lastRow; i++) {
+            int gridY = gridSize - 1 - i;  // Flip: screen row 0 = top grid row
+            float y = offsetY + i * cellSize + cellSize / 2;
+            if (gridY % rowStep == 0 && y >= mapRect.top && y <= mapRect.bottom) {
+                int length = TextChars.appendInt(labelChars, 0, gridY);
+                canvas.drawText(labelChars, 0, length, labelX, y + textSize / 3, gridLabelPaint);
+            }
+        }
+    }
+
+    // Track overlay
+
+    /**
+     * Visit heatmap (one bitmap blit) and the trail through the footprint centres
+     */
+    private void drawTrack(Canvas canvas, ArenaSnapshot s) {
+        updateHeatLayer(s);
+        float extent = s.gridSize * s.cellSize;
+        if (heatLayer != null && heatGridSize == s.gridSize) {
+            heatRect.set(s.offsetX, s.offsetY, s.offsetX + extent, s.offsetY + extent);
+            canvas.drawBitmap(heatLayer, null, heatRect, heatPaint);
+        }
+
+        int points = s.trailLength;
+        if (points < 2) {
+            return;
+        }
+        if (trailLines.length < points * 4) {
+            trailLines = new float[Math.max(points * 4, trailLines.length * 2)];
+        }
+        float half = Robot.SIZE / 2f;
+        int n = 0;
+        float lastX = s.offsetX + (s.trailX[0] + half) * s.cellSize;
+        float lastY = s.offsetY + (s.gridSize - s.trailY[0] - half) * s.cellSize;
+        for (int i = 1; i < points; i++) {
+            float x = s.offsetX + (s.trailX[i] + half) * s.cellSize;
+            float y = s.offsetY + (s.gridSize - s.trailY[i] - half) * s.cellSize;
+            trailLines[n++] = lastX;
+            trailLines[n++] = lastY;
+            trailLines[n++] = x;
+            trailLines[n++] = y;
+            lastX = x;
+            lastY = y;
+        }
+        canvas.drawLines(trailLines, 0, n, trailPaint);
+    }
+
+    /**
+     * Bring the heatmap up to date: rebuild it from a full copy of the visits, or
+     * paint only the footprints of the trail positions recorded since the last frame
+     */
+    private void updateHeatLayer(ArenaSnapshot s) {
+        if (s.hasVisits) {
+            int size = s.trackGridSize;
+            if (heatLayer == null || heatGridSize != size) {
+                if (heatLayer != null) {
+                    heatLayer.recycle();
+                }
+                heatLayer = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+                heatVisits = new int[size * size];
+            } else {
+                heatLayer.eraseColor(Color.TRANSPARENT);
+            }
+            System.arraycopy(s.visits, 0, heatVisits, 0, heatVisits.length);
+            heatGridSize = size;
+            for (int cellY = 0; cellY < size; cellY++) {
+                for (int cellX = 0; cellX < size; cellX++) {
+                    if (heatVisits[cellY * size + cellX] > 0) {
+                        paintHeatCell(cellX, cellY, size);
+                    }
+                }
+            }
+            heatGeneration = s.trackGeneration;
+            heatRecordCount = s.trackRecordCount;
+            return;
+        }
+
+        long unseen = s.trackRecordCount - heatRecordCount;
+        if (heatLayer == null || s.trackGridSize != heatGridSize || s.trackGeneration != heatGeneration
+                || unseen < 0 || unseen > s.trailLength) {
+            // Out of step; needsTrackVisits() now asks for a full copy
+            return;
+        }
+        int size = heatGridSize;
+        for (int i = s.trailLength - (int) unseen; i < s.trailLength; i++) {
+            int x = s.trailX[i];
+            int y = s.trailY[i];
+            for (int cellY = Math.max(0, y); cellY < y + Robot.SIZE && cellY < size; cellY++) {
+                for (int cellX = Math.max(0, x); cellX < x + Robot.SIZE && cellX < size; cellX++) {
+                    heatVisits[cellY * size + cellX]++;
+                    paintHeatCell(cellX, cellY, size);
+                }
+            }
+        }
+        heatRecordCount = s.trackRecordCount;
+    }
+
+    private void paintHeatCell(int cellX, int cellY, int size) {
+        int level = Math.min(HEAT_LEVELS, heatVisits[cellY * size + cellX]);
+        // Flip Y: bitmap row 0 is the top grid row
+        heatLayer.setPixel(cellX, size - 1 - cellY, heatColors[level]);
+    }
+
+    // Obstacles
+
+    private void drawObstacle(Canvas canvas, ArenaSnapshot s, int index) {
+        float cellSize = s.cellSize;
+        float left = s.offsetX + s.obstacleX[index] * cellSize;
+        // Flip Y: gridY=0 at bottom, so higher gridY = lower screen Y
+        float top = s.offsetY + (s.gridSize - s.obstacleY[index] - s.obstacleHeight[index]) * cellSize;
+        float right = left + s.obstacleWidth[index] * cellSize;
+        float bottom = top + s.obstacleHeight[index] * cellSize;
+        if (!isVisible(s, left, top, right, bottom)) {
+            return;
+        }
+
+        drawRect.set(left + 2, top + 2, right - 2, bottom - 2);
+        canvas.drawRect(drawRect, obstaclePaint);
+
+        if (index == s.selectedIndex) {
+            canvas.drawRect(drawRect, selectedPaint);
+        }
+
+        // Too small to make out the face or the text
+        if (cellSize < MIN_DETAIL_CELL_PX) {
+            return;
+        }
+
+        // Always draw target face indicator (red bar showing which face has the target image)
+        drawTargetFaceIndicator(canvas, s.obstacleFace[index], cellSize, left, top, right, bottom);
+
+        float centerX = (left + right) / 2;
+        float centerY = (top + bottom) / 2;
+
+        // A recognized target shows only its id, larger; otherwise the obstacle number
+        Paint textPaint = s.obstacleRecognized[index] ? recognizedTargetPaint : obstacleIdPaint;
+        canvas.drawText(s.obstacleLabel[index], centerX, centerY + textPaint.getTextSize() / 3, textPaint);
+    }
+
+    /**
+     * Draw obstacle being dragged at its current screen position with delete feedback
+     */
+    private void drawDraggedObstacle(Canvas canvas, ArenaSnapshot s) {
+        float left = s.dragScreenX;
+        float top = s.dragScreenY;
+        float right = left + s.dragWidth * s.cellSize;
+        float bottom = top + s.dragHeight * s.cellSize;
+
+        drawRect.set(left + 2, top + 2, right - 2, bottom - 2);
+
+        // Use delete paint if outside grid, otherwise normal paint
+        if (s.dragOutside) {
+            canvas.drawRect(drawRect, obstacleDeletePaint);
+        } else {
+            canvas.drawRect(drawRect, obstaclePaint);
+            canvas.drawRect(drawRect, selectedPaint);  // Always show selection when dragging
+        }
+
+        // Draw target face indicator
+        drawTargetFaceIndicator(canvas, s.dragFace, s.cellSize, left, top, right, bottom);
+
+        // Draw obstacle ID (smaller font)
+        float centerX = (left + right) / 2;
+        float centerY = (top + bottom) / 2;
+        canvas.drawText(s.dragLabel, centerX, centerY + obstacleIdPaint.getTextSize() / 3, obstacleIdPaint);
+
+        if (!s.dragOutside) {
+            drawCoordinateTooltip(canvas, s.dragGridX, s.dragGridY, s.cellSize, centerX, top);
+        }
+    }
+
+    private void drawCoordinateTooltip(Canvas canvas, int gridX, int gridY, float cellSize,
+                                       float centerX, float obstacleTop) {
+        layoutTooltip(gridX, gridY, cellSize, centerX, obstacleTop, drawRect);
+        canvas.drawRoundRect(drawRect, cellSize * 0.2f, cellSize * 0.2f, tooltipBgPaint);
+
+        // Draw text at vertical center of tooltip
+        float textCenterY = (drawRect.top + drawRect.bottom) / 2;
+        tooltipTextPaint.getFontMetrics(tooltipFontMetrics);
+        float textY = textCenterY - (tooltipFontMetrics.descent + tooltipFontMetrics.ascent) / 2;
+
+        canvas.drawText(tooltipChars, 0, tooltipLength, centerX, textY, tooltipTextPaint);
+    }
+
+    /**
+     * Format the tooltip text for a cell and put the tooltip's screen bounds in out.
+     * Shared by drawing and the view's dirty-region tracking.
+     */
+    void layoutTooltip(int gridX, int gridY, float cellSize, float centerX, float obstacleTop, RectF out) {
+        // Text is "(x,y)"; reformat and remeasure only when the snapped cell changes
+        if (gridX != tooltipGridX || gridY != tooltipGridY) {
+            tooltipGridX = gridX;
+            tooltipGridY = gridY;
+            int length = 0;
+            tooltipChars[length++] = '(';
+            length = TextChars.appendInt(tooltipChars, length, tooltipGridX);
+            tooltipChars[length++] = ',';
+            length = TextChars.appendInt(tooltipChars, length, tooltipGridY);
+            tooltipChars[length++] = ')';
+            tooltipLength = length;
+            tooltipTextWidth = tooltipTextPaint.measureText(tooltipChars, 0, tooltipLength);
+        }
+
+        float paddingVertical = 20;
+        float tooltipWidth = tooltipTextWidth + cellSize * 0.8f;
+        float tooltipHeight = tooltipTextPaint.getTextSize() + (paddingVertical * 2);
+
+        float tooltipX = centerX - tooltipWidth / 2;
+        float tooltipY = obstacleTop - tooltipHeight - cellSize * 0.3f;
+
+        out.set(tooltipX, tooltipY, tooltipX + tooltipWidth, tooltipY + tooltipHeight);
+    }
+
+    /**
+     * Draw the red indicator bar showing which face has the target image
+     */
+    private void drawTargetFaceIndicator(Canvas canvas, Obstacle.Direction face, float cellSize,
+                                          float left, float top, float right, float bottom) {
+        float indicatorThickness = cellSize * 0.15f;
+
+        switch (face) {
+            case NORTH:
+                indicatorRect.set(left + 2, top + 2, right - 2, top + indicatorThickness);
+                break;
+            case SOUTH:
+                indicatorRect.set(left + 2, bottom - indicatorThickness, right - 2, bottom - 2);
+                break;
+            case EAST:
+                indicatorRect.set(right - indicatorThickness, top + 2, right - 2, bottom - 2);
+                break;
+            case WEST:
+                indicatorRect.set(left + 2, top + 2, left + indicatorThickness, bottom - 2);
+                break;
+            default:
+                return;
+        }
+
+        canvas.drawRect(indicatorRect, targetIndicatorPaint);
+    }
+
+    // Performance HUD
+
+    /**
+     * Put the screen bounds of the HUD box for the given text in out. Shared by
+     * drawing and the view's dirty-region tracking.
+     */
+    void layoutHud(char[][] lines, int[] lengths, int count, RectF gridArea, RectF out) {
+        float width = 0;
+        for (int i = 0; i < count; i++) {
+            width = Math.max(width, hudTextPaint.measureText(lines[i], 0, lengths[i]));
+        }
+        float left = gridArea.left + HUD_MARGIN;
+        float top = gridArea.top + HUD_MARGIN;
+        out.set(left, top, left + width + HUD_PADDING * 2, top + count * hudLineHeight + HUD_PADDING * 2);
+    }
+
+    private void drawHud(Canvas canvas, ArenaSnapshot s) {
+        layoutHud(s.hudLines, s.hudLengths, s.hudLineCount, s.gridArea, hudRect);
+        canvas.drawRoundRect(hudRect, HUD_PADDING, HUD_PADDING, hudBgPaint);
+
+        float x = hudRect.left + HUD_PADDING;
+        float baseline = hudRect.top + HUD_PADDING - hudAscent;
+        for (int i = 0; i < s.hudLineCount; i++) {
+            canvas.drawText(s.hudLines[i], 0, s.hudLengths[i], x, baseline, hudTextPaint);
+            baseline += hudLineHeight;
+        }
+    }
+
+    // Robot
+
+    private void drawRobot(Canvas canvas, ArenaSnapshot s) {
+        float cellSize = s.cellSize;
+        float left = s.offsetX + robotPose.getX() * cellSize;
+        // Flip Y: gridY=0 at bottom
+        float top = s.offsetY + (s.gridSize - robotPose.getY() - Robot.SIZE) * cellSize;
+        float right = left + Robot.SIZE * cellSize;
+        float bottom = top + Robot.SIZE * cellSize;
+        if (!isVisible(s, left, top, right, bottom)) {
+            return;
+        }
+
+        // Draw robot body (green square)
+        drawRect.set(left + 3, top + 3, right - 3, bottom - 3);
+        canvas.drawRect(drawRect, robotPaint);
+
+        // Draw direction triangle pointing north, rotated to the (possibly
+        // mid-turn) heading
+        float centerX = (left + right) / 2;
+        float centerY = (top + bottom) / 2;
+        float triangleSize = cellSize * 0.6f;
+
+        Path triangle = robotPath;
+        triangle.rewind();
+        triangle.moveTo(centerX, top + 6);                          // Top point
+        triangle.lineTo(centerX - triangleSize / 2, centerY);       // Bottom left
+        triangle.lineTo(centerX + triangleSize / 2, centerY);       // Bottom right
+        triangle.close();
+
+        int saveCount = canvas.save();
+        canvas.rotate(robotPose.getHeading(), centerX, centerY);
+        canvas.drawPath(triangle, robotDirectionPaint);
+        canvas.restoreToCount(saveCount);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.mdp_14;
+
+import android.graphics.RectF;
+
+/**
+ * Everything {@link ArenaRenderer} needs to draw one frame of the arena, copied out
+ * of {@link ArenaMapView} on the UI thread. Once handed to a renderer a snapshot is
+ * not modified until it is given back, so a render thread can draw it while the UI
+ * thread carries on changing the model.
+ *
+ * Snapshots are pooled and refilled in place: arrays only grow, so capturing a frame
+ * allocates nothing once the pool has warmed up.
+ */
+public final class ArenaSnapshot {
+    // Viewport (see ArenaMapView)
+    int width, height;
+    int gridSize;
+    float cellSize;
+    float offsetX, offsetY;
+    final RectF gridArea = new RectF();
+
+    // Obstacles in drawing order, without the dragged one
+    int obstacleCount;
+    int[] obstacleX = new int[0];
+    int[] obstacleY = new int[0];
+    int[] obstacleWidth = new int[0];
+    int[] obstacleHeight = new int[0];
+    Obstacle.Direction[] obstacleFace = new Obstacle.Direction[0];
+    // Recognized target id if there is one, else the obstacle number
+    String[] obstacleLabel = new String[0];
+    boolean[] obstacleRecognized = new boolean[0];
+    int selectedIndex = -1;
+
+    // Obstacle being dragged, drawn at its screen position
+    boolean dragging;
+    float dragScreenX, dragScreenY;
+    int dragGridX, dragGridY;
+    int dragWidth, dragHeight;
+    Obstacle.Direction dragFace;
+    String dragLabel;
+    boolean dragOutside;
+
+    // Robot, as a copy of the view's motion so the renderer can keep animating it
+    boolean hasRobot;
+    final RobotMotion robotMotion = new RobotMotion();
+
+    // Track overlay: the trail (oldest first) and the counters telling the renderer
+    // which positions its heatmap hasn't seen. Visits are only copied when asked for.
+    boolean showTrack;
+    int trackGridSize;
+    int trackGeneration;
+    long trackRecordCount;
+    int trailLength;
+    int[] trailX = new int[0];
+    int[] trailY = new int[0];
+    boolean hasVisits;
+    int[] visits = new int[0];
+
+    // Performance HUD text, drawn over everything; no lines while it is hidden
+    int hudLineCount;
+    char[][] hudLines = new char[0][];
+    int[] hudLengths = new int[0];
+
+    void ensureObstacleCapacity(int count) {
+        if (obstacleX.length >= count) {
+            return;
+        }
+        int capacity = Math.max(count, obstacleX.length * 2);
+        obstacleX = new int[capacity];
+        obstacleY = new int[capacity];
+        obstacleWidth = new int[capacity];
+        obstacleHeight = new int[capacity];
+        obstacleFace = new Obstacle.Direction[capacity];
+        obstacleLabel = new String[capacity];
+        obstacleRecognized = new boolean[capacity];
+    }
+
+    void setObstacle(int index, Obstacle obstacle) {
+        obstacleX[index] = obstacle.getGridX();
+        obstacleY[index] = obstacle.getGridY();
+        obstacleWidth[index] = obstacle.getWidth();
+        obstacleHeight[index] = obstacle.getHeight();
+        obstacleFace[index] = obstacle.getTargetFace();
+        obstacleRecognized[index] = obstacle.hasRecognizedTarget();
+        obstacleLabel[index] = obstacle.hasRecognizedTarget()
+                ? obstacle.getRecognizedTargetId() : obstacle.getIdLabel();
+    }
+
+    /**
+     * Copy the HUD text, count lines of lengths[i] chars
+     */
+    void setHud(char[][] lines, int[] lengths, int count) {
+        if (hudLines.length < count) {
+            hudLines = new char[count][];
+            hudLengths = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            if (hudLines[i] == null || hudLines[i].length < lengths[i]) {
+                hudLines[i] = new char[lines[i].length];
+            }
+            System.arraycopy(lines[i], 0, hudLines[i], 0, lengths[i]);
+            hudLengths[i] = lengths[i];
+        }
+        hudLineCount = count;
+    }
+
+    /**
+     * Copy the track's trail and counters, and its visit counts if withVisits
+     */
+    void setTrack(RobotTrack track, boolean withVisits) {
+        trackGridSize = track.getGridSize();
+        trackGeneration = track.getGeneration();
+        trackRecordCount = track.getRecordCount();
+        if (trailX.length < track.getTrailLength()) {
+            int capacity = Math.max(track.getTrailLength(), trailX.length * 2);
+            trailX = new int[capacity];
+            trailY = new int[capacity];
+        }
+        trailLength = track.copyTrail(trailX, trailY);
+
+        hasVisits = withVisits;
+        if (withVisits) {
+            int cells = trackGridSize * trackGridSize;
+            if (visits.length != cells) {
+                visits = new int[cells];
+            }
+            track.copyVisits(visits);
+        }
+    }
+}
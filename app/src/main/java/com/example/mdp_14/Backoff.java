@@ -0,0 +1,40 @@
+package com.example.mdp_14;
+
+/**
+ * Exponential backoff for reconnect attempts: starts small so a brief link blip
+ * recovers in tens of milliseconds, and grows towards a cap when the link stays down.
+ */
+public class Backoff {
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private long nextDelayMs;
+    private int attempts = 0;
+
+    public Backoff(long initialDelayMs, long maxDelayMs) {
+        this.initialDelayMs = initialDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.nextDelayMs = initialDelayMs;
+    }
+
+    /**
+     * Delay before the next attempt; each call doubles the following delay up to the cap
+     */
+    public synchronized long nextDelay() {
+        long delay = nextDelayMs;
+        nextDelayMs = Math.min(maxDelayMs, nextDelayMs * 2);
+        attempts++;
+        return delay;
+    }
+
+    /**
+     * Call after a successful connection so the next outage starts fast again
+     */
+    public synchronized void reset() {
+        nextDelayMs = initialDelayMs;
+        attempts = 0;
+    }
+
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+}
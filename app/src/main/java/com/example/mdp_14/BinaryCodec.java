@@ -0,0 +1,284 @@
+package com.example.mdp_14;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compact binary encoding for the hot message categories, used instead of JSON
+ * once both ends agree on it during the capability handshake.
+ *
+ * Frame layout (all integers big-endian):
+ *   [0xA5 magic] [u16 length of what follows] [u8 category] [payload]
+ *
+ * Payloads:
+ *   location  : x u8, y u8, d u8
+ *   image-rec : obstacle_id u8, image_id length u8, image_id ASCII
+ *   status    : length u8, UTF-8 text
+ *   obstacles : version u32, count u8, then per obstacle id u8, x u8, y u8, d u8
+ *   control   : u8 (1 = start, 2 = stop)
+ *   sequenced : seq u32, then the category and payload of the wrapped message
+ *
+ * The magic byte can never start a UTF-8 text frame, so binary and JSON frames can
+ * share the link and are told apart by {@link FrameDecoder} on their first byte.
+ *
+ * Encoders return null for a message the layout can't carry (a field outside its
+ * u8/u32 range, text longer than 255 bytes, more than 255 obstacles) rather than
+ * truncating it; such messages are sent as JSON instead.
+ */
+public final class BinaryCodec {
+    public static final String NAME = "bin1";
+
+    public static final byte MAGIC = (byte) 0xA5;
+    public static final int HEADER_SIZE = 3; // magic + u16 length
+
+    public static final int CAT_LOCATION = 1;
+    public static final int CAT_IMAGE_REC = 2;
+    public static final int CAT_STATUS = 3;
+    public static final int CAT_OBSTACLES = 4;
+    public static final int CAT_CONTROL = 5;
+    public static final int CAT_SEQUENCED = 6;
+
+    public static final int CONTROL_START = 1;
+    public static final int CONTROL_STOP = 2;
+
+    /**
+     * Receives decoded messages. Only the categories of interest need overriding.
+     */
+    public interface Listener {
+        default void onLocation(int x, int y, int d) {}
+        default void onImageRec(String imageId, int obstacleId) {}
+        default void onStatus(String status) {}
+        default void onObstacles(long version, int count, int[] ids, int[] xs, int[] ys, int[] ds) {}
+        default void onControl(String value) {}
+
+        /** Called before the wrapped message of a sequenced envelope */
+        default void onSequence(long seq) {}
+    }
+
+    private BinaryCodec() {}
+
+    public static boolean isBinaryFrame(byte[] buffer, int offset, int length) {
+        return length >= HEADER_SIZE + 1 && buffer[offset] == MAGIC;
+    }
+
+    public static byte[] encodeLocation(int x, int y, int d) {
+        if (!isU8(x) || !isU8(y) || !isU8(d)) {
+            return null;
+        }
+        byte[] frame = newFrame(CAT_LOCATION, 3);
+        frame[4] = (byte) x;
+        frame[5] = (byte) y;
+        frame[6] = (byte) d;
+        return frame;
+    }
+
+    public static byte[] encodeImageRec(String imageId, int obstacleId) {
+        byte[] id = imageId.getBytes(StandardCharsets.US_ASCII);
+        if (!isU8(obstacleId) || id.length > 0xFF) {
+            return null;
+        }
+        byte[] frame = newFrame(CAT_IMAGE_REC, 2 + id.length);
+        frame[4] = (byte) obstacleId;
+        frame[5] = (byte) id.length;
+        System.arraycopy(id, 0, frame, 6, id.length);
+        return frame;
+    }
+
+    public static byte[] encodeStatus(String status) {
+        byte[] text = status.getBytes(StandardCharsets.UTF_8);
+        if (text.length > 0xFF) {
+            return null;
+        }
+        byte[] frame = newFrame(CAT_STATUS, 1 + text.length);
+        frame[4] = (byte) text.length;
+        System.arraycopy(text, 0, frame, 5, text.length);
+        return frame;
+    }
+
+    public static byte[] encodeObstacles(List<Obstacle> obstacles, long version) {
+        int count = obstacles.size();
+        if (count > 0xFF || version < 0 || version > 0xFFFFFFFFL) {
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            Obstacle obs = obstacles.get(i);
+            if (!isU8(obs.getId()) || !isU8(obs.getGridX()) || !isU8(obs.getGridY())) {
+                return null;
+            }
+        }
+        byte[] frame = newFrame(CAT_OBSTACLES, 5 + count * 4);
+        writeU32(frame, 4, version);
+        frame[8] = (byte) count;
+        int pos = 9;
+        for (int i = 0; i < count; i++) {
+            Obstacle obs = obstacles.get(i);
+            frame[pos++] = (byte) obs.getId();
+            frame[pos++] = (byte) obs.getGridX();
+            frame[pos++] = (byte) obs.getGridY();
+            frame[pos++] = (byte) obs.getTargetFace().getNumeric();
+        }
+        return frame;
+    }
+
+    /**
+     * Encode a control command ("start" / "stop"). Returns null for other values,
+     * which have no binary form and must be sent as JSON.
+     */
+    public static byte[] encodeControl(String value) {
+        int code;
+        if ("start".equals(value)) {
+            code = CONTROL_START;
+        } else if ("stop".equals(value)) {
+            code = CONTROL_STOP;
+        } else {
+            return null;
+        }
+        byte[] frame = newFrame(CAT_CONTROL, 1);
+        frame[4] = (byte) code;
+        return frame;
+    }
+
+    /**
+     * Wrap a frame in a sequenced envelope carrying seq (see {@link SessionResume})
+     */
+    public static byte[] wrapSequenced(byte[] frame, long seq) {
+        int innerLength = frame.length - HEADER_SIZE;
+        byte[] wrapped = newFrame(CAT_SEQUENCED, 4 + innerLength);
+        writeU32(wrapped, 4, seq);
+        System.arraycopy(frame, HEADER_SIZE, wrapped, 8, innerLength);
+        return wrapped;
+    }
+
+    /**
+     * Decode one complete frame. Returns false if the frame is malformed or of an
+     * unknown category.
+     */
+    public static boolean decode(byte[] buffer, int offset, int length, Listener listener) {
+        if (!isBinaryFrame(buffer, offset, length)) {
+            return false;
+        }
+        int bodyLength = ((buffer[offset + 1] & 0xFF) << 8) | (buffer[offset + 2] & 0xFF);
+        if (bodyLength + HEADER_SIZE != length) {
+            return false;
+        }
+
+        return decodeBody(buffer, offset + HEADER_SIZE, offset + length, listener);
+    }
+
+    /**
+     * Decode a category byte and its payload occupying [pos, end)
+     */
+    private static boolean decodeBody(byte[] buffer, int pos, int end, Listener listener) {
+        if (pos >= end) {
+            return false;
+        }
+        int category = buffer[pos++] & 0xFF;
+        int available = end - pos;
+
+        switch (category) {
+            case CAT_LOCATION:
+                if (available < 3) return false;
+                listener.onLocation(buffer[pos] & 0xFF, buffer[pos + 1] & 0xFF, buffer[pos + 2] & 0xFF);
+                return true;
+
+            case CAT_IMAGE_REC: {
+                if (available < 2) return false;
+                int obstacleId = buffer[pos] & 0xFF;
+                int idLength = buffer[pos + 1] & 0xFF;
+                if (available < 2 + idLength) return false;
+                listener.onImageRec(new String(buffer, pos + 2, idLength, StandardCharsets.US_ASCII), obstacleId);
+                return true;
+            }
+
+            case CAT_STATUS: {
+                if (available < 1) return false;
+                int textLength = buffer[pos] & 0xFF;
+                if (available < 1 + textLength) return false;
+                listener.onStatus(new String(buffer, pos + 1, textLength, StandardCharsets.UTF_8));
+                return true;
+            }
+
+            case CAT_OBSTACLES: {
+                if (available < 5) return false;
+                long version = readU32(buffer, pos);
+                int count = buffer[pos + 4] & 0xFF;
+                if (available < 5 + count * 4) return false;
+                int[] ids = new int[count];
+                int[] xs = new int[count];
+                int[] ys = new int[count];
+                int[] ds = new int[count];
+                int p = pos + 5;
+                for (int i = 0; i < count; i++) {
+                    ids[i] = buffer[p++] & 0xFF;
+                    xs[i] = buffer[p++] & 0xFF;
+                    ys[i] = buffer[p++] & 0xFF;
+                    ds[i] = buffer[p++] & 0xFF;
+                }
+                listener.onObstacles(version, count, ids, xs, ys, ds);
+                return true;
+            }
+
+            case CAT_CONTROL:
+                if (available < 1) return false;
+                int code = buffer[pos] & 0xFF;
+                if (code == CONTROL_START) {
+                    listener.onControl("start");
+                } else if (code == CONTROL_STOP) {
+                    listener.onControl("stop");
+                } else {
+                    return false;
+                }
+                return true;
+
+            case CAT_SEQUENCED:
+                if (available < 5) return false;
+                listener.onSequence(readU32(buffer, pos));
+                return decodeBody(buffer, pos + 4, end, listener);
+
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isU8(int value) {
+        return value >= 0 && value <= 0xFF;
+    }
+
+    private static void writeU32(byte[] buffer, int pos, long value) {
+        buffer[pos] = (byte) (value >>> 24);
+        buffer[pos + 1] = (byte) (value >>> 16);
+        buffer[pos + 2] = (byte) (value >>> 8);
+        buffer[pos + 3] = (byte) value;
+    }
+
+    private static long readU32(byte[] buffer, int pos) {
+        return ((long) (buffer[pos] & 0xFF) << 24) | ((buffer[pos + 1] & 0xFF) << 16)
+                | ((buffer[pos + 2] & 0xFF) << 8) | (buffer[pos + 3] & 0xFF);
+    }
+
+    /**
+     * Short human-readable description of a frame for the message log
+     */
+    public static String describe(byte[] frame) {
+        return describe(frame, 0, frame.length);
+    }
+
+    public static String describe(byte[] buffer, int offset, int length) {
+        StringBuilder sb = new StringBuilder("[bin");
+        if (length > HEADER_SIZE) {
+            sb.append(" cat=").append(buffer[offset + HEADER_SIZE] & 0xFF);
+        }
+        sb.append(", ").append(length).append(" bytes]");
+        return sb.toString();
+    }
+
+    private static byte[] newFrame(int category, int payloadLength) {
+        int bodyLength = 1 + payloadLength;
+        byte[] frame = new byte[HEADER_SIZE + bodyLength];
+        frame[0] = MAGIC;
+        frame[1] = (byte) (bodyLength >>> 8);
+        frame[2] = (byte) bodyLength;
+        frame[3] = (byte) category;
+        return frame;
+    }
+}
@@ -6,10 +6,12 @@ import android.bluetooth.BluetoothSocket;
 import android.os.Handler;
 import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class BluetoothService {
     private static final String TAG = "BluetoothService";
@@ -17,18 +19,76 @@ public class BluetoothService {
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
     private BluetoothAdapter bluetoothAdapter;
-    public BluetoothSocket socket; // Made public to access device info
-    private InputStream inputStream;
-    private OutputStream outputStream;
-    private ConnectedThread connectedThread;
+    private volatile LinkSession session;
     private AcceptThread acceptThread;
     private Handler handler;
 
+    // Session resume: sequence numbers and replay buffer survive reconnects
+    private final SessionResume sessionResume = new SessionResume();
+    private final Backoff restartBackoff = new Backoff(RESTART_INITIAL_DELAY_MS, RESTART_MAX_DELAY_MS);
+    private int restartGeneration = 0;
+
+    // Reconnected with resume on: sequenced writes are held (not sent) until the
+    // robot's hello reply says whether to replay, so nothing goes out twice
+    private volatile boolean awaitingResume = false;
+    private volatile long connectedAtNanos;
+    private static final long HELLO_TIMEOUT_MS = 3000;
+
+    private static final long RESTART_INITIAL_DELAY_MS = 25;
+    private static final long RESTART_MAX_DELAY_MS = 2000;
+
+    // Link health: ping/pong round-trip times and dead-link detection
+    private final LatencyHistogram linkLatency = new LatencyHistogram();
+    private volatile Heartbeat heartbeat;
+    private long heartbeatIntervalMs = Heartbeat.DEFAULT_INTERVAL_MS;
+    private long heartbeatTimeoutMs = Heartbeat.DEFAULT_TIMEOUT_MS;
+
+    // Indices into LINK_CATEGORIES, as returned by JsonScanner.category
+    private static final String[] LINK_CATEGORIES = {"ack", "ping", "pong"};
+    private static final int CAT_ACK = 0;
+    private static final int CAT_PING = 1;
+    private static final int CAT_PONG = 2;
+    // Not replayed: link-level messages, and the handshake, which would renegotiate
+    // the codec and session of whatever link is (or is about to be) live
+    private static final String[] REPLAY_SKIPPED_CATEGORIES = {"ack", "ping", "pong", "hello"};
+    private static final byte[] KEY_SEQ = JsonScanner.key("seq");
+    private static final byte[] KEY_T = JsonScanner.key("t");
+
+    // Decoded inbound messages wait here for the UI; location and status are latest-wins
+    private final InboundConflator<InboundEvent> inbound = new InboundConflator<>(INBOUND_SLOT_COUNT);
+
+    private static final int INBOUND_SLOT_LOCATION = 0;
+    private static final int INBOUND_SLOT_STATUS = 1;
+    private static final int INBOUND_SLOT_COUNT = 2;
+
+    // Newest robot pose, decoded in place by the reader thread
+    private final RobotPose latestPose = new RobotPose();
+
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+
+    // Traffic recording and replay
+    private TrafficRecorder recorder;
+    private TrafficRecorder lastRecorder; // Stopped, possibly still writing out
+    private static final long RECORDING_CLOSE_TIMEOUT_MS = 2000;
+    private ReplayDriver replay;
+
     // Message types for handler
-    public static final int MESSAGE_READ = 0;
     public static final int MESSAGE_WRITE = 1;
     public static final int MESSAGE_DISCONNECTED = 2;
     public static final int MESSAGE_CONNECTED = 3;
+    public static final int MESSAGE_WRITE_FAILED = 4;
+    public static final int MESSAGE_LINK_STATS = 6;
+    public static final int MESSAGE_INBOUND_READY = 7;
+    public static final int MESSAGE_DELIVERY_STALLED = 8;
+    public static final int MESSAGE_REPLAY_DONE = 9;
+    public static final int MESSAGE_ACKNOWLEDGED = 10;
+
+    // Acked delivery: overdue messages are retransmitted with doubling timeouts
+    private static final long RETRY_CHECK_MS = 100;
+    private static final long ACK_TIMEOUT_MS = 750;
+    private static final long MAX_ACK_TIMEOUT_MS = 4000;
+    private static final int STALLED_ATTEMPTS = 4;
+    private RetryThread retryThread;
 
     public BluetoothService(Handler handler, BluetoothAdapter adapter) {
         this.handler = handler;
@@ -37,15 +97,21 @@ public class BluetoothService {
 
     /**
      * Start listening for incoming connections (Server mode)
-     * This runs continuously in the background
+     * This runs continuously in the background.
+     * Returns false if the server socket could not be opened.
      */
-    public synchronized void startServer() {
+    public synchronized boolean startServer() {
         Log.d(TAG, "startServer: Starting server mode");
 
         // Don't interrupt existing connection
-        if (connectedThread != null) {
+        if (session != null) {
             Log.d(TAG, "Already connected, not starting server");
-            return;
+            return true;
+        }
+
+        if (bluetoothAdapter == null) {
+            Log.d(TAG, "No Bluetooth adapter, not starting server");
+            return false;
         }
 
         // Cancel existing accept thread if any
@@ -55,49 +121,221 @@ public class BluetoothService {
         }
 
         // Start the thread to listen for incoming connections
-        acceptThread = new AcceptThread();
+        AcceptThread thread = new AcceptThread();
+        if (!thread.isListening()) {
+            return false;
+        }
+        acceptThread = thread;
         acceptThread.start();
+        return true;
     }
 
     /**
-     * Start the connection with the given socket
+     * Start the connection with the given Bluetooth socket
      */
     public synchronized void connect(BluetoothSocket socket) {
-        Log.d(TAG, "connect: Starting connection");
+        connect(new RfcommTransport(socket));
+    }
+
+    /**
+     * Start the connection over any transport (RFCOMM, TCP or loopback)
+     */
+    public synchronized void connect(Transport transport) {
+        Log.d(TAG, "connect: Starting connection to " + transport.getRemoteName());
 
         // Cancel any existing threads
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
+        closeSession();
 
         if (acceptThread != null) {
             acceptThread.cancel();
             acceptThread = null;
         }
 
-        this.socket = socket;
-
         try {
-            inputStream = socket.getInputStream();
-            outputStream = socket.getOutputStream();
+            session = new LinkSession(transport, sessionListener);
         } catch (IOException e) {
             Log.e(TAG, "Error getting streams", e);
             return;
         }
 
-        // Start the thread to manage the connection
-        connectedThread = new ConnectedThread();
-        connectedThread.start();
+        // Start the threads to manage the connection
+        session.setTap(recorder);
+        session.useDefaultRateLimits();
+        connectedAtNanos = System.nanoTime();
+        awaitingResume = sessionResume.isEnabled();
+        session.start();
+        restartBackoff.reset();
+        startHeartbeat(session);
+        retryThread = new RetryThread(session);
+        retryThread.start();
+    }
+
+    /**
+     * Queue a message for the connected device in the given
+     * {@link OutboundScheduler} priority lane. Never blocks the caller;
+     * completion is reported later via MESSAGE_WRITE or MESSAGE_WRITE_FAILED.
+     *
+     * When session resume is active, JSON messages are sequenced as they are written
+     * and buffered until acknowledged: they are retransmitted if the ack is late, and
+     * messages still queued when the link drops are delivered after it resumes.
+     * Returns the entry to check for an ack with {@link #isAcknowledged}, or null if
+     * the message is not sequenced.
+     */
+    public SessionResume.Entry write(String message, int priority) {
+        if (sessionResume.isEnabled()) {
+            SessionResume.Entry entry = sessionResume.queueText(message, priority);
+            if (entry != null) {
+                LinkSession current = session;
+                if (current != null && !awaitingResume) {
+                    current.sendSequenced(sessionResume, entry, priority);
+                }
+                return entry;
+            }
+        }
+        writeUnsequenced(message, priority);
+        return null;
+    }
+
+    /**
+     * Queue a link-level message (handshake, heartbeat) that is never sequenced or replayed
+     */
+    public void writeUnsequenced(String message, int priority) {
+        LinkSession current = session;
+        if (current != null) {
+            current.send(message, priority);
+        }
     }
 
     /**
-     * Write to the connected device
+     * Queue an already framed binary message (see {@link BinaryCodec}).
+     * Returns the entry to check for an ack, or null if it is not sequenced.
      */
-    public void write(String message) {
-        if (connectedThread != null) {
-            connectedThread.write(message.getBytes());
+    public SessionResume.Entry writeFrame(byte[] frame, String label, int priority) {
+        if (sessionResume.isEnabled()) {
+            SessionResume.Entry entry = sessionResume.queueFrame(frame, label, priority);
+            LinkSession current = session;
+            if (current != null && !awaitingResume) {
+                current.sendSequenced(sessionResume, entry, priority);
+            }
+            return entry;
         }
+        LinkSession current = session;
+        if (current != null) {
+            current.sendFrame(frame, label, priority);
+        }
+        return null;
+    }
+
+    // ============================================================
+    // SESSION RESUME
+    // ============================================================
+
+    public String getSessionId() {
+        return sessionResume.getSessionId();
+    }
+
+    public long getLastSequence() {
+        return sessionResume.getLastSequence();
+    }
+
+    /**
+     * Enable or disable sequencing, depending on whether the robot supports resume.
+     * Messages held for the handshake are sent now, without a seq if disabled.
+     */
+    public void setResumeEnabled(boolean enabled) {
+        List<SessionResume.Entry> held = !enabled && awaitingResume ? sessionResume.getPending() : null;
+        sessionResume.setEnabled(enabled);
+        if (!enabled) {
+            awaitingResume = false;
+            sendAll(held);
+        }
+    }
+
+    /**
+     * Whether messages are sequenced and buffered for replay after a reconnect.
+     * This also means the robot acknowledges every sequenced message.
+     */
+    public boolean isResumeEnabled() {
+        return sessionResume.isEnabled();
+    }
+
+    /**
+     * Whether the robot has acknowledged a message returned by a write method
+     */
+    public boolean isAcknowledged(SessionResume.Entry entry) {
+        return sessionResume.isAcknowledged(entry);
+    }
+
+    /**
+     * Per-message time from send to ack
+     */
+    public LatencyHistogram getAckLatency() {
+        return sessionResume.getAckLatency();
+    }
+
+    /**
+     * Resume the session after reconnecting: replay everything the robot has not
+     * received. Returns the number of replayed messages, or -1 if the session can't be
+     * resumed (messages were evicted) and the caller must resync from scratch.
+     */
+    public int resumeSession(long receivedSeq) {
+        List<SessionResume.Entry> replay = sessionResume.replayAfter(receivedSeq);
+        if (replay == null) {
+            sessionResume.clear();
+            return -1;
+        }
+        awaitingResume = false;
+        sendAll(replay);
+        Log.d(TAG, "Resumed session after seq " + receivedSeq + ", replayed " + replay.size());
+        return replay.size();
+    }
+
+    /**
+     * Queue a buffered message again. Ones already numbered go in the control lane,
+     * which is unpaced and first-in first-out, so they keep their seq order instead
+     * of being overtaken by each other; the rest take their own lane and a new number.
+     */
+    private void sendAgain(LinkSession target, SessionResume.Entry entry) {
+        target.sendSequenced(sessionResume, entry,
+                entry.getSeq() != 0 ? OutboundScheduler.PRIORITY_CONTROL : entry.priority);
+    }
+
+    /**
+     * The robot does not know our session (e.g. it restarted); drop the replay buffer.
+     * Messages held for the handshake are sent now and numbered from where the hello
+     * told the robot to start.
+     */
+    public void abandonSession() {
+        sessionResume.clear();
+        if (awaitingResume) {
+            awaitingResume = false;
+            sendAll(sessionResume.getPending());
+        }
+    }
+
+    private void sendAll(List<SessionResume.Entry> entries) {
+        LinkSession current = session;
+        if (current != null && entries != null) {
+            for (SessionResume.Entry entry : entries) {
+                sendAgain(current, entry);
+            }
+        }
+    }
+
+    /**
+     * Number of messages waiting to be written to the link
+     */
+    public int getOutboundQueueDepth() {
+        LinkSession current = session;
+        return current != null ? current.getQueueDepth() : 0;
+    }
+
+    /**
+     * Name of the connected device, or null when not connected
+     */
+    public String getRemoteDeviceName() {
+        LinkSession current = session;
+        return current != null ? current.getTransport().getRemoteName() : null;
     }
 
     /**
@@ -106,66 +344,420 @@ public class BluetoothService {
     public synchronized void stop() {
         Log.d(TAG, "stop");
 
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
+        // Cancel any pending restart
+        restartGeneration++;
+        closeAll();
+    }
+
+    private synchronized void closeAll() {
+        closeSession();
 
         if (acceptThread != null) {
             acceptThread.cancel();
             acceptThread = null;
         }
-
-        try {
-            if (socket != null) {
-                socket.close();
-                socket = null;
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error closing socket", e);
-        }
     }
 
     /**
-     * Restart server after disconnection
+     * Restart server after disconnection. Listening is retried immediately and then
+     * with exponential backoff while the OS is still releasing the old socket, so a
+     * brief link blip costs tens of milliseconds instead of a fixed second.
      */
     public void restartServer() {
         Log.d(TAG, "restartServer: Restarting server mode");
 
+        final int generation;
+        synchronized (this) {
+            generation = ++restartGeneration;
+        }
+
         new Thread(() -> {
-            synchronized (this) {
-                // Stop everything first
-                if (connectedThread != null) {
-                    connectedThread.cancel();
-                    connectedThread = null;
-                }
+            // Stop everything first
+            closeAll();
 
-                if (acceptThread != null) {
-                    acceptThread.cancel();
-                    acceptThread = null;
+            while (true) {
+                synchronized (this) {
+                    if (generation != restartGeneration) {
+                        return; // Superseded by stop() or another restart
+                    }
+                    if (startServer()) {
+                        Log.d(TAG, "restartServer: Server restarted after "
+                                + restartBackoff.getAttempts() + " retries");
+                        return;
+                    }
                 }
 
                 try {
-                    if (socket != null) {
-                        socket.close();
-                        socket = null;
+                    Thread.sleep(restartBackoff.nextDelay());
+                } catch (InterruptedException e) {
+                    Log.e(TAG, "Interrupted during restart delay", e);
+                    return;
+                }
+            }
+        }, "BluetoothRestart").start();
+    }
+
+    private void closeSession() {
+        if (heartbeat != null) {
+            heartbeat.stop();
+            heartbeat = null;
+        }
+        if (retryThread != null) {
+            retryThread.cancel();
+            retryThread = null;
+        }
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+    }
+
+    // ============================================================
+    // HEARTBEAT
+    // ============================================================
+
+    /**
+     * Set how often to ping and how long a silent link may last before it is
+     * dropped. Takes effect on the next connection.
+     */
+    public synchronized void setHeartbeatTimeouts(long intervalMs, long timeoutMs) {
+        heartbeatIntervalMs = intervalMs;
+        heartbeatTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Round-trip times measured on the current connection
+     */
+    public LatencyHistogram getLinkLatency() {
+        return linkLatency;
+    }
+
+    /**
+     * Send a link-level message without a label, so it stays out of the message log.
+     * Goes in the unpaced control lane: a ping or pong held behind queued traffic would
+     * inflate the RTT and could make a busy link look dead.
+     */
+    private static void sendLinkMessage(LinkSession target, String message) {
+        target.sendFrame((message + "\n").getBytes(StandardCharsets.UTF_8), null,
+                OutboundScheduler.PRIORITY_CONTROL);
+    }
+
+    private void startHeartbeat(final LinkSession pinged) {
+        linkLatency.reset();
+        heartbeat = new Heartbeat(heartbeatIntervalMs, heartbeatTimeoutMs, linkLatency, new Heartbeat.Listener() {
+            @Override
+            public void onPingDue(long sentAtNanos) {
+                sendLinkMessage(pinged, "{\"cat\": \"ping\", \"value\": {\"t\": " + sentAtNanos + "}}");
+            }
+
+            @Override
+            public void onDeadLink(long silenceMs) {
+                synchronized (BluetoothService.this) {
+                    if (session != pinged) {
+                        return; // Already replaced
                     }
-                } catch (IOException e) {
-                    Log.e(TAG, "Error closing socket during restart", e);
+                    Log.w(TAG, "Link silent for " + silenceMs + " ms, disconnecting");
+                    closeSession();
+                }
+                handler.obtainMessage(MESSAGE_DISCONNECTED).sendToTarget();
+            }
+        });
+        heartbeat.start();
+    }
+
+    /**
+     * Forwards session events to the UI handler
+     */
+    private final LinkSession.Listener sessionListener = new LinkSession.Listener() {
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            Heartbeat currentHeartbeat = heartbeat;
+            if (currentHeartbeat != null) {
+                currentHeartbeat.onFrameReceived();
+            }
+
+            // Link-level messages are consumed here and never reach the UI
+            int category = JsonScanner.category(buffer, offset, length, LINK_CATEGORIES);
+            if (category == CAT_ACK) {
+                long seq = JsonScanner.longField(buffer, offset, length, KEY_SEQ);
+                if (seq != JsonScanner.MISSING && sessionResume.acknowledge(seq)) {
+                    handler.obtainMessage(MESSAGE_ACKNOWLEDGED).sendToTarget();
+                }
+                return;
+            }
+            if (category == CAT_PONG) {
+                long sentAt = JsonScanner.longField(buffer, offset, length, KEY_T);
+                if (sentAt != JsonScanner.MISSING && currentHeartbeat != null) {
+                    currentHeartbeat.onPong(sentAt);
+                    handler.obtainMessage(MESSAGE_LINK_STATS).sendToTarget();
+                }
+                return;
+            }
+            if (category == CAT_PING) {
+                // Echo the robot's timestamp so it can measure RTT too
+                long sentAt = JsonScanner.longField(buffer, offset, length, KEY_T);
+                LinkSession current = session;
+                if (sentAt != JsonScanner.MISSING && current != null) {
+                    sendLinkMessage(current, "{\"cat\": \"pong\", \"value\": {\"t\": " + sentAt + "}}");
                 }
+                return;
             }
 
-            // Delay to let OS fully release the socket
+            dispatchInbound(buffer, offset, length);
+        }
+
+        @Override
+        public void onSent(String label) {
+            if (label != null) {
+                handler.obtainMessage(MESSAGE_WRITE, -1, -1, label).sendToTarget();
+            }
+        }
+
+        @Override
+        public void onSendFailed(String label, IOException e) {
+            Log.e(TAG, "Error writing to stream", e);
+            if (label != null) {
+                handler.obtainMessage(MESSAGE_WRITE_FAILED, -1, -1, label).sendToTarget();
+            }
+        }
+
+        @Override
+        public void onClosed(IOException cause) {
+            if (cause != null) {
+                Log.e(TAG, "disconnected", cause);
+            } else {
+                Log.d(TAG, "Stream closed, disconnected");
+            }
+            handler.obtainMessage(MESSAGE_DISCONNECTED).sendToTarget();
+        }
+    };
+
+    // ============================================================
+    // TRAFFIC RECORDING
+    // ============================================================
+
+    /**
+     * Record every frame of this and later connections to file until
+     * {@link #stopRecording()}
+     */
+    public synchronized void startRecording(File file) throws IOException {
+        stopRecording();
+        recorder = new TrafficRecorder(file);
+        if (session != null) {
+            session.setTap(recorder);
+        }
+        Log.d(TAG, "Recording traffic to " + file);
+    }
+
+    /**
+     * Stop recording and close the file. Returns the recording, or null if none was running.
+     */
+    public synchronized File stopRecording() {
+        if (recorder == null) {
+            return null;
+        }
+        if (session != null) {
+            session.setTap(null);
+        }
+        // Closing finishes on the recorder's own thread; a replay waits for it
+        lastRecorder = recorder;
+        recorder = null;
+        lastRecorder.close();
+        Log.d(TAG, "Stopped recording, dropped " + lastRecorder.getDroppedFrames() + " frames");
+        return lastRecorder.getFile();
+    }
+
+    public synchronized boolean isRecording() {
+        return recorder != null;
+    }
+
+    /**
+     * Feed a recording through the inbound pipeline as if the robot were sending it.
+     * Link-level messages and the hello handshake in the recording are skipped, so
+     * a replay between connections leaves the codec and session resume state alone.
+     * MESSAGE_REPLAY_DONE reports
+     * the number of frames replayed, or -1 if the file could not be read.
+     *
+     * @param speed 1.0 for real time, or {@link ReplayDriver#SPEED_MAX}
+     */
+    public synchronized void startReplay(File file, double speed) {
+        stopReplay();
+        final ReplayDriver driver = new ReplayDriver(file, replayListener);
+        driver.setSpeed(speed);
+        replay = driver;
+        final TrafficRecorder finishing = lastRecorder != null && lastRecorder.getFile().equals(file)
+                ? lastRecorder : null;
+
+        new Thread(() -> {
+            int frames;
             try {
-                Thread.sleep(1000);
+                if (finishing != null && !finishing.awaitClosed(RECORDING_CLOSE_TIMEOUT_MS)) {
+                    Log.w(TAG, "Recording still being written, replaying what is there");
+                }
+                frames = (int) driver.run();
+            } catch (IOException e) {
+                Log.e(TAG, "Replay failed", e);
+                frames = -1;
             } catch (InterruptedException e) {
-                Log.e(TAG, "Interrupted during restart delay", e);
+                frames = -1;
             }
+            synchronized (BluetoothService.this) {
+                if (replay == driver) {
+                    replay = null;
+                }
+            }
+            handler.obtainMessage(MESSAGE_REPLAY_DONE, frames, -1).sendToTarget();
+        }, "TrafficReplay").start();
+    }
+
+    public synchronized void stopReplay() {
+        if (replay != null) {
+            replay.cancel();
+            replay = null;
+        }
+    }
 
-            // Now start server again
-            startServer();
-            Log.d(TAG, "restartServer: Server restarted successfully");
-        }).start();
+    public synchronized boolean isReplaying() {
+        return replay != null;
+    }
+
+    /**
+     * Receives replayed frames; only application messages reach the UI
+     */
+    private final LinkSession.Listener replayListener = new LinkSession.Listener() {
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            if (JsonScanner.category(buffer, offset, length, REPLAY_SKIPPED_CATEGORIES) != JsonScanner.NO_CATEGORY) {
+                return;
+            }
+            dispatchInbound(buffer, offset, length);
+        }
+
+        @Override
+        public void onSent(String label) {}
+
+        @Override
+        public void onSendFailed(String label, IOException e) {}
+
+        @Override
+        public void onClosed(IOException cause) {}
+    };
+
+    // ============================================================
+    // INBOUND CONFLATION
+    // ============================================================
+
+    /**
+     * Decoded inbound messages. Drain on the UI thread after MESSAGE_INBOUND_READY,
+     * at most once per frame.
+     */
+    public InboundConflator<InboundEvent> getInbound() {
+        return inbound;
+    }
+
+    /**
+     * Inbound throughput and dispatch latency; the UI reports applied events
+     */
+    public PipelineMetrics getPipelineMetrics() {
+        return pipelineMetrics;
+    }
+
+    /**
+     * Copy the newest pose decoded from location telemetry into target
+     */
+    public void copyLatestPose(RobotPose target) {
+        latestPose.copyTo(target);
+    }
+
+    /**
+     * Decode an application frame and queue it for the UI. Shared by live traffic
+     * and recording replay.
+     */
+    private void dispatchInbound(byte[] buffer, int offset, int length) {
+        pipelineMetrics.onFrameReceived();
+        long parseStart = pipelineMetrics.startParse();
+
+        // Location telemetry: decoded in place without allocating
+        if (LocationDecoder.decode(buffer, offset, length, latestPose)) {
+            pipelineMetrics.onMessageParsed(PipelineMetrics.CATEGORY_LOCATION, parseStart);
+            offerInbound(InboundEvent.PoseUpdated.INSTANCE);
+            return;
+        }
+
+        // Parse once, here, so the UI thread only applies typed events
+        InboundEvent event;
+        if (BinaryCodec.isBinaryFrame(buffer, offset, length)) {
+            event = InboundParser.parseBinary(buffer, offset, length);
+        } else {
+            event = InboundParser.parseText(new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+        pipelineMetrics.onMessageParsed(PipelineMetrics.categoryOf(event), parseStart);
+        offerInbound(event);
+    }
+
+    private void offerInbound(InboundEvent event) {
+        boolean schedule;
+        if (event instanceof InboundEvent.PoseUpdated || event instanceof InboundEvent.Location) {
+            schedule = inbound.offerLatest(INBOUND_SLOT_LOCATION, event);
+        } else if (event instanceof InboundEvent.Status) {
+            schedule = inbound.offerLatest(INBOUND_SLOT_STATUS, event);
+        } else {
+            schedule = inbound.offerOrdered(event);
+        }
+        if (schedule) {
+            handler.obtainMessage(MESSAGE_INBOUND_READY).sendToTarget();
+        }
+    }
+
+    /**
+     * Thread that retransmits sequenced messages whose ack is overdue
+     */
+    private class RetryThread extends Thread {
+        private final LinkSession target;
+        private volatile boolean running = true;
+
+        RetryThread(LinkSession target) {
+            super("LinkRetry");
+            this.target = target;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long timeout = TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MS);
+            long maxTimeout = TimeUnit.MILLISECONDS.toNanos(MAX_ACK_TIMEOUT_MS);
+            while (running) {
+                try {
+                    Thread.sleep(RETRY_CHECK_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!sessionResume.isEnabled()) {
+                    continue;
+                }
+                if (awaitingResume) {
+                    if (System.nanoTime() - connectedAtNanos
+                            > TimeUnit.MILLISECONDS.toNanos(HELLO_TIMEOUT_MS)) {
+                        // No hello reply: treat the robot as not supporting resume
+                        Log.w(TAG, "No reply to hello, sending held messages unsequenced");
+                        setResumeEnabled(false);
+                    }
+                    continue;
+                }
+                for (SessionResume.Entry entry : sessionResume.collectRetries(System.nanoTime(), timeout, maxTimeout)) {
+                    Log.d(TAG, "Retransmitting unacknowledged " + entry.getLabel());
+                    sendAgain(target, entry);
+                    if (entry.attempts + 1 == STALLED_ATTEMPTS) {
+                        handler.obtainMessage(MESSAGE_DELIVERY_STALLED, -1, -1, entry.getLabel()).sendToTarget();
+                    }
+                }
+            }
+        }
+
+        void cancel() {
+            running = false;
+            interrupt();
+        }
     }
 
     /**
@@ -187,6 +779,10 @@ public class BluetoothService {
             serverSocket = tmp;
         }
 
+        boolean isListening() {
+            return serverSocket != null;
+        }
+
         public void run() {
             BluetoothSocket socket = null;
 
@@ -226,80 +822,4 @@ public class BluetoothService {
             }
         }
     }
-
-    /**
-     * Thread to handle reading and writing data
-     */
-    private class ConnectedThread extends Thread {
-        private final InputStream inStream;
-        private final OutputStream outStream;
-        private volatile boolean cancelled = false;
-
-        public ConnectedThread() {
-            inStream = inputStream;
-            outStream = outputStream;
-        }
-
-        public void run() {
-            byte[] buffer = new byte[1024];
-            int bytes;
-
-            // Keep listening to the InputStream while connected
-            while (!cancelled) {
-                try {
-                    // Read from the InputStream
-                    bytes = inStream.read(buffer);
-
-                    if (bytes == -1) {
-                        // Stream closed cleanly
-                        Log.d(TAG, "Stream closed, disconnected");
-                        handler.obtainMessage(MESSAGE_DISCONNECTED).sendToTarget();
-                        break;
-                    }
-
-                    // Send the obtained bytes to the UI Activity
-                    String receivedMessage = new String(buffer, 0, bytes).trim();
-                    if (!receivedMessage.isEmpty()) {
-                        handler.obtainMessage(MESSAGE_READ, bytes, -1, receivedMessage)
-                                .sendToTarget();
-                    }
-
-                } catch (IOException e) {
-                    if (!cancelled) {
-                        Log.e(TAG, "disconnected", e);
-                        handler.obtainMessage(MESSAGE_DISCONNECTED).sendToTarget();
-                    }
-                    break;
-                }
-            }
-        }
-
-        /**
-         * Write to the connected OutStream
-         */
-        public void write(byte[] buffer) {
-            try {
-                outStream.write(buffer);
-                outStream.flush(); // Flush to ensure data is sent
-
-                // Share the sent message with UI
-                String sentMessage = new String(buffer);
-                handler.obtainMessage(MESSAGE_WRITE, -1, -1, sentMessage)
-                        .sendToTarget();
-
-            } catch (IOException e) {
-                Log.e(TAG, "Error writing to stream", e);
-            }
-        }
-
-        public void cancel() {
-            cancelled = true;
-            try {
-                inStream.close();
-                outStream.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing streams", e);
-            }
-        }
-    }
-}
\ No newline at end of file
+}
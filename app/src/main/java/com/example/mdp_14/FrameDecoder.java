@@ -0,0 +1,187 @@
+package com.example.mdp_14;
+
+/**
+ * Streaming decoder that splits the raw RFCOMM byte stream into whole messages.
+ *
+ * A read from the socket may hold half a message, exactly one, or several coalesced
+ * together. Bytes are appended to a reusable buffer and a frame is emitted when:
+ *  - a newline is seen, or
+ *  - a top-level JSON object closes, so "{...}{...}" without separators still splits, or
+ *  - a length-prefixed binary frame (see {@link BinaryCodec}) has been fully received.
+ *
+ * A newline always ends a frame, even inside a JSON string: JSON escapes newlines in
+ * strings, so a raw one means the string was never closed, and carrying on would swallow
+ * every following frame until the size limit.
+ *
+ * Frames are handed to the listener as a slice of an internal scratch array, so no
+ * String is built per chunk. The slice is only valid for the duration of the callback.
+ */
+public class FrameDecoder {
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 2048;
+
+    public interface FrameListener {
+        void onFrame(byte[] buffer, int offset, int length);
+    }
+
+    private final FrameListener listener;
+    private final int maxFrameSize;
+
+    // Bytes of the frame currently being assembled
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // JSON scanner state for the frame being assembled
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private boolean overflowed = false;
+
+    // Length-prefixed binary frame state
+    private boolean binary = false;
+    private int binaryRead = 0;
+    private int binaryRemaining = 0;
+
+    private long droppedFrames = 0;
+
+    public FrameDecoder(FrameListener listener) {
+        this(listener, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public FrameDecoder(FrameListener listener, int maxFrameSize) {
+        this.listener = listener;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Feed bytes read from the stream. Emits zero or more complete frames.
+     */
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+
+            if (binary) {
+                append(b);
+                binaryRead++;
+                if (binaryRead == BinaryCodec.HEADER_SIZE) {
+                    // Length high byte may have arrived in an earlier read, so take it from the buffer
+                    binaryRemaining = ((buffer[1] & 0xFF) << 8) | (b & 0xFF);
+                } else if (binaryRead > BinaryCodec.HEADER_SIZE) {
+                    binaryRemaining--;
+                }
+                if (binaryRead >= BinaryCodec.HEADER_SIZE && binaryRemaining == 0) {
+                    completeFrame(false);
+                }
+                continue;
+            }
+
+            if (b == BinaryCodec.MAGIC && size == 0 && depth == 0) {
+                binary = true;
+                binaryRead = 1;
+                append(b);
+                continue;
+            }
+
+            if (b == '\n') {
+                completeFrame(true);
+                continue;
+            }
+
+            append(b);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"' && depth > 0) {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && depth > 0) {
+                depth--;
+                if (depth == 0) {
+                    completeFrame(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop any partially assembled frame (e.g. after a reconnect).
+     */
+    public void reset() {
+        size = 0;
+        depth = 0;
+        inString = false;
+        escaped = false;
+        overflowed = false;
+        binary = false;
+        binaryRead = 0;
+        binaryRemaining = 0;
+    }
+
+    /**
+     * Number of bytes currently buffered for an incomplete frame
+     */
+    public int getBufferedBytes() {
+        return size;
+    }
+
+    /**
+     * Number of frames discarded for exceeding the maximum frame size
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void append(byte b) {
+        if (overflowed) {
+            return;
+        }
+        if (size == maxFrameSize) {
+            // Oversized frame: discard what we have and skip until the frame ends
+            overflowed = true;
+            size = 0;
+            return;
+        }
+        if (size == buffer.length) {
+            byte[] bigger = new byte[Math.min(maxFrameSize, buffer.length * 2)];
+            System.arraycopy(buffer, 0, bigger, 0, size);
+            buffer = bigger;
+        }
+        buffer[size++] = b;
+    }
+
+    private void completeFrame(boolean trim) {
+        if (overflowed) {
+            droppedFrames++;
+            reset();
+            return;
+        }
+
+        // Trim surrounding whitespace (e.g. "\r" from CRLF senders) without copying
+        int start = 0;
+        int end = size;
+        while (trim && start < end && isWhitespace(buffer[start])) {
+            start++;
+        }
+        while (trim && end > start && isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+
+        // Reset first; the bytes stay in place until the next feed
+        reset();
+        if (end > start) {
+            listener.onFrame(buffer, start, end - start);
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\r' || b == '\t' || b == '\n';
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.mdp_14;
+
+import java.util.Arrays;
+
+/**
+ * Durations of the most recent frames (or draws), for a rolling average and
+ * percentiles at sub-millisecond resolution, which {@link LatencyHistogram}'s 1 ms
+ * buckets can't give. Recording is constant time and nothing allocates, so it can
+ * be fed from a render loop. Thread-safe; recorded on one thread, read on another.
+ */
+public class FrameTimeWindow {
+    private static final float NANOS_PER_MS = 1_000_000f;
+
+    private final long[] samples;
+    private final long[] sorted;  // Scratch for percentiles
+    private int next = 0;
+    private int size = 0;
+    private long total = 0;
+
+    public FrameTimeWindow(int capacity) {
+        samples = new long[capacity];
+        sorted = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        total++;
+    }
+
+    /**
+     * Samples recorded since the last clear, including those no longer in the window
+     */
+    public synchronized long getTotalCount() {
+        return total;
+    }
+
+    /**
+     * Average of the window in milliseconds, or 0 with no samples
+     */
+    public synchronized float getAverageMs() {
+        if (size == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += samples[i];
+        }
+        return sum / (float) size / NANOS_PER_MS;
+    }
+
+    /**
+     * Percentile (0-100) of the window in milliseconds, or 0 with no samples
+     */
+    public synchronized float getPercentileMs(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        System.arraycopy(samples, 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        int rank = (int) Math.ceil(percentile / 100.0 * size);
+        return sorted[Math.max(0, Math.min(size - 1, rank - 1))] / NANOS_PER_MS;
+    }
+
+    public synchronized void clear() {
+        next = 0;
+        size = 0;
+        total = 0;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.mdp_14;
+
+/**
+ * Periodic ping/pong on an open link. Measures round-trip time into a
+ * {@link LatencyHistogram} and declares the link dead when nothing has been heard
+ * for the timeout, long before the OS notices a broken RFCOMM socket.
+ *
+ * Any inbound frame counts as proof of life, so a busy link needs no pongs. Dead-link
+ * detection only starts after the first pong, so a peer that doesn't answer pings
+ * is never disconnected for being quiet.
+ */
+public class Heartbeat {
+    public static final long DEFAULT_INTERVAL_MS = 1000;
+    public static final long DEFAULT_TIMEOUT_MS = 3000;
+
+    public interface Listener {
+        /** Send a ping carrying sentAtNanos; the peer echoes it in its pong */
+        void onPingDue(long sentAtNanos);
+
+        /** Nothing received for longer than the timeout */
+        void onDeadLink(long silenceMs);
+    }
+
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final LatencyHistogram histogram;
+    private final Listener listener;
+    private final Thread thread;
+
+    private volatile boolean running = false;
+    private volatile boolean peerResponds = false;
+    private volatile long lastHeardNanos;
+
+    public Heartbeat(long intervalMs, long timeoutMs, LatencyHistogram histogram, Listener listener) {
+        this.intervalNanos = intervalMs * 1_000_000L;
+        this.timeoutNanos = timeoutMs * 1_000_000L;
+        this.histogram = histogram;
+        this.listener = listener;
+        // Check often enough that a dead link is reported close to the timeout
+        final long tickMs = Math.max(1, Math.min(intervalMs, timeoutMs / 4));
+        this.thread = new Thread(() -> run(tickMs), "LinkHeartbeat");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        lastHeardNanos = System.nanoTime();
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Call for every inbound frame
+     */
+    public void onFrameReceived() {
+        lastHeardNanos = System.nanoTime();
+    }
+
+    /**
+     * Record the round trip of a pong echoing sentAtNanos. Returns the RTT in nanoseconds.
+     */
+    public long onPong(long sentAtNanos) {
+        long now = System.nanoTime();
+        lastHeardNanos = now;
+        peerResponds = true;
+        long rtt = now - sentAtNanos;
+        histogram.record(rtt);
+        return rtt;
+    }
+
+    private void run(long tickMs) {
+        long nextPing = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now - nextPing >= 0) {
+                listener.onPingDue(now);
+                nextPing = now + intervalNanos;
+            }
+
+            long silence = now - lastHeardNanos;
+            if (peerResponds && silence > timeoutNanos) {
+                running = false;
+                listener.onDeadLink(silence / 1_000_000L);
+                return;
+            }
+
+            try {
+                Thread.sleep(tickMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
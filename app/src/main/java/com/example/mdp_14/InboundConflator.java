@@ -0,0 +1,126 @@
+package com.example.mdp_14;
+
+import java.util.ArrayDeque;
+
+/**
+ * Buffers inbound messages between the reader thread and the UI, so UI work stays
+ * bounded per frame however fast the robot reports.
+ *
+ * Telemetry that is superseded by its next update (location, status) goes into a
+ * latest-wins slot: a newer value replaces one the UI hasn't consumed yet. Everything
+ * else is must-deliver and queued in arrival order, never dropped.
+ *
+ * The producer is told when a drain needs scheduling, so at most one drain request
+ * is outstanding at a time.
+ */
+public class InboundConflator<T> {
+
+    /**
+     * Receives drained messages on the consumer's thread
+     */
+    public interface Sink<T> {
+        void deliver(T item);
+    }
+
+    private final Object[] latest;
+    private final Object[] drainedLatest;
+    private final ArrayDeque<T> ordered = new ArrayDeque<>();
+    private final ArrayDeque<T> drainedOrdered = new ArrayDeque<>();
+    private boolean drainScheduled = false;
+    private long conflatedCount = 0;
+
+    public InboundConflator(int slotCount) {
+        latest = new Object[slotCount];
+        drainedLatest = new Object[slotCount];
+    }
+
+    /**
+     * Offer a latest-wins value for the given slot. Returns true if the caller must
+     * schedule a drain.
+     */
+    public synchronized boolean offerLatest(int slot, T item) {
+        if (latest[slot] != null) {
+            conflatedCount++;
+        }
+        latest[slot] = item;
+        return scheduleIfIdle();
+    }
+
+    /**
+     * Offer a must-deliver message. Returns true if the caller must schedule a drain.
+     */
+    public synchronized boolean offerOrdered(T item) {
+        ordered.addLast(item);
+        return scheduleIfIdle();
+    }
+
+    /**
+     * Deliver up to maxOrdered queued messages followed by the newest value of each
+     * slot. Returns true if messages remain and another drain should be scheduled.
+     * Must be called from a single consumer thread.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean drain(int maxOrdered, Sink<T> sink) {
+        boolean more;
+        synchronized (this) {
+            for (int i = 0; i < maxOrdered && !ordered.isEmpty(); i++) {
+                drainedOrdered.addLast(ordered.removeFirst());
+            }
+            for (int slot = 0; slot < latest.length; slot++) {
+                drainedLatest[slot] = latest[slot];
+                latest[slot] = null;
+            }
+            more = !ordered.isEmpty();
+            drainScheduled = more;
+        }
+
+        // Deliver outside the lock so the reader thread is never blocked on the UI
+        while (!drainedOrdered.isEmpty()) {
+            sink.deliver(drainedOrdered.removeFirst());
+        }
+        for (int slot = 0; slot < drainedLatest.length; slot++) {
+            Object item = drainedLatest[slot];
+            if (item != null) {
+                drainedLatest[slot] = null;
+                sink.deliver((T) item);
+            }
+        }
+        return more;
+    }
+
+    /**
+     * Number of stale latest-wins values replaced before the UI saw them
+     */
+    public synchronized long getConflatedCount() {
+        return conflatedCount;
+    }
+
+    public synchronized int getPendingCount() {
+        int count = ordered.size();
+        for (Object item : latest) {
+            if (item != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Discard everything pending, e.g. on disconnect
+     */
+    public synchronized void clear() {
+        ordered.clear();
+        for (int slot = 0; slot < latest.length; slot++) {
+            latest[slot] = null;
+        }
+        drainScheduled = false;
+    }
+
+    private boolean scheduleIfIdle() {
+        if (drainScheduled) {
+            return false;
+        }
+        drainScheduled = true;
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.mdp_14;
+
+/**
+ * A decoded inbound message, produced off the main thread by {@link InboundParser}
+ * and handed to the UI. Events are immutable, so they can cross threads freely.
+ */
+public abstract class InboundEvent {
+
+    /**
+     * Receives events by type. Only the types of interest need overriding.
+     */
+    public interface Handler {
+        default void onLocation(Location event) {}
+        default void onPoseUpdated() {}
+        default void onStatus(Status event) {}
+        default void onImageRec(ImageRec event) {}
+        default void onHello(Hello event) {}
+        default void onOther(Other event) {}
+    }
+
+    /** Text for the message log, or null if the message is not logged */
+    public final String logText;
+
+    /** When the frame was decoded on the reader thread, on the System.nanoTime() clock */
+    public final long receivedAtNanos;
+
+    InboundEvent(String logText) {
+        this.logText = logText;
+        this.receivedAtNanos = System.nanoTime();
+    }
+
+    public abstract void dispatch(Handler handler);
+
+    /**
+     * Robot pose: {"cat": "location", "value": {"x": <x>, "y": <y>, "d": <direction>}}
+     */
+    public static final class Location extends InboundEvent {
+        public final int x;
+        public final int y;
+        public final int d;
+
+        public Location(String logText, int x, int y, int d) {
+            super(logText);
+            this.x = x;
+            this.y = y;
+            this.d = d;
+        }
+
+        @Override
+        public void dispatch(Handler handler) {
+            handler.onLocation(this);
+        }
+    }
+
+    /**
+     * A new pose was decoded in place by {@link LocationDecoder}; read it from
+     * {@link BluetoothService#copyLatestPose}. A singleton, so the hot path allocates nothing;
+     * its arrival time is {@link RobotPose#getReceivedAtNanos()}.
+     */
+    public static final class PoseUpdated extends InboundEvent {
+        public static final PoseUpdated INSTANCE = new PoseUpdated();
+
+        private PoseUpdated() {
+            super(null);
+        }
+
+        @Override
+        public void dispatch(Handler handler) {
+            handler.onPoseUpdated();
+        }
+    }
+
+    /**
+     * Robot status: {"cat": "status", "value": {"robot_status": <text>}}
+     */
+    public static final class Status extends InboundEvent {
+        public final String status;
+
+        public Status(String logText, String status) {
+            super(logText);
+            this.status = status;
+        }
+
+        @Override
+        public void dispatch(Handler handler) {
+            handler.onStatus(this);
+        }
+    }
+
+    /**
+     * Recognised target: {"cat": "image-rec", "value": {"image_id": <id>, "obstacle_id": <n>}}
+     */
+    public static final class ImageRec extends InboundEvent {
+        public final String imageId;
+        public final int obstacleId;
+
+        public ImageRec(String logText, String imageId, int obstacleId) {
+            super(logText);
+            this.imageId = imageId;
+            this.obstacleId = obstacleId;
+        }
+
+        @Override
+        public void dispatch(Handler handler) {
+            handler.onImageRec(this);
+        }
+    }
+
+    /**
+     * Reply to the capability handshake
+     */
+    public static final class Hello extends InboundEvent {
+        public static final long NO_RESUME = -1;
+
+        public final String codec;
+        public final boolean supportsResume;
+        /** Session the robot still holds, or null */
+        public final String resumeSession;
+        /** Last sequence the robot received for resumeSession, or NO_RESUME */
+        public final long resumeReceived;
+
+        public Hello(String logText, String codec, boolean supportsResume,
+                     String resumeSession, long resumeReceived) {
+            super(logText);
+            this.codec = codec;
+            this.supportsResume = supportsResume;
+            this.resumeSession = resumeSession;
+            this.resumeReceived = resumeReceived;
+        }
+
+        @Override
+        public void dispatch(Handler handler) {
+            handler.onHello(this);
+        }
+    }
+
+    /**
+     * Any other message (unknown category, plain text or malformed); only logged
+     */
+    public static final class Other extends InboundEvent {
+        public Other(String logText) {
+            super(logText);
+        }
+
+        @Override
+        public void dispatch(Handler handler) {
+            handler.onOther(this);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.mdp_14;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Decodes inbound frames into {@link InboundEvent}s. Runs on the reader thread, so
+ * each frame is parsed exactly once and never on the UI thread. JSON messages are
+ * dispatched on their "cat" field; binary frames on their category byte.
+ */
+public final class InboundParser {
+    public static final String CAT_LOCATION = "location";
+    public static final String CAT_STATUS = "status";
+    public static final String CAT_IMAGE_REC = "image-rec";
+    public static final String CAT_HELLO = "hello";
+
+    private static final String FEATURE_RESUME = "resume";
+
+    private InboundParser() {}
+
+    /**
+     * Decode a text frame. Never returns null; unknown or malformed messages become
+     * {@link InboundEvent.Other}.
+     */
+    public static InboundEvent parseText(String text) {
+        if (!text.startsWith("{")) {
+            return new InboundEvent.Other(text);
+        }
+        try {
+            JSONObject json = new JSONObject(text);
+            JSONObject value = json.optJSONObject("value");
+            if (value == null) {
+                return new InboundEvent.Other(text);
+            }
+
+            switch (json.optString("cat")) {
+                case CAT_LOCATION:
+                    return new InboundEvent.Location(text,
+                            value.getInt("x"), value.getInt("y"), value.getInt("d"));
+
+                case CAT_STATUS:
+                    return new InboundEvent.Status(text, value.getString("robot_status"));
+
+                case CAT_IMAGE_REC:
+                    return new InboundEvent.ImageRec(text,
+                            value.getString("image_id"), value.getInt("obstacle_id"));
+
+                case CAT_HELLO:
+                    return parseHello(text, value);
+
+                default:
+                    return new InboundEvent.Other(text);
+            }
+        } catch (JSONException e) {
+            return new InboundEvent.Other(text);
+        }
+    }
+
+    /**
+     * Format: {"cat": "hello", "value": {"codec": <codec name>, "features": [...],
+     *          "resume": {"session": <id>, "received": <seq>}}}
+     */
+    private static InboundEvent.Hello parseHello(String text, JSONObject value) throws JSONException {
+        String codec = value.optString("codec", "json");
+
+        boolean supportsResume = false;
+        JSONArray features = value.optJSONArray("features");
+        if (features != null) {
+            for (int i = 0; i < features.length(); i++) {
+                if (FEATURE_RESUME.equals(features.optString(i))) {
+                    supportsResume = true;
+                }
+            }
+        }
+
+        String resumeSession = null;
+        long resumeReceived = InboundEvent.Hello.NO_RESUME;
+        JSONObject resume = value.optJSONObject("resume");
+        if (resume != null && resume.has("session") && resume.has("received")) {
+            resumeSession = resume.getString("session");
+            resumeReceived = resume.getLong("received");
+        }
+
+        return new InboundEvent.Hello(text, codec, supportsResume, resumeSession, resumeReceived);
+    }
+
+    /**
+     * Decode a binary frame (see {@link BinaryCodec}). Never returns null.
+     */
+    public static InboundEvent parseBinary(byte[] buffer, int offset, int length) {
+        final InboundEvent[] decoded = new InboundEvent[1];
+        boolean ok = BinaryCodec.decode(buffer, offset, length, new BinaryCodec.Listener() {
+            @Override
+            public void onLocation(int x, int y, int d) {
+                decoded[0] = new InboundEvent.Location(null, x, y, d);
+            }
+
+            @Override
+            public void onImageRec(String imageId, int obstacleId) {
+                decoded[0] = new InboundEvent.ImageRec("image-rec " + imageId + " on #" + obstacleId,
+                        imageId, obstacleId);
+            }
+
+            @Override
+            public void onStatus(String status) {
+                decoded[0] = new InboundEvent.Status("status " + status, status);
+            }
+        });
+
+        if (!ok) {
+            return new InboundEvent.Other("malformed " + BinaryCodec.describe(buffer, offset, length));
+        }
+        if (decoded[0] == null) {
+            return new InboundEvent.Other(BinaryCodec.describe(buffer, offset, length));
+        }
+        return decoded[0];
+    }
+}
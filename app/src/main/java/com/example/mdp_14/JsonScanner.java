@@ -0,0 +1,142 @@
+package com.example.mdp_14;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-free lookups of individual fields in a raw JSON frame, for hot paths
+ * (routing by "cat", reading acks) where building a JSONObject would be wasteful.
+ *
+ * This is not a validating parser: it finds the first occurrence of "key": anywhere
+ * in the frame, which is sufficient for the flat, app-defined protocol messages.
+ */
+public final class JsonScanner {
+    public static final long MISSING = Long.MIN_VALUE;
+    public static final int NO_CATEGORY = -1;
+
+    private static final byte[] KEY_CAT = key("cat");
+
+    private JsonScanner() {}
+
+    /**
+     * Encode a field name as the quoted byte pattern searched for
+     */
+    public static byte[] key(String name) {
+        return ("\"" + name + "\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the index of the candidate the "cat" value equals (without allocating),
+     * or {@link #NO_CATEGORY} if absent or not among them. Pass a shared constant
+     * array rather than varargs to keep the call allocation-free.
+     */
+    public static int category(byte[] buf, int off, int len, String[] candidates) {
+        int start = valueStart(buf, off, len, KEY_CAT);
+        if (start < 0 || buf[start] != '"') {
+            return NO_CATEGORY;
+        }
+        int end = off + len;
+        for (int i = 0; i < candidates.length; i++) {
+            if (matchesString(buf, start + 1, end, candidates[i])) {
+                return i;
+            }
+        }
+        return NO_CATEGORY;
+    }
+
+    /**
+     * Read an integer field, or {@link #MISSING} if absent or not a number
+     */
+    public static long longField(byte[] buf, int off, int len, byte[] key) {
+        int pos = valueStart(buf, off, len, key);
+        if (pos < 0) {
+            return MISSING;
+        }
+        int end = off + len;
+        // Tolerate numbers sent as strings, e.g. "x": "5"
+        if (buf[pos] == '"') {
+            pos++;
+        }
+        boolean negative = false;
+        if (pos < end && buf[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+        if (pos >= end || buf[pos] < '0' || buf[pos] > '9') {
+            return MISSING;
+        }
+        long value = 0;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos] - '0');
+            pos++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Read a string field, or null if absent (allocates the result)
+     */
+    public static String stringField(byte[] buf, int off, int len, byte[] key) {
+        int pos = valueStart(buf, off, len, key);
+        if (pos < 0 || buf[pos] != '"') {
+            return null;
+        }
+        int end = off + len;
+        int close = pos + 1;
+        while (close < end && buf[close] != '"') {
+            if (buf[close] == '\\') {
+                close++;
+            }
+            close++;
+        }
+        if (close >= end) {
+            return null;
+        }
+        return new String(buf, pos + 1, close - pos - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Index of the first non-whitespace byte after "key":, or -1
+     */
+    private static int valueStart(byte[] buf, int off, int len, byte[] key) {
+        int end = off + len;
+        int last = end - key.length;
+        outer:
+        for (int i = off; i <= last; i++) {
+            for (int k = 0; k < key.length; k++) {
+                if (buf[i + k] != key[k]) {
+                    continue outer;
+                }
+            }
+            int pos = skipWhitespace(buf, i + key.length, end);
+            if (pos >= end || buf[pos] != ':') {
+                continue;
+            }
+            pos = skipWhitespace(buf, pos + 1, end);
+            return pos < end ? pos : -1;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] buf, int pos, int end) {
+        while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\r' || buf[pos] == '\n')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Whether the bytes at pos are exactly candidate followed by a closing quote
+     */
+    private static boolean matchesString(byte[] buf, int pos, int end, String candidate) {
+        int length = candidate.length();
+        if (pos + length >= end) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[pos + i] != candidate.charAt(i)) {
+                return false;
+            }
+        }
+        return buf[pos + length] == '"';
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.mdp_14;
+
+/**
+ * Fixed-size histogram of round-trip times with 1 ms buckets, so recording is
+ * constant time and allocation-free. Samples beyond the last bucket are counted
+ * in an overflow bucket; the maximum is always exact.
+ */
+public class LatencyHistogram {
+    private static final int BUCKET_COUNT = 1000; // 0..999 ms, plus overflow
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    private final long[] buckets = new long[BUCKET_COUNT + 1];
+    private long count = 0;
+    private long maxNanos = 0;
+    private long lastNanos = 0;
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        int bucket = (int) Math.min(nanos / NANOS_PER_MS, BUCKET_COUNT);
+        buckets[bucket]++;
+        count++;
+        lastNanos = nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Latency at the given percentile (0-100) in milliseconds, or 0 with no samples
+     */
+    public synchronized long getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return i;
+            }
+        }
+        return getMaxMs();
+    }
+
+    public synchronized long getMaxMs() {
+        return maxNanos / NANOS_PER_MS;
+    }
+
+    public synchronized long getLastMs() {
+        return lastNanos / NANOS_PER_MS;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        maxNanos = 0;
+        lastNanos = 0;
+    }
+}
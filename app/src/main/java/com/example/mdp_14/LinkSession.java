@@ -0,0 +1,364 @@
+package com.example.mdp_14;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The reader/writer pipeline for one connection, independent of the underlying
+ * {@link Transport} and of Android, so it can also be driven from a plain JVM.
+ *
+ * The reader thread reassembles frames with {@link FrameDecoder}; the writer thread
+ * drains the outbound {@link OutboundScheduler} in priority order, coalescing messages
+ * queued within a few milliseconds into one write and flush. Results are reported
+ * through {@link Listener}.
+ *
+ * A control message waits at most for the batch already being written (up to
+ * MAX_BATCH_BYTES), never for the rest of the backlog.
+ */
+public class LinkSession {
+    // Outbound batching: messages queued within this window share one write/flush
+    private static final long COALESCE_WINDOW_MS = 4;
+    private static final int MAX_BATCH_BYTES = 4096;
+    private static final int READ_BUFFER_SIZE = 1024;
+
+    /**
+     * Callbacks from the session threads. Implementations must hand work off to
+     * their own thread; frame slices are only valid during {@link #onFrame}.
+     */
+    public interface Listener {
+        /** A complete inbound frame (reader thread) */
+        void onFrame(byte[] buffer, int offset, int length);
+
+        /** An outbound message has been written and flushed (writer thread) */
+        void onSent(String label);
+
+        /** An outbound message could not be written (writer thread) */
+        void onSendFailed(String label, IOException e);
+
+        /** The remote end closed or the link failed; not called after {@link #close()} */
+        void onClosed(IOException cause);
+    }
+
+    /**
+     * Observes raw traffic, e.g. for {@link TrafficRecorder}. Called on the session
+     * threads; slices are only valid during the call.
+     */
+    public interface Tap {
+        /** A complete inbound frame, before it is handed to the {@link Listener} */
+        void onInbound(byte[] buffer, int offset, int length);
+
+        /** One outbound message, after it has been written and flushed */
+        void onOutbound(byte[] buffer, int offset, int length);
+    }
+
+    /**
+     * An outbound frame plus the text shown for it in the message log. Sequenced
+     * messages are only encoded by the writer, when they get their sequence number.
+     */
+    private static final class PendingWrite {
+        byte[] data;
+        String label;
+        final int priority;
+        final SessionResume sequencer;
+        final SessionResume.Entry entry;
+
+        PendingWrite(byte[] data, String label, int priority) {
+            this.data = data;
+            this.label = label;
+            this.priority = priority;
+            this.sequencer = null;
+            this.entry = null;
+        }
+
+        PendingWrite(SessionResume sequencer, SessionResume.Entry entry, int priority) {
+            this.priority = priority;
+            this.sequencer = sequencer;
+            this.entry = entry;
+        }
+    }
+
+    private final Transport transport;
+    private final Listener listener;
+    private final OutboundScheduler<PendingWrite> outboundQueue = new OutboundScheduler<>();
+    private final ReaderThread readerThread;
+    private final WriterThread writerThread;
+    private volatile boolean closed = false;
+    private volatile Tap tap;
+
+    public LinkSession(Transport transport, Listener listener) throws IOException {
+        this.transport = transport;
+        this.listener = listener;
+        this.readerThread = new ReaderThread(transport.getInputStream());
+        this.writerThread = new WriterThread(transport.getOutputStream());
+    }
+
+    public void start() {
+        readerThread.start();
+        writerThread.start();
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Attach or (with null) detach a traffic tap. Takes effect from the next frame.
+     */
+    public void setTap(Tap tap) {
+        this.tap = tap;
+    }
+
+    /**
+     * Queue a text message in the arena sync lane
+     */
+    public void send(String message) {
+        send(message, OutboundScheduler.PRIORITY_ARENA);
+    }
+
+    /**
+     * Queue a text message. Text messages are newline-terminated so a coalesced
+     * batch can be split by the receiver. Never blocks the caller.
+     */
+    public void send(String message, int priority) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, data, 0, bytes.length);
+        data[bytes.length] = '\n';
+        enqueue(new PendingWrite(data, message, priority));
+    }
+
+    /**
+     * Queue already encoded bytes in the arena sync lane
+     */
+    public void sendFrame(byte[] frame, String label) {
+        sendFrame(frame, label, OutboundScheduler.PRIORITY_ARENA);
+    }
+
+    /**
+     * Queue already encoded bytes: a binary frame (see {@link BinaryCodec}) or
+     * newline-terminated text. The label may be null for link-level traffic.
+     */
+    public void sendFrame(byte[] frame, String label, int priority) {
+        enqueue(new PendingWrite(frame, label, priority));
+    }
+
+    /**
+     * Queue a message for reliable delivery. Its sequence number is assigned as it is
+     * written (see {@link SessionResume#sequence}), so numbers reach the link in order
+     * whichever lanes the messages wait in.
+     */
+    public void sendSequenced(SessionResume sequencer, SessionResume.Entry entry, int priority) {
+        enqueue(new PendingWrite(sequencer, entry, priority));
+    }
+
+    /**
+     * Pace the outbound lanes with the app's default token buckets
+     * (see {@link OutboundScheduler#useDefaultRateLimits()})
+     */
+    public void useDefaultRateLimits() {
+        outboundQueue.useDefaultRateLimits();
+    }
+
+    /**
+     * Number of messages waiting to be written to the link
+     */
+    public int getQueueDepth() {
+        return outboundQueue.size();
+    }
+
+    /**
+     * Stop both threads and close the transport. No further callbacks are made.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writerThread.interrupt();
+        outboundQueue.clear();
+        try {
+            transport.close();
+        } catch (IOException ignored) {
+            // Already broken; nothing more to release
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void enqueue(PendingWrite pending) {
+        if (!closed) {
+            outboundQueue.offer(pending, pending.priority);
+        }
+    }
+
+    private void fail(IOException cause) {
+        if (!closed) {
+            close();
+            listener.onClosed(cause);
+        }
+    }
+
+    /**
+     * Thread that reads the transport and emits every complete frame
+     */
+    private class ReaderThread extends Thread {
+        private final InputStream inStream;
+
+        ReaderThread(InputStream inStream) {
+            super("LinkReader");
+            this.inStream = inStream;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+            // Reassemble whole messages from the stream; a single read may carry
+            // a partial message or several coalesced ones
+            FrameDecoder decoder = new FrameDecoder((frame, offset, length) -> {
+                Tap current = tap;
+                if (current != null) {
+                    current.onInbound(frame, offset, length);
+                }
+                listener.onFrame(frame, offset, length);
+            });
+
+            while (!closed) {
+                try {
+                    int bytes = inStream.read(buffer);
+                    if (bytes == -1) {
+                        // Stream closed cleanly
+                        fail(null);
+                        break;
+                    }
+                    decoder.feed(buffer, 0, bytes);
+                } catch (IOException e) {
+                    fail(e);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Thread that drains the outbound queue so a stalled link never blocks the caller.
+     * Messages queued close together are coalesced into a single write and flush.
+     */
+    private class WriterThread extends Thread {
+        private final OutputStream outStream;
+        private final List<PendingWrite> batch = new ArrayList<>();
+
+        WriterThread(OutputStream outStream) {
+            super("LinkWriter");
+            this.outStream = outStream;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[MAX_BATCH_BYTES];
+
+            while (!closed) {
+                try {
+                    PendingWrite first = outboundQueue.take();
+                    batch.clear();
+                    if (!encode(first)) {
+                        continue;
+                    }
+                    batch.add(first);
+
+                    // Gather anything else queued within the coalescing window.
+                    // Control messages are never held back waiting for company.
+                    int batchBytes = first.data.length;
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COALESCE_WINDOW_MS);
+                    boolean urgent = first.priority == OutboundScheduler.PRIORITY_CONTROL;
+                    while (batchBytes < MAX_BATCH_BYTES) {
+                        long remaining = deadline - System.nanoTime();
+                        PendingWrite next = remaining > 0 && !urgent
+                                ? outboundQueue.poll(remaining, TimeUnit.NANOSECONDS)
+                                : outboundQueue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        if (!encode(next)) {
+                            continue;
+                        }
+                        batch.add(next);
+                        batchBytes += next.data.length;
+                        urgent |= next.priority == OutboundScheduler.PRIORITY_CONTROL;
+                    }
+
+                    buffer = writeBatch(buffer);
+                } catch (InterruptedException e) {
+                    break;
+                } catch (IOException e) {
+                    if (!closed) {
+                        for (PendingWrite pending : batch) {
+                            listener.onSendFailed(pending.label, e);
+                        }
+                        fail(e);
+                    }
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Sequence a message taken off the queue, in wire order. Returns false if it
+         * no longer needs sending (e.g. acknowledged while waiting to be resent).
+         */
+        private boolean encode(PendingWrite pending) {
+            if (pending.entry == null) {
+                return true;
+            }
+            byte[] data = pending.sequencer.sequence(pending.entry);
+            if (data == null) {
+                return false;
+            }
+            pending.data = data;
+            pending.label = pending.entry.getLabel();
+            return true;
+        }
+
+        /**
+         * Write every message in the batch with one flush.
+         * Returns the (possibly grown) scratch buffer for reuse.
+         */
+        private byte[] writeBatch(byte[] buffer) throws IOException {
+            int length = 0;
+            for (PendingWrite pending : batch) {
+                byte[] bytes = pending.data;
+                if (length + bytes.length > buffer.length) {
+                    byte[] bigger = new byte[Math.max(buffer.length * 2, length + bytes.length)];
+                    System.arraycopy(buffer, 0, bigger, 0, length);
+                    buffer = bigger;
+                }
+                System.arraycopy(bytes, 0, buffer, length, bytes.length);
+                length += bytes.length;
+            }
+
+            outStream.write(buffer, 0, length);
+            outStream.flush(); // Flush to ensure data is sent
+
+            // Report completion once the data has actually left
+            Tap current = tap;
+            long now = System.nanoTime();
+            for (PendingWrite pending : batch) {
+                if (pending.entry != null) {
+                    pending.sequencer.markWritten(pending.entry, now);
+                }
+                if (current != null) {
+                    current.onOutbound(pending.data, 0, pending.data.length);
+                }
+                listener.onSent(pending.label);
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.mdp_14;
+
+/**
+ * Allocation-free decoder for the location category, the hottest inbound message.
+ * Reads x, y and d straight from the frame bytes into a preallocated
+ * {@link RobotPose}, without building a String, JSONObject or event.
+ *
+ * Frames it doesn't recognise are left to {@link InboundParser}.
+ */
+public final class LocationDecoder {
+    private static final String[] LOCATION_CATEGORY = {InboundParser.CAT_LOCATION};
+    private static final byte[] KEY_X = JsonScanner.key("x");
+    private static final byte[] KEY_Y = JsonScanner.key("y");
+    private static final byte[] KEY_D = JsonScanner.key("d");
+
+    private LocationDecoder() {}
+
+    /**
+     * Decode a JSON or binary location frame into out. Returns false, leaving out
+     * untouched, if the frame is not a well-formed location message.
+     */
+    public static boolean decode(byte[] buffer, int offset, int length, RobotPose out) {
+        if (BinaryCodec.isBinaryFrame(buffer, offset, length)) {
+            return decodeBinary(buffer, offset, length, out);
+        }
+        if (JsonScanner.category(buffer, offset, length, LOCATION_CATEGORY) == JsonScanner.NO_CATEGORY) {
+            return false;
+        }
+        long x = JsonScanner.longField(buffer, offset, length, KEY_X);
+        long y = JsonScanner.longField(buffer, offset, length, KEY_Y);
+        long d = JsonScanner.longField(buffer, offset, length, KEY_D);
+        if (x == JsonScanner.MISSING || y == JsonScanner.MISSING || d == JsonScanner.MISSING) {
+            return false;
+        }
+        out.set((int) x, (int) y, (int) d);
+        return true;
+    }
+
+    private static boolean decodeBinary(byte[] buffer, int offset, int length, RobotPose out) {
+        // [magic][u16 length = 4][cat][x][y][d]
+        if (length != BinaryCodec.HEADER_SIZE + 4
+                || (buffer[offset + BinaryCodec.HEADER_SIZE] & 0xFF) != BinaryCodec.CAT_LOCATION) {
+            return false;
+        }
+        int pos = offset + BinaryCodec.HEADER_SIZE + 1;
+        out.set(buffer[pos] & 0xFF, buffer[pos + 1] & 0xFF, buffer[pos + 2] & 0xFF);
+        return true;
+    }
+}
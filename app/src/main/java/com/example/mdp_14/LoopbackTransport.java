@@ -0,0 +1,176 @@
+package com.example.mdp_14;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * In-memory {@link Transport}. {@link #createPair()} returns two connected ends:
+ * bytes written to one end are read from the other. Used to run the full message
+ * pipeline against an in-process stand-in robot without any hardware.
+ */
+public class LoopbackTransport implements Transport {
+    private static final int PIPE_CAPACITY = 64 * 1024;
+
+    private final String name;
+    private final Pipe in;
+    private final Pipe out;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    private LoopbackTransport(String name, Pipe in, Pipe out) {
+        this.name = name;
+        this.in = in;
+        this.out = out;
+        this.inputStream = new PipeInputStream(in);
+        this.outputStream = new PipeOutputStream(out);
+    }
+
+    /**
+     * Create two connected ends, e.g. one for the app and one for a stand-in robot
+     */
+    public static LoopbackTransport[] createPair() {
+        Pipe aToB = new Pipe(PIPE_CAPACITY);
+        Pipe bToA = new Pipe(PIPE_CAPACITY);
+        return new LoopbackTransport[]{
+                new LoopbackTransport("loopback-b", bToA, aToB),
+                new LoopbackTransport("loopback-a", aToB, bToA)
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public String getRemoteName() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+        // Closing either end tears down both directions, like a socket
+        in.close();
+        out.close();
+    }
+
+    /**
+     * Bounded blocking byte ring shared by one writer and one reader
+     */
+    private static final class Pipe {
+        private final byte[] buffer;
+        private int head = 0;
+        private int size = 0;
+        private boolean closed = false;
+
+        Pipe(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        synchronized int read(byte[] dest, int offset, int length) throws IOException {
+            try {
+                while (size == 0 && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (size == 0) {
+                return -1; // Closed and drained
+            }
+            int count = Math.min(length, size);
+            int firstPart = Math.min(count, buffer.length - head);
+            System.arraycopy(buffer, head, dest, offset, firstPart);
+            System.arraycopy(buffer, 0, dest, offset + firstPart, count - firstPart);
+            head = (head + count) % buffer.length;
+            size -= count;
+            notifyAll();
+            return count;
+        }
+
+        synchronized void write(byte[] src, int offset, int length) throws IOException {
+            while (length > 0) {
+                try {
+                    while (size == buffer.length && !closed) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                if (closed) {
+                    throw new IOException("Loopback pipe closed");
+                }
+                int tail = (head + size) % buffer.length;
+                int count = Math.min(length, Math.min(buffer.length - size, buffer.length - tail));
+                System.arraycopy(src, offset, buffer, tail, count);
+                size += count;
+                offset += count;
+                length -= count;
+                notifyAll();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private static final class PipeInputStream extends InputStream {
+        private final Pipe pipe;
+        private final byte[] single = new byte[1];
+
+        PipeInputStream(Pipe pipe) {
+            this.pipe = pipe;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return pipe.read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return len == 0 ? 0 : pipe.read(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            pipe.close();
+        }
+    }
+
+    private static final class PipeOutputStream extends OutputStream {
+        private final Pipe pipe;
+        private final byte[] single = new byte[1];
+
+        PipeOutputStream(Pipe pipe) {
+            this.pipe = pipe;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            pipe.write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            pipe.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            pipe.close();
+        }
+    }
+}
@@ -17,10 +17,13 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.text.InputType;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.SurfaceView;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
@@ -42,6 +45,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -58,6 +62,13 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
     private static final long MAX_TIME_MILLIS = (5 * 60 + 55) * 1000; //5 minutes 55 seconds
 
+    // Must-deliver inbound messages (image-rec, obstacles, ...) applied per UI frame
+    private static final int MAX_INBOUND_PER_FRAME = 8;
+
+    // Traffic recordings live in the app's private files directory
+    private static final String RECORDINGS_DIR = "recordings";
+    private static final String RECORDING_SUFFIX = ".mdprec";
+
     // Menu items for ActionBar
     private MenuItem deviceNameMenuItem;
     private String connectedDeviceName = null;
@@ -81,6 +92,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
     // UI Elements - Arena Map (C.5, C.6, C.7)
     private ArenaMapView arenaMapView;
+    private SurfaceView arenaSurfaceView;
+    private PerformanceHud performanceHud;
     private Button addObstacleButton;
     private Button editObstacleButton;
     private Button deleteObstacleButton;
@@ -105,6 +118,15 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private static final long TILT_COMMAND_INTERVAL = 500;
     private static final float TILT_THRESHOLD = 3.0f;
 
+    // Obstacle sync (C.6 & C.7)
+    private final ObstacleSyncTracker obstacleSyncTracker = new ObstacleSyncTracker();
+    private boolean isDeltaSyncEnabled = false;
+
+    // Wire codec, negotiated by the capability handshake after connecting
+    private boolean isBinaryCodecActive = false;
+    private SessionResume.Entry arenaMessage = null; // Latest obstacle message sent, if sequenced
+    private Button pendingRunButton = null; // Run queued until the robot confirms the arena
+
     // Timer
     private TextView timerText;
     private long startTime = 0;
@@ -127,9 +149,86 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
      *
      * Where:
      *   <id>          = Obstacle number (1, 2, 3, ...)
-     *   <x>, <y>      = Grid coordinates (0-19)
+     *   <x>, <y>      = Grid coordinates, 0 to size - 1 (0-19 on the default 20x20 arena;
+     *                   the size can be set up to ArenaMapView.MAX_GRID_SIZE = 200)
      *   <direction>   = 0 : N, 2 : E, 4 : S, 6: W (which face has the target image)
      *
+     * Every sync also carries "version": <n>, a monotonically increasing arena version.
+     *
+     * With delta sync enabled, edits are sent as incremental operations:
+     *  {
+     *      "cat": "obstacles-delta",
+     *      "value": {
+     *          "version": <n>,
+     *          "base": <n - 1>,
+     *          "ops": [{"op": "add", "id": <id>, "x": <x>, "y": <y>, "d": <direction>},
+     *                  {"op": "move", "id": <id>, "x": <x>, "y": <y>},
+     *                  {"op": "face", "id": <id>, "d": <direction>},
+     *                  {"op": "remove", "id": <id>}]
+     *      }
+     *  }
+     *
+     * A full snapshot is sent when the robot answers the hello after a (re)connect
+     * (unless the session resumes), from "Send Obstacles", and every
+     * ObstacleSyncTracker.FULL_SNAPSHOT_INTERVAL deltas so the robot can resync. A
+     * robot that never answers the hello gets one with the first edit instead.
+     *
+     * ============================================================
+     * CAPABILITY HANDSHAKE
+     * ============================================================
+     *
+     * After connecting, the app offers the codecs it supports:
+     *  {"cat": "hello", "value": {"codecs": ["json", "bin1"]}}
+     *
+     * The robot replies with the one it picked:
+     *  {"cat": "hello", "value": {"codec": "bin1"}}
+     *
+     * With "bin1", location, image-rec, status, obstacles and control messages use
+     * the compact BinaryCodec framing. Without a reply everything stays JSON.
+     *
+     * ============================================================
+     * SESSION RESUME
+     * ============================================================
+     *
+     * The hello also offers session resume, naming our session and the last
+     * sequence number we assigned:
+     *  {"cat": "hello", "value": {"codecs": [...], "features": ["resume"],
+     *                             "session": "<id>", "last_seq": <n>}}
+     *
+     * If the robot lists "resume" in its reply features, every JSON message we
+     * send carries "seq" and binary frames are sent in a sequenced envelope. Numbers
+     * are assigned as messages are written, so first transmissions always arrive in
+     * increasing seq order even when a control message overtakes queued arena
+     * traffic. The robot acknowledges cumulatively:
+     *  {"cat": "ack", "value": {"seq": <n>}}
+     *
+     * After a reconnect, the reply reports what it already received for our session:
+     *  {"cat": "hello", "value": {"codec": ..., "features": ["resume"],
+     *                             "resume": {"session": "<id>", "received": <n>}}}
+     * and everything after <n> is replayed instead of resending the whole arena.
+     * Messages still queued when the link dropped, and ones written after reconnecting
+     * but before this reply, are held and delivered the same way. Without a reply
+     * within 3 s, held messages are sent unsequenced.
+     * Plain-text motion commands ("move:up") are never sequenced or replayed.
+     *
+     * Delivery is at-least-once: a message not acknowledged within 750 ms (doubling
+     * per attempt) is sent again with the same "seq", so the robot must ignore any
+     * seq it has already processed. Explore / Fastest Path only start once the
+     * robot has acknowledged the current arena.
+     *
+     * ============================================================
+     * HEARTBEAT
+     * ============================================================
+     *
+     * While connected, the app pings every second with its own timestamp:
+     *  {"cat": "ping", "value": {"t": <timestamp>}}
+     * and the robot echoes it back unchanged:
+     *  {"cat": "pong", "value": {"t": <timestamp>}}
+     *
+     * Round-trip times (p50/p99/max) are shown next to the device name. Once the
+     * robot has answered a ping, a link silent for longer than the heartbeat timeout
+     * is treated as disconnected. Pings from the robot are answered the same way.
+     *
      * ============================================================
      */
 
@@ -156,6 +255,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         // Initialize Bluetooth service
         bluetoothService = new BluetoothService(messageHandler, bluetoothAdapter);
+        performanceHud = new PerformanceHud(arenaMapView, bluetoothService);
 
         // Set up button listeners
         setupDPadControls();
@@ -188,6 +288,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         // Arena map views (C.5, C.6, C.7)
         arenaMapView = findViewById(R.id.arenaMapView);
+        arenaSurfaceView = findViewById(R.id.arenaSurfaceView);
         addObstacleButton = findViewById(R.id.addObstacleButton);
         editObstacleButton = findViewById(R.id.editObstacleButton);
         deleteObstacleButton = findViewById(R.id.deleteObstacleButton);
@@ -205,16 +306,16 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
      */
     private void setupDPadControls() {
         // Direction button listeners
-        upButton.setOnClickListener(v -> sendCommand("move:up"));
-        downButton.setOnClickListener(v -> sendCommand("move:down"));
-        leftButton.setOnClickListener(v -> sendCommand("move:left"));
-        rightButton.setOnClickListener(v -> sendCommand("move:right"));
+        upButton.setOnClickListener(v -> sendCommand("move:up", OutboundScheduler.PRIORITY_MOTION));
+        downButton.setOnClickListener(v -> sendCommand("move:down", OutboundScheduler.PRIORITY_MOTION));
+        leftButton.setOnClickListener(v -> sendCommand("move:left", OutboundScheduler.PRIORITY_MOTION));
+        rightButton.setOnClickListener(v -> sendCommand("move:right", OutboundScheduler.PRIORITY_MOTION));
 
         // Custom message send button
         sendButton.setOnClickListener(v -> {
             String message = messageInput.getText().toString().trim();
             if (!message.isEmpty()) {
-                sendCommand(message);
+                sendCommand(message, OutboundScheduler.PRIORITY_DIAGNOSTICS);
                 messageInput.setText("");
             } else {
                 Toast.makeText(this, "Please enter a message", Toast.LENGTH_SHORT).show();
@@ -282,16 +383,16 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 return;
             }
             try {
-                JSONObject message = buildObstaclesJSON(obstacles);
-                String jsonString = message.toString(2); // Pretty print
+                // Show exactly what goes on the wire; offline, show what would be sent
+                boolean connected = canSend();
+                String payload = connected ? sendObstacleSnapshot(obstacles)
+                        : buildObstaclesJSON(obstacles).toString();
 
                 new AlertDialog.Builder(this)
-                        .setTitle("Obstacles JSON")
-                        .setMessage(jsonString)
+                        .setTitle(connected ? "Obstacles sent" : "Obstacles (not connected)")
+                        .setMessage(payload)
                         .setPositiveButton("OK", null)
                         .show();
-
-                sendCommand(jsonString);
             } catch (JSONException e) {
                 Log.e(TAG, "Error creating JSON", e);
                 Toast.makeText(this, "Error creating JSON", Toast.LENGTH_SHORT).show();
@@ -300,22 +401,14 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         });
 
         resetButton.setOnClickListener(v -> {
-            sendCommand("{\"cat\": \"control\", \"value\": \"stop\"}");
+            sendControl("stop");
             resetAll();
 
         });
 
-        exploreButton.setOnClickListener(v -> {
-            startRobot();
-            exploreButton.setBackground(getDrawable(R.drawable.bg_action_mint_pressed));
-            exploreButton.setTextColor(getColor(R.color.gold));
-        });
+        exploreButton.setOnClickListener(v -> requestRun(exploreButton));
 
-        fastestPathButton.setOnClickListener(v -> {
-            startRobot();
-            fastestPathButton.setBackground(getDrawable(R.drawable.bg_action_mint_pressed));
-            fastestPathButton.setTextColor(getColor(R.color.gold));
-        });
+        fastestPathButton.setOnClickListener(v -> requestRun(fastestPathButton));
 
         addObstacleButton.setOnClickListener(v -> showAddObstacleDialog());
 
@@ -333,7 +426,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             if (selected != null) {
                 arenaMapView.removeObstacle(selected);
                 try {
-                    sendAllObstaclesToRobot();
+                    syncObstaclesToRobot();
                 } catch (JSONException e) {
                     Log.e(TAG, "Failed to send obstacle update after deletion", e);
                 }
@@ -358,6 +451,21 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         });
     }
 
+    /**
+     * For the instrumented benchmarks and tests, which drive the service over a
+     * loopback link or a recording
+     */
+    BluetoothService getBluetoothService() {
+        return bluetoothService;
+    }
+
+    /**
+     * Whether the robot picked the binary codec, for the instrumented tests
+     */
+    boolean isBinaryCodecActive() {
+        return isBinaryCodecActive;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
@@ -371,14 +479,69 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 disconnect();
             }
         });
+        menu.findItem(R.id.deltaSyncToggle).setChecked(isDeltaSyncEnabled);
+        menu.findItem(R.id.recordTrafficToggle).setChecked(bluetoothService.isRecording());
         updateActionBarMenuItem();
         return true;
     }
 
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.deltaSyncToggle) {
+            isDeltaSyncEnabled = !item.isChecked();
+            item.setChecked(isDeltaSyncEnabled);
+            // Start the new mode from a known state on the robot
+            obstacleSyncTracker.requestFullSnapshot();
+            return true;
+        }
+        if (item.getItemId() == R.id.recordTrafficToggle) {
+            toggleRecording(item);
+            return true;
+        }
+        if (item.getItemId() == R.id.replayRealtime) {
+            replayLastRecording(1.0);
+            return true;
+        }
+        if (item.getItemId() == R.id.replayMaxSpeed) {
+            replayLastRecording(ReplayDriver.SPEED_MAX);
+            return true;
+        }
+        if (item.getItemId() == R.id.showRobotTrack) {
+            boolean visible = !item.isChecked();
+            item.setChecked(visible);
+            arenaMapView.setTrackVisible(visible);
+            return true;
+        }
+        if (item.getItemId() == R.id.showPerformanceHud) {
+            boolean visible = !item.isChecked();
+            item.setChecked(visible);
+            performanceHud.setVisible(visible);
+            return true;
+        }
+        if (item.getItemId() == R.id.renderOnThread) {
+            boolean onThread = !item.isChecked();
+            item.setChecked(onThread);
+            // Set the surface up before it is shown, hide it after the thread stops
+            if (onThread) {
+                arenaMapView.setRenderSurface(arenaSurfaceView);
+                arenaSurfaceView.setVisibility(View.VISIBLE);
+            } else {
+                arenaMapView.setRenderSurface(null);
+                arenaSurfaceView.setVisibility(View.GONE);
+            }
+            return true;
+        }
+        if (item.getItemId() == R.id.arenaSize) {
+            showArenaSizeDialog();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
     private void updateActionBarMenuItem() {
         if (deviceNameMenuItem != null) {
             if (isConnected && connectedDeviceName != null) {
-                deviceNameMenuItem.setTitle(connectedDeviceName);
+                deviceNameMenuItem.setTitle(connectedDeviceName + formatLinkStats());
                 deviceNameMenuItem.setVisible(true);
                 connectButton.setText(R.string.btn_disconnect);
                 connectButton.setBackgroundTintList(ColorStateList.valueOf(Color.parseColor("#F44336"))); //Red
@@ -390,11 +553,35 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
+    /**
+     * Round-trip times from the heartbeat, e.g. ", RTT 12/40/55 ms" (p50/p99/max),
+     * followed by message ack times (p50/p99) once acked delivery is in use,
+     * or an empty string before the first pong
+     */
+    private String formatLinkStats() {
+        LatencyHistogram latency = bluetoothService.getLinkLatency();
+        if (latency.getCount() == 0) {
+            return "";
+        }
+        String stats = ", RTT " + latency.getPercentileMs(50) + "/" + latency.getPercentileMs(99)
+                + "/" + latency.getMaxMs() + " ms";
+
+        LatencyHistogram ackLatency = bluetoothService.getAckLatency();
+        if (ackLatency.getCount() > 0) {
+            stats += ", ack " + ackLatency.getPercentileMs(50) + "/" + ackLatency.getPercentileMs(99) + " ms";
+        }
+        return stats;
+    }
+
     // ============================================================
     // C.6 & C.7: OBSTACLE BLUETOOTH TRANSMISSION
     // ============================================================
 
     private JSONObject buildObstaclesJSON(List<Obstacle> obstacles) throws JSONException {
+        return buildObstaclesJSON(obstacles, obstacleSyncTracker.getNextVersion());
+    }
+
+    private JSONObject buildObstaclesJSON(List<Obstacle> obstacles, long version) throws JSONException {
         JSONObject message = new JSONObject();
         message.put("cat", "obstacles");
 
@@ -407,15 +594,72 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         value.put("obstacles", obstaclesArray);
         value.put("mode", "0");
+        value.put("version", version);
         message.put("value", value);
 
         return message;
     }
 
+    private JSONObject buildObstacleDeltaJSON(List<ObstacleSyncTracker.Op> ops, long version) throws JSONException {
+        JSONObject message = new JSONObject();
+        message.put("cat", "obstacles-delta");
+
+        JSONObject value = new JSONObject();
+        JSONArray opsArray = new JSONArray();
+
+        for (ObstacleSyncTracker.Op op : ops) {
+            JSONObject json = new JSONObject();
+            json.put("op", op.type);
+            json.put("id", op.id);
+            if (op.x >= 0) {
+                json.put("x", op.x);
+                json.put("y", op.y);
+            }
+            if (op.d >= 0) {
+                json.put("d", op.d);
+            }
+            opsArray.put(json);
+        }
+
+        value.put("version", version);
+        value.put("base", version - 1);
+        value.put("ops", opsArray);
+        message.put("value", value);
+
+        return message;
+    }
+
+    /**
+     * Bring the robot's copy of the arena up to date after an edit.
+     * Sends only the changed obstacles when delta sync is enabled.
+     */
+    private void syncObstaclesToRobot() throws JSONException {
+        if (!isDeltaSyncEnabled || obstacleSyncTracker.needsFullSnapshot()) {
+            sendAllObstaclesToRobot();
+            return;
+        }
+
+        if (!canSend()) {
+            Toast.makeText(this, "Not connected to robot", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        List<Obstacle> obstacles = arenaMapView.getObstacles();
+        List<ObstacleSyncTracker.Op> ops = obstacleSyncTracker.computeDelta(obstacles);
+        if (ops.isEmpty()) {
+            return;
+        }
+
+        JSONObject message = buildObstacleDeltaJSON(ops, obstacleSyncTracker.getNextVersion());
+        arenaMessage = sendCommand(message.toString(), OutboundScheduler.PRIORITY_ARENA);
+        long version = obstacleSyncTracker.markDeltaSent(obstacles);
+        Log.d(TAG, "Sent " + ops.size() + " obstacle change(s), arena version " + version);
+    }
+
     private void sendAllObstaclesToRobot() throws JSONException {
         List<Obstacle> obstacles = arenaMapView.getObstacles();
 
-        if (!isConnected) {
+        if (!canSend()) {
             Toast.makeText(this, "Not connected to robot", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -425,35 +669,38 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             return;
         }
 
-        // Build JSON object with all obstacles
-        JSONObject message = buildObstaclesJSON(obstacles);
-        sendCommand(message.toString());
+        sendObstacleSnapshot(obstacles);
         Toast.makeText(this, "Sent " + obstacles.size() + " obstacle(s) to robot", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "Sent " + obstacles.size() + " obstacles to robot");
     }
 
-    public JSONObject formatObstacleJSON(Obstacle obs) throws JSONException {
-        JSONObject json = new JSONObject();
-        int direction;
-
-        switch(obs.getTargetFace().toString()){
-            case"EAST":
-                direction = 2;
-                break;
-            case "SOUTH":
-                direction = 4;
-                break;
-            case"WEST":
-                direction = 6;
-                break;
-            default:
-                direction = 0;
+    /**
+     * Send a full snapshot of the arena using the negotiated codec. Returns the
+     * message as sent: single-line JSON, or a description of the binary frame.
+     */
+    private String sendObstacleSnapshot(List<Obstacle> obstacles) throws JSONException {
+        long version = obstacleSyncTracker.getNextVersion();
+        String sent;
+        // Null if the arena doesn't fit the binary layout (ids or coordinates over 255)
+        byte[] frame = isBinaryCodecActive ? BinaryCodec.encodeObstacles(obstacles, version) : null;
+        if (frame != null) {
+            sent = "obstacles v" + version + " " + BinaryCodec.describe(frame);
+            arenaMessage = bluetoothService.writeFrame(frame, sent, OutboundScheduler.PRIORITY_ARENA);
+        } else {
+            // Build JSON object with all obstacles
+            sent = buildObstaclesJSON(obstacles, version).toString();
+            arenaMessage = sendCommand(sent, OutboundScheduler.PRIORITY_ARENA);
         }
+        obstacleSyncTracker.markFullSnapshotSent(obstacles);
+        return sent;
+    }
 
+    public JSONObject formatObstacleJSON(Obstacle obs) throws JSONException {
+        JSONObject json = new JSONObject();
         json.put("x", obs.getGridX());
         json.put("y", obs.getGridY());
         json.put("id", obs.getId());
-        json.put("d", direction);
+        json.put("d", obs.getTargetFace().getNumeric());
         return json;
     }
 
@@ -501,7 +748,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                         arenaMapView.addObstacle(obstacle);
                         arenaMapView.setSelectedObstacle(obstacle);
 
-                        sendAllObstaclesToRobot();
+                        syncObstaclesToRobot();
 
                         Toast.makeText(this, "Obstacle added. Drag to position.", Toast.LENGTH_SHORT).show();
                     } catch (NumberFormatException e) {
@@ -566,7 +813,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                         arenaMapView.updateObstacle(obstacle);
                         Toast.makeText(this, "Obstacle updated", Toast.LENGTH_SHORT).show();
                         try {
-                            sendAllObstaclesToRobot();
+                            syncObstaclesToRobot();
                         } catch (JSONException ex) {
                             Log.e(TAG, "Failed to send obstacle update after edit", ex);
                         }
@@ -578,6 +825,34 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 .show();
     }
 
+    /**
+     * Set the arena to N x N cells, e.g. for larger practice floors
+     */
+    private void showArenaSizeDialog() {
+        EditText sizeInput = new EditText(this);
+        sizeInput.setInputType(InputType.TYPE_CLASS_NUMBER);
+        sizeInput.setText(String.valueOf(arenaMapView.getGridSize()));
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.menu_arena_size)
+                .setMessage("Cells per side (" + ArenaMapView.MIN_GRID_SIZE + "-" + ArenaMapView.MAX_GRID_SIZE + ")")
+                .setView(sizeInput)
+                .setPositiveButton("Set", (dialog, which) -> {
+                    try {
+                        int size = Integer.parseInt(sizeInput.getText().toString());
+                        arenaMapView.setGridSize(size);
+                        // Obstacles may have been moved to fit
+                        syncObstaclesToRobot();
+                    } catch (NumberFormatException e) {
+                        Toast.makeText(this, "Invalid size", Toast.LENGTH_SHORT).show();
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Failed to send obstacle update after resizing arena", e);
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     // ============================================================
     // ArenaMapView.OnObstacleActionListener implementation
     // ============================================================
@@ -596,7 +871,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     public void onObstaclePositionChanged(Obstacle obstacle) {
         Log.d(TAG, "Obstacle moved: " + obstacle);
         try {
-            sendAllObstaclesToRobot();
+            syncObstaclesToRobot();
         } catch (JSONException e) {
             Log.e(TAG, "Failed to send obstacle update after move", e);
         }
@@ -606,7 +881,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     public void onObstacleRemovedByDrag(Obstacle obstacle) {
         Log.d(TAG, "Obstacle removed by drag: " + obstacle);
         try {
-            sendAllObstaclesToRobot();
+            syncObstaclesToRobot();
             Toast.makeText(this, "Obstacle #" + obstacle.getId() + " removed", Toast.LENGTH_SHORT).show();
         } catch (JSONException e) {
             Log.e(TAG, "Failed to send obstacle update after removed by drag", e);
@@ -620,9 +895,11 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         if (robot != null) {
             positionText.setText(robot.getGridX() + "," + robot.getGridY());
             directionText.setText(robot.getFacing().name());
+            shownDirection = robot.getFacing();
         } else {
             positionText.setText("-");
             directionText.setText("-");
+            shownDirection = null;
         }
     }
 
@@ -656,9 +933,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         @Override
         public void handleMessage(@NonNull Message msg) {
             switch (msg.what) {
-                case BluetoothService.MESSAGE_READ:
-                    String receivedMessage = (String) msg.obj;
-                    handleIncomingMessage(receivedMessage);
+                case BluetoothService.MESSAGE_INBOUND_READY:
+                    Choreographer.getInstance().postFrameCallback(inboundDrainCallback);
                     break;
 
                 case BluetoothService.MESSAGE_WRITE:
@@ -666,6 +942,11 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                     logMessage("Sent: " + sentMessage, "#1976D2");
                     break;
 
+                case BluetoothService.MESSAGE_WRITE_FAILED:
+                    String failedMessage = (String) msg.obj;
+                    logMessage("Send failed: " + failedMessage, "#F44336");
+                    break;
+
                 case BluetoothService.MESSAGE_DISCONNECTED:
                     handleDisconnection();
                     break;
@@ -673,10 +954,114 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 case BluetoothService.MESSAGE_CONNECTED:
                     handleIncomingConnection();
                     break;
+
+                case BluetoothService.MESSAGE_LINK_STATS:
+                    updateActionBarMenuItem();
+                    break;
+
+                case BluetoothService.MESSAGE_DELIVERY_STALLED:
+                    String stalledMessage = (String) msg.obj;
+                    logMessage("Not acknowledged, retrying: " + stalledMessage, "#FF9800");
+                    break;
+
+                case BluetoothService.MESSAGE_ACKNOWLEDGED:
+                    startPendingRun();
+                    break;
+
+                case BluetoothService.MESSAGE_REPLAY_DONE:
+                    if (msg.arg1 < 0) {
+                        logMessage("Replay failed", "#F44336");
+                    } else {
+                        logMessage("Replay finished: " + msg.arg1 + " frames", "#4CAF50");
+                    }
+                    break;
             }
         }
     };
 
+    /**
+     * Apply inbound messages once per UI frame. Stale location/status updates were
+     * already conflated away; must-deliver messages are capped per frame and the
+     * rest carry over to the next frame.
+     */
+    private final Choreographer.FrameCallback inboundDrainCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (bluetoothService.getInbound().drain(MAX_INBOUND_PER_FRAME, inboundSink)) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
+
+    private final InboundConflator.Sink<InboundEvent> inboundSink = this::handleInboundEvent;
+
+    // Reused by applyRobotPose so pose updates allocate nothing
+    private final RobotPose uiPose = new RobotPose();
+    private final char[] positionChars = new char[24];
+    private Robot.Direction shownDirection = null;
+
+    // ============================================================
+    // TRAFFIC RECORDING AND REPLAY
+    // ============================================================
+
+    private void toggleRecording(MenuItem item) {
+        if (bluetoothService.isRecording()) {
+            File file = bluetoothService.stopRecording();
+            item.setChecked(false);
+            logMessage("Recording saved: " + file.getName(), "#4CAF50");
+            return;
+        }
+
+        File dir = new File(getFilesDir(), RECORDINGS_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Toast.makeText(this, "Cannot create recordings folder", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String name = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date())
+                + RECORDING_SUFFIX;
+        try {
+            bluetoothService.startRecording(new File(dir, name));
+            item.setChecked(true);
+            logMessage("Recording traffic to " + name, "#4CAF50");
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot start recording", e);
+            Toast.makeText(this, "Cannot start recording", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Play the newest recording through the inbound pipeline. Only while disconnected,
+     * so replayed and live telemetry never mix.
+     */
+    private void replayLastRecording(double speed) {
+        if (isConnected) {
+            Toast.makeText(this, "Disconnect before replaying", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File latest = findLatestRecording();
+        if (latest == null) {
+            Toast.makeText(this, "No recordings yet", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        bluetoothService.startReplay(latest, speed);
+        logMessage("Replaying " + latest.getName(), "#1976D2");
+    }
+
+    private File findLatestRecording() {
+        File[] files = new File(getFilesDir(), RECORDINGS_DIR).listFiles(
+                (dir, name) -> name.endsWith(RECORDING_SUFFIX));
+        if (files == null) {
+            return null;
+        }
+        File latest = null;
+        for (File file : files) {
+            if (latest == null || file.lastModified() > latest.lastModified()) {
+                latest = file;
+            }
+        }
+        return latest;
+    }
+
     // ============================================================
     // STARTING TIMER
     // ============================================================
@@ -689,7 +1074,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             if (elapsedMillis >= MAX_TIME_MILLIS) {
                 elapsedMillis = MAX_TIME_MILLIS; // Cap at 5 minutes
                 stopTimer();
-                sendCommand("{\"cat\": \"control\", \"value\": \"stop\"}");
+                sendControl("stop");
                 resetExploreButtonUI();
                 resetFastestPathButtonUI();
                 return; // Stop the runnable
@@ -714,11 +1099,13 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     // ==================== UI RESET FUNCTIONS ====================
 
     private void resetExploreButtonUI() {
+        exploreButton.setText("Explore");
         exploreButton.setBackground(getDrawable(R.drawable.bg_action_mint));
         exploreButton.setTextColor(getColor(R.color.mint));
     }
 
     private void resetFastestPathButtonUI() {
+        fastestPathButton.setText("Fastest");
         fastestPathButton.setBackground(getDrawable(R.drawable.bg_action_mint));
         fastestPathButton.setTextColor(getColor(R.color.mint));
     }
@@ -740,6 +1127,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     private void resetAll() {
+        pendingRunButton = null;
         // Reset UI
         resetExploreButtonUI();
         resetFastestPathButtonUI();
@@ -752,110 +1140,164 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     // MESSAGE PARSING (C.4, C.9, C.10)
     // ============================================================
 
-    private void handleIncomingMessage(String message) {
-        logMessage("Received: " + message, "#388E3C");
-
-        // Parse different message types
-        if (message.contains("status")) {
-            handleStatusUpdate(message);
-        } else if (message.contains("image-rec")) {
-            handleTargetMessage(message);
-        } else if (message.contains("location")) {
-            handleRobotMessage(message);
-        }
-    }
-
     /**
-     * Handle STATUS message (C.4)
+     * Applies decoded inbound messages on the UI thread. Parsing already happened
+     * on the reader thread (see InboundParser); only UI work is left here.
      */
-    private void handleStatusUpdate(String message) {
-        try {
-//            JSONObject json = new JSONObject(message);
-//            String statusMsg = json.getString("status").toUpperCase();
+    private final InboundEvent.Handler inboundHandler = new InboundEvent.Handler() {
+        @Override
+        public void onLocation(InboundEvent.Location event) {
+            applyRobotPose(event.x, event.y, event.d);
+        }
 
-            JSONObject json = new JSONObject(message);
+        @Override
+        public void onPoseUpdated() {
+            bluetoothService.copyLatestPose(uiPose);
+            applyRobotPose(uiPose.getX(), uiPose.getY(), uiPose.getD());
+        }
 
-            JSONObject value = json.getJSONObject("value");
-            String statusMsg = value.getString("robot_status");
-            robotStatusText.setText(statusMsg);
+        @Override
+        public void onStatus(InboundEvent.Status event) {
+            applyStatus(event.status);
+        }
 
-            if(statusMsg.equals("finished")) {
-                stopTimer();
-            }
+        @Override
+        public void onImageRec(InboundEvent.ImageRec event) {
+            applyTargetRecognized(event.imageId, event.obstacleId);
+        }
 
-        } catch (JSONException e) {
-            Log.d(TAG, "Not a JSON status message: " + message);
+        @Override
+        public void onHello(InboundEvent.Hello event) {
+            handleHelloMessage(event);
         }
+    };
+
+    private void handleInboundEvent(InboundEvent event) {
+        if (event.logText != null) {
+            logMessage("Received: " + event.logText, "#388E3C");
+        }
+        event.dispatch(inboundHandler);
+
+        // uiPose was just refreshed by onPoseUpdated
+        bluetoothService.getPipelineMetrics().onEventApplied(event == InboundEvent.PoseUpdated.INSTANCE
+                ? uiPose.getReceivedAtNanos() : event.receivedAtNanos);
     }
 
     /**
-     * Handle TARGET message (C.9)
-     * Format: {"cat": "image-rec", "value": {"image_id": <Target ID>, "obstacle_id":  <Obstacle Number>}}
+     * STATUS message (C.4)
+     * Format: {"cat": "status", "value": {"robot_status": <status>}}
      */
-    private void handleTargetMessage(String message) {
-        try {
-            JSONObject json = new JSONObject(message);
-
-            JSONObject value = json.getJSONObject("value");
-            String receivedId  = value.getString("image_id");
-            int obstacleNumber = value.getInt("obstacle_id");
+    private void applyStatus(String statusMsg) {
+        robotStatusText.setText(statusMsg);
 
-            String displayId = ImageIdMapper.mapImageId(receivedId);
+        if(statusMsg.equals("finished")) {
+            stopTimer();
+        }
+    }
 
-            Obstacle obstacle = findObstacleById(obstacleNumber);
-            if (obstacle != null) {
-                obstacle.setRecognizedTargetId(displayId);
-                arenaMapView.updateObstacle(obstacle);
-                Toast.makeText(this, "Target " + displayId + " identified on Obstacle #" + obstacleNumber,
-                        Toast.LENGTH_SHORT).show();
-                Log.d(TAG, "Updated Obstacle #" + obstacleNumber + " with Target ID: " + displayId);
-            } else {
-                Log.w(TAG, "Obstacle #" + obstacleNumber + " not found");
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to parse TARGET message: " + message, e);
+    /**
+     * TARGET message (C.9)
+     * Format: {"cat": "image-rec", "value": {"image_id": <Target ID>, "obstacle_id":  <Obstacle Number>}}
+     */
+    private void applyTargetRecognized(String receivedId, int obstacleNumber) {
+        String displayId = ImageIdMapper.mapImageId(receivedId);
+
+        Obstacle obstacle = findObstacleById(obstacleNumber);
+        if (obstacle != null) {
+            obstacle.setRecognizedTargetId(displayId);
+            arenaMapView.updateObstacle(obstacle);
+            Toast.makeText(this, "Target " + displayId + " identified on Obstacle #" + obstacleNumber,
+                    Toast.LENGTH_SHORT).show();
+            Log.d(TAG, "Updated Obstacle #" + obstacleNumber + " with Target ID: " + displayId);
+        } else {
+            Log.w(TAG, "Obstacle #" + obstacleNumber + " not found");
         }
     }
 
     /**
-     * Handle ROBOT message (C.10)
+     * ROBOT message (C.10)
      * Format: {"cat": "location", "value": {"x": <x>, "y": <y>, "d": <direction>}}
+     *
+     * Runs for every pose during a run, so it must not allocate.
      */
-    private void handleRobotMessage(String message) {
-        try {
-            JSONObject json = new JSONObject(message);
+    private void applyRobotPose(int x, int y, int d) {
+        // Convert numeric direction to Direction enum
+        Robot.Direction direction =  Robot.Direction.fromNumeric(d);
 
-            JSONObject value = json.getJSONObject("value");
-            int x = value.getInt("x");
-            int y = value.getInt("y");
-            int d = value.getInt("d");
+        int gridSize = arenaMapView.getGridSize();
+        if (x < 0 || x > gridSize - Robot.SIZE || y < 0 || y > gridSize - Robot.SIZE) {
+            Log.w(TAG, "ROBOT coordinates out of bounds: (" + x + ", " + y + ")");
+            return;
+        }
 
-            // Convert numeric direction to Direction enum
-            Robot.Direction direction =  Robot.Direction.fromNumeric(d);
+        arenaMapView.updateRobotPosition(x, y, direction);
 
-            int gridSize = arenaMapView.getGridSize();
-            if (x < 0 || x > gridSize - Robot.SIZE || y < 0 || y > gridSize - Robot.SIZE) {
-                Log.w(TAG, "ROBOT coordinates out of bounds: (" + x + ", " + y + ")");
-                return;
-            }
+        // Format "x,y" into a reused buffer instead of concatenating
+        int length = TextChars.appendInt(positionChars, 0, x);
+        positionChars[length++] = ',';
+        length = TextChars.appendInt(positionChars, length, y);
+        positionText.setText(positionChars, 0, length);
 
-            arenaMapView.updateRobotPosition(x, y, direction);
-            positionText.setText(x + "," + y);
+        if (direction != shownDirection) {
             directionText.setText(direction.name());
+            shownDirection = direction;
+        }
 
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "Robot updated: position=(" + x + ", " + y + "), facing=" + direction);
+        }
+    }
+
+    /**
+     * Handle the robot's reply to the capability handshake
+     */
+    private void handleHelloMessage(InboundEvent.Hello hello) {
+        isBinaryCodecActive = BinaryCodec.NAME.equals(hello.codec);
+        Log.d(TAG, "Negotiated codec: " + hello.codec);
+
+        try {
+            handleResumeOffer(hello);
         } catch (JSONException e) {
-            Log.e(TAG, "Failed to parse ROBOT message: " + message, e);
+            Log.e(TAG, "Failed to resync obstacles after HELLO", e);
         }
     }
 
-    private Obstacle findObstacleById(int id) {
-        for (Obstacle obs : arenaMapView.getObstacles()) {
-            if (obs.getId() == id) {
-                return obs;
+    /**
+     * Resume the previous session if the robot still has it, otherwise resync the arena.
+     * The handshake settles the codec, so this is where a (re)connect sends the snapshot.
+     */
+    private void handleResumeOffer(InboundEvent.Hello hello) throws JSONException {
+        bluetoothService.setResumeEnabled(hello.supportsResume);
+        if (!hello.supportsResume) {
+            arenaMessage = null;
+            if (!arenaMapView.getObstacles().isEmpty()) {
+                sendAllObstaclesToRobot();
+            }
+            return;
+        }
+
+        int replayed = -1;
+        if (bluetoothService.getSessionId().equals(hello.resumeSession)) {
+            replayed = bluetoothService.resumeSession(hello.resumeReceived);
+        }
+
+        if (replayed >= 0) {
+            // The robot's arena is intact; the replay brings it up to date
+            obstacleSyncTracker.cancelFullSnapshotRequest();
+            logMessage("Session resumed (" + replayed + " replayed)", "#4CAF50");
+        } else {
+            // Earlier sequence numbers will never be acknowledged now
+            bluetoothService.abandonSession();
+            arenaMessage = null;
+            obstacleSyncTracker.requestFullSnapshot();
+            if (!arenaMapView.getObstacles().isEmpty()) {
+                sendAllObstaclesToRobot();
             }
         }
-        return null;
+    }
+
+    private Obstacle findObstacleById(int id) {
+        return arenaMapView.findObstacleById(id);
     }
 
     private void logMessage(String message, String colorHex) {
@@ -888,6 +1330,10 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         isConnected = connected;
         connectedDeviceName = connected ? deviceName : null;
 
+        // Whatever the robot had before is unknown after a (re)connect
+        obstacleSyncTracker.requestFullSnapshot();
+        isBinaryCodecActive = false;
+
         updateActionBarMenuItem();
 
         if (connected) {
@@ -910,21 +1356,13 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     private void handleIncomingConnection() {
-        String deviceName = "Device";
-
-        try {
-            if (bluetoothService.socket != null && bluetoothService.socket.getRemoteDevice() != null) {
-                deviceName = bluetoothService.socket.getRemoteDevice().getName();
-                if (deviceName == null || deviceName.isEmpty()) {
-                    deviceName = bluetoothService.socket.getRemoteDevice().getAddress();
-                }
-            }
-        } catch (SecurityException e) {
-            Log.e(TAG, "Permission denied getting device name", e);
-            deviceName = "Connected Device";
+        String deviceName = bluetoothService.getRemoteDeviceName();
+        if (deviceName == null) {
+            deviceName = "Device";
         }
 
         updateConnectionStatus(true, deviceName);
+        sendCapabilityHello();
         logMessage("Device connected!", "#4CAF50");
         Toast.makeText(this, "Device connected!", Toast.LENGTH_SHORT).show();
     }
@@ -932,6 +1370,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private void handleDisconnection() {
         updateConnectionStatus(false, "Disconnected");
         logMessage("Device disconnected!", "#F44336");
+        cancelPendingRun();
         Toast.makeText(this, "Device disconnected", Toast.LENGTH_SHORT).show();
 
         bluetoothService.restartServer();
@@ -1007,6 +1446,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 runOnUiThread(() -> {
                     bluetoothService.connect(socket);
                     updateConnectionStatus(true, device.getName());
+                    sendCapabilityHello();
                     logMessage("Connected to " + device.getName(), "#4CAF50");
                     Toast.makeText(MainActivity.this, "Connected!", Toast.LENGTH_SHORT).show();
                 });
@@ -1034,21 +1474,139 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         bluetoothService.restartServer();
     }
 
-    private void sendCommand(String command) {
-        if (isConnected) {
-            bluetoothService.write(command);
+    /**
+     * Whether messages can be sent now. Nothing is queued while disconnected, even
+     * with session resume; only what was already queued when the link dropped is
+     * replayed.
+     */
+    private boolean canSend() {
+        return isConnected;
+    }
+
+    /**
+     * Send a message in the given OutboundScheduler priority lane
+     * (control > motion > arena sync > diagnostics).
+     * Returns the entry to check for the robot's ack, or null if not sequenced.
+     */
+    private SessionResume.Entry sendCommand(String command, int priority) {
+        if (canSend()) {
+            return bluetoothService.write(command, priority);
+        }
+        Log.d(TAG, "Cannot send - not connected: " + command);
+        return null;
+    }
+
+    /**
+     * Start a run from Explore or Fastest Path once the robot has the current arena.
+     * With acked delivery a snapshot is sent first if one is due, and until the latest
+     * obstacle message is acknowledged the run is queued: the button reads "Waiting"
+     * and the run starts by itself on the ack (see {@link #startPendingRun}).
+     */
+    private void requestRun(Button button) {
+        if (bluetoothService.isResumeEnabled()
+                && obstacleSyncTracker.needsFullSnapshot() && !arenaMapView.getObstacles().isEmpty()) {
+            try {
+                sendAllObstaclesToRobot();
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to resend obstacles before start", e);
+            }
+        }
+        if (isArenaConfirmed()) {
+            startRun(button);
+            return;
+        }
+        if (pendingRunButton != button) {
+            if (pendingRunButton != null) {
+                resetRunButtonUI(pendingRunButton);
+            }
+            pendingRunButton = button;
+            button.setText("Waiting");
+            button.setBackground(getDrawable(R.drawable.bg_action_mint_pressed));
+            logMessage("Waiting for the robot to confirm the arena; the run starts when it does", "#FF9800");
+        }
+    }
+
+    /**
+     * Whether the robot has acknowledged the latest obstacle message. Always true
+     * when the robot doesn't acknowledge messages.
+     */
+    private boolean isArenaConfirmed() {
+        return !bluetoothService.isResumeEnabled() || arenaMessage == null
+                || bluetoothService.isAcknowledged(arenaMessage);
+    }
+
+    /**
+     * Start the queued run, if any, now that the robot may have confirmed the arena
+     */
+    private void startPendingRun() {
+        if (pendingRunButton != null && isArenaConfirmed()) {
+            startRun(pendingRunButton);
+        }
+    }
+
+    private void cancelPendingRun() {
+        if (pendingRunButton == null) {
+            return;
+        }
+        resetRunButtonUI(pendingRunButton);
+        pendingRunButton = null;
+        logMessage("Run cancelled before the robot confirmed the arena", "#F44336");
+    }
+
+    private void resetRunButtonUI(Button button) {
+        if (button == exploreButton) {
+            resetExploreButtonUI();
         } else {
-            Log.d(TAG, "Cannot send - not connected: " + command);
+            resetFastestPathButtonUI();
         }
     }
 
+    private void startRun(Button button) {
+        pendingRunButton = null;
+        startRobot();
+        button.setText(button == exploreButton ? "Explore" : "Fastest");
+        button.setBackground(getDrawable(R.drawable.bg_action_mint_pressed));
+        button.setTextColor(getColor(R.color.gold));
+    }
+
+    /**
+     * Send a control command ("start" / "stop") using the negotiated codec.
+     * Control has its own unthrottled lane and overtakes any queued traffic.
+     */
+    private void sendControl(String value) {
+        if (!canSend()) {
+            Log.d(TAG, "Cannot send - not connected: control " + value);
+            return;
+        }
+        byte[] frame = isBinaryCodecActive ? BinaryCodec.encodeControl(value) : null;
+        if (frame != null) {
+            bluetoothService.writeFrame(frame, "control " + value + " " + BinaryCodec.describe(frame),
+                    OutboundScheduler.PRIORITY_CONTROL);
+        } else {
+            sendCommand("{\"cat\": \"control\", \"value\": \"" + value + "\"}",
+                    OutboundScheduler.PRIORITY_CONTROL);
+        }
+    }
+
+    /**
+     * Offer our supported codecs and session resume; the robot's "hello" reply picks what is used
+     */
+    private void sendCapabilityHello() {
+        bluetoothService.writeUnsequenced("{\"cat\": \"hello\", \"value\": {\"codecs\": [\"json\", \""
+                + BinaryCodec.NAME + "\"], \"features\": [\"resume\"], \"session\": \""
+                + bluetoothService.getSessionId() + "\", \"last_seq\": "
+                + bluetoothService.getLastSequence() + "}}", OutboundScheduler.PRIORITY_CONTROL);
+    }
+
     private void startRobot(){
         if (!isTimerRunning) {
+            // A new run: start a fresh track
+            arenaMapView.clearRobotTrack();
             startTime = System.currentTimeMillis();
             timerHandler.postDelayed(timerRunnable, 0);
             isTimerRunning = true;
         }
-        sendCommand("{\"cat\": \"control\", \"value\": \"start\"}");
+        sendControl("start");
     }
 
 //    private void stopRobot(){
@@ -1129,7 +1687,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
 
         if (command != null) {
-            sendCommand(command);
+            sendCommand(command, OutboundScheduler.PRIORITY_MOTION);
             lastTiltCommandTime = currentTime;
         }
     }
@@ -1157,7 +1715,12 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (performanceHud != null) {
+            performanceHud.setVisible(false);
+        }
         if (bluetoothService != null) {
+            bluetoothService.stopReplay();
+            bluetoothService.stopRecording();
             bluetoothService.stop();
         }
         disableTiltControl();
@@ -20,23 +20,33 @@ public class Obstacle implements Serializable {
     private int height;             // Height in grid units
     private Direction targetFace;   // Which face has the target image
     private String recognizedTargetId; // Set by robot when target is identified (C.9)
+    private transient String idLabel;  // Cached text of id for drawing
 
     public enum Direction {
-        NORTH("North"),
-        SOUTH("South"),
-        EAST("East"),
-        WEST("West");
+        NORTH("North", 0),
+        SOUTH("South", 4),
+        EAST("East", 2),
+        WEST("West", 6);
 
         private final String displayName;
+        private final int numeric;
 
-        Direction(String displayName) {
+        Direction(String displayName, int numeric) {
             this.displayName = displayName;
+            this.numeric = numeric;
         }
 
         public String getDisplayName() {
             return displayName;
         }
 
+        /**
+         * Direction code used in the robot protocol (0 : N, 2 : E, 4 : S, 6 : W)
+         */
+        public int getNumeric() {
+            return numeric;
+        }
+
         public static Direction fromDisplayName(String name) {
             for (Direction d : values()) {
                 if (d.displayName.equalsIgnoreCase(name)) {
@@ -72,6 +82,16 @@ public class Obstacle implements Serializable {
         return id;
     }
 
+    /**
+     * The id as text, built once so drawing doesn't allocate a String per frame
+     */
+    public String getIdLabel() {
+        if (idLabel == null) {
+            idLabel = String.valueOf(id);
+        }
+        return idLabel;
+    }
+
     public int getGridX() {
         return gridX;
     }
@@ -0,0 +1,151 @@
+package com.example.mdp_14;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks which obstacle state the robot has last been sent, so that edits can be
+ * synced as small add/move/remove/face operations instead of full snapshots.
+ *
+ * Every sync (delta or full) bumps a monotonically increasing arena version. A full
+ * snapshot is requested on connect, on demand, and after every
+ * {@link #FULL_SNAPSHOT_INTERVAL} deltas so the robot can resync if it missed one.
+ */
+public class ObstacleSyncTracker {
+    public static final int FULL_SNAPSHOT_INTERVAL = 20;
+
+    public static final String OP_ADD = "add";
+    public static final String OP_MOVE = "move";
+    public static final String OP_REMOVE = "remove";
+    public static final String OP_FACE = "face";
+
+    /**
+     * A single change to send to the robot. Fields not relevant to the op are -1.
+     */
+    public static class Op {
+        public final String type;
+        public final int id;
+        public final int x;
+        public final int y;
+        public final int d;
+
+        Op(String type, int id, int x, int y, int d) {
+            this.type = type;
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.d = d;
+        }
+
+        @Override
+        public String toString() {
+            return "Op{" + type + " #" + id + " (" + x + "," + y + ") d=" + d + "}";
+        }
+    }
+
+    // Last state sent to the robot: id -> {x, y, d}
+    private final Map<Integer, int[]> sentState = new HashMap<>();
+    private long version = 0;
+    private int deltasSinceSnapshot = 0;
+    private boolean fullSnapshotRequested = true;
+
+    /**
+     * Whether the next sync must be a full snapshot rather than a delta
+     */
+    public boolean needsFullSnapshot() {
+        return fullSnapshotRequested || deltasSinceSnapshot >= FULL_SNAPSHOT_INTERVAL;
+    }
+
+    /**
+     * Force the next sync to be a full snapshot (e.g. after reconnecting)
+     */
+    public void requestFullSnapshot() {
+        fullSnapshotRequested = true;
+    }
+
+    /**
+     * Withdraw a snapshot request because the robot's copy is known to be intact
+     * (e.g. a resumed session). Ignored if nothing has been sent yet.
+     */
+    public void cancelFullSnapshotRequest() {
+        if (version > 0) {
+            fullSnapshotRequested = false;
+        }
+    }
+
+    /**
+     * Compute the operations needed to bring the robot from the last sent state to current.
+     */
+    public List<Op> computeDelta(List<Obstacle> current) {
+        List<Op> ops = new ArrayList<>();
+        Map<Integer, Obstacle> currentById = new HashMap<>();
+
+        for (Obstacle obs : current) {
+            currentById.put(obs.getId(), obs);
+            int x = obs.getGridX();
+            int y = obs.getGridY();
+            int d = obs.getTargetFace().getNumeric();
+            int[] sent = sentState.get(obs.getId());
+
+            if (sent == null) {
+                ops.add(new Op(OP_ADD, obs.getId(), x, y, d));
+                continue;
+            }
+            if (sent[0] != x || sent[1] != y) {
+                ops.add(new Op(OP_MOVE, obs.getId(), x, y, -1));
+            }
+            if (sent[2] != d) {
+                ops.add(new Op(OP_FACE, obs.getId(), -1, -1, d));
+            }
+        }
+
+        for (Integer id : sentState.keySet()) {
+            if (!currentById.containsKey(id)) {
+                ops.add(new Op(OP_REMOVE, id, -1, -1, -1));
+            }
+        }
+        return ops;
+    }
+
+    /**
+     * Record that a delta bringing the robot to {@code current} was sent.
+     * Returns the new arena version.
+     */
+    public long markDeltaSent(List<Obstacle> current) {
+        record(current);
+        deltasSinceSnapshot++;
+        return ++version;
+    }
+
+    /**
+     * Record that a full snapshot of {@code current} was sent.
+     * Returns the new arena version.
+     */
+    public long markFullSnapshotSent(List<Obstacle> current) {
+        record(current);
+        deltasSinceSnapshot = 0;
+        fullSnapshotRequested = false;
+        return ++version;
+    }
+
+    /**
+     * Version the next sync will carry
+     */
+    public long getNextVersion() {
+        return version + 1;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    private void record(List<Obstacle> current) {
+        sentState.clear();
+        for (Obstacle obs : current) {
+            sentState.put(obs.getId(), new int[]{
+                    obs.getGridX(), obs.getGridY(), obs.getTargetFace().getNumeric()});
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.mdp_14;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound queue with strict priority lanes, each optionally paced by its own
+ * token bucket.
+ *
+ * The writer always takes from the highest-priority lane that has a message and a
+ * token, so a stop or start overtakes any backlog of obstacle updates or tilt
+ * commands. Lanes start unlimited; see {@link #useDefaultRateLimits()}. Messages
+ * waiting for a token are delayed, never dropped.
+ */
+public class OutboundScheduler<T> {
+    // Priority classes, highest first
+    public static final int PRIORITY_CONTROL = 0;     // start / stop, handshake, heartbeat
+    public static final int PRIORITY_MOTION = 1;      // D-pad and tilt commands
+    public static final int PRIORITY_ARENA = 2;       // obstacle sync
+    public static final int PRIORITY_DIAGNOSTICS = 3; // free-text messages
+    public static final int PRIORITY_COUNT = 4;
+
+    private final List<ArrayDeque<T>> lanes = new ArrayList<>(PRIORITY_COUNT);
+    private final TokenBucket[] buckets = new TokenBucket[PRIORITY_COUNT];
+    private int size = 0;
+
+    public OutboundScheduler() {
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * The app's pacing: control (including heartbeat pings and pongs, so RTT measures
+     * the link and not the queue) unlimited, then progressively tighter budgets so one
+     * chatty class cannot monopolise the link
+     */
+    public synchronized void useDefaultRateLimits() {
+        buckets[PRIORITY_CONTROL] = null;
+        buckets[PRIORITY_MOTION] = new TokenBucket(20, 4);
+        buckets[PRIORITY_ARENA] = new TokenBucket(10, 5);
+        buckets[PRIORITY_DIAGNOSTICS] = new TokenBucket(5, 5);
+    }
+
+    /**
+     * Replace the pacing of a lane; a null bucket means unlimited
+     */
+    public synchronized void setRateLimit(int priority, TokenBucket bucket) {
+        buckets[priority] = bucket;
+    }
+
+    public synchronized void offer(T item, int priority) {
+        lanes.get(priority).addLast(item);
+        size++;
+        notifyAll();
+    }
+
+    /**
+     * Wait for the next message that may be sent now
+     */
+    public synchronized T take() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            T item = next(now);
+            if (item != null) {
+                return item;
+            }
+            waitNanos(nanosUntilNext(now));
+        }
+    }
+
+    /**
+     * Like {@link #take()}, but gives up after the timeout and returns null
+     */
+    public synchronized T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            long now = System.nanoTime();
+            T item = next(now);
+            if (item != null) {
+                return item;
+            }
+            long remaining = deadline - now;
+            if (remaining <= 0) {
+                return null;
+            }
+            long wait = nanosUntilNext(now);
+            waitNanos(wait > 0 ? Math.min(wait, remaining) : remaining);
+        }
+    }
+
+    /**
+     * The next message that may be sent now, or null without waiting
+     */
+    public synchronized T poll() {
+        return next(System.nanoTime());
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int size(int priority) {
+        return lanes.get(priority).size();
+    }
+
+    public synchronized void clear() {
+        for (ArrayDeque<T> lane : lanes) {
+            lane.clear();
+        }
+        size = 0;
+    }
+
+    private T next(long now) {
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            ArrayDeque<T> lane = lanes.get(i);
+            if (!lane.isEmpty() && (buckets[i] == null || buckets[i].tryAcquire(now))) {
+                size--;
+                return lane.removeFirst();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Time until some queued message gets a token, or 0 to wait for a new message
+     */
+    private long nanosUntilNext(long now) {
+        long soonest = 0;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (!lanes.get(i).isEmpty() && buckets[i] != null) {
+                long wait = buckets[i].nanosUntilAvailable(now);
+                if (soonest == 0 || wait < soonest) {
+                    soonest = wait;
+                }
+            }
+        }
+        return soonest;
+    }
+
+    private void waitNanos(long nanos) throws InterruptedException {
+        if (nanos <= 0) {
+            wait();
+        } else {
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(nanos, 1));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.mdp_14;
+
+import android.view.Choreographer;
+
+/**
+ * Live performance overlay on the arena map, for telling drawing, parsing and link
+ * lag apart on the competition floor:
+ * <pre>
+ * UI    16.7/18.2 ms  3 dropped
+ * Map   0.8/1.5 ms  42 draws/s
+ * In 12/s loc 10 st 1 img 0 oth 1
+ * Parse 35 us avg, 120 max
+ * Queue 0, RTT 14 ms
+ * </pre>
+ * UI and map times are average/p95 over the last {@link #WINDOW_FRAMES} frames.
+ * Rates and parse times cover the last refresh interval; dropped frames count from
+ * when the HUD was shown.
+ *
+ * While shown it samples every UI frame through Choreographer and refreshes the
+ * text twice a second into reused char buffers, so it allocates nothing. While
+ * hidden nothing is timed and only the pipeline's plain counters run.
+ */
+public class PerformanceHud implements Choreographer.FrameCallback {
+    private static final long REFRESH_INTERVAL_NANOS = 500_000_000L;
+    private static final int WINDOW_FRAMES = 120;
+    private static final int LINE_COUNT = 5;
+    private static final int LINE_CHARS = 64;
+
+    private final ArenaMapView arenaMapView;
+    private final BluetoothService bluetoothService;
+    private final PipelineMetrics metrics;
+
+    private final FrameTimeWindow uiFrameTimes = new FrameTimeWindow(WINDOW_FRAMES);
+    private final FrameTimeWindow drawTimes = new FrameTimeWindow(WINDOW_FRAMES);
+    private boolean visible = false;
+    private long lastFrameNanos;
+    private long lastRefreshNanos;
+
+    // Counter values at the last refresh, for rates
+    private final long[] lastMessages = new long[PipelineMetrics.CATEGORY_COUNT];
+    private long lastDraws;
+    private long lastMessagesTimed;
+    private long lastParseNanos;
+    private long droppedAtShow;
+
+    private final char[][] lines = new char[LINE_COUNT][LINE_CHARS];
+    private final int[] lengths = new int[LINE_COUNT];
+
+    public PerformanceHud(ArenaMapView arenaMapView, BluetoothService bluetoothService) {
+        this.arenaMapView = arenaMapView;
+        this.bluetoothService = bluetoothService;
+        this.metrics = bluetoothService.getPipelineMetrics();
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * Show or hide the HUD. Call on the main thread.
+     */
+    public void setVisible(boolean show) {
+        if (show == visible) {
+            return;
+        }
+        visible = show;
+        if (show) {
+            uiFrameTimes.clear();
+            drawTimes.clear();
+            metrics.setDetailedTiming(true);
+            arenaMapView.setDrawStats(drawTimes);
+            lastFrameNanos = 0;
+            lastRefreshNanos = 0;
+            droppedAtShow = metrics.getDroppedFrames();
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            Choreographer.getInstance().removeFrameCallback(this);
+            metrics.onUiFramesPaused();
+            metrics.setDetailedTiming(false);
+            arenaMapView.setDrawStats(null);
+            arenaMapView.setHudText(null, null, 0);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!visible) {
+            return;
+        }
+        metrics.onUiFrame(frameTimeNanos);
+        if (lastFrameNanos != 0) {
+            uiFrameTimes.record(frameTimeNanos - lastFrameNanos);
+        }
+        lastFrameNanos = frameTimeNanos;
+
+        if (lastRefreshNanos == 0) {
+            // First frame: start the rate counters from here
+            takeCounters();
+            lastRefreshNanos = frameTimeNanos;
+        } else if (frameTimeNanos - lastRefreshNanos >= REFRESH_INTERVAL_NANOS) {
+            refresh(frameTimeNanos - lastRefreshNanos);
+            lastRefreshNanos = frameTimeNanos;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Reformat every line from the counters' change over elapsedNanos
+     */
+    private void refresh(long elapsedNanos) {
+        float perSecond = 1_000_000_000f / elapsedNanos;
+
+        // UI frames
+        char[] line = lines[0];
+        int n = TextChars.append(line, 0, "UI    ");
+        n = appendAveragePercentile(line, n, uiFrameTimes);
+        n = TextChars.append(line, n, "  ");
+        n = TextChars.appendInt(line, n, (int) Math.max(0, metrics.getDroppedFrames() - droppedAtShow));
+        lengths[0] = TextChars.append(line, n, " dropped");
+
+        // Map drawing
+        line = lines[1];
+        long draws = drawTimes.getTotalCount();
+        n = TextChars.append(line, 0, "Map   ");
+        n = appendAveragePercentile(line, n, drawTimes);
+        n = TextChars.append(line, n, "  ");
+        n = TextChars.appendInt(line, n, Math.round(Math.max(0, draws - lastDraws) * perSecond));
+        lengths[1] = TextChars.append(line, n, " draws/s");
+
+        // Inbound messages by category. Counters can go backwards if the metrics
+        // are reset, so deltas are clamped at zero.
+        line = lines[2];
+        long total = 0;
+        for (int i = 0; i < PipelineMetrics.CATEGORY_COUNT; i++) {
+            total += metrics.getMessages(i) - lastMessages[i];
+        }
+        n = TextChars.append(line, 0, "In ");
+        n = TextChars.appendInt(line, n, Math.round(Math.max(0, total) * perSecond));
+        n = TextChars.append(line, n, "/s loc ");
+        n = appendRate(line, n, PipelineMetrics.CATEGORY_LOCATION, perSecond);
+        n = TextChars.append(line, n, " st ");
+        n = appendRate(line, n, PipelineMetrics.CATEGORY_STATUS, perSecond);
+        n = TextChars.append(line, n, " img ");
+        n = appendRate(line, n, PipelineMetrics.CATEGORY_IMAGE_REC, perSecond);
+        n = TextChars.append(line, n, " oth ");
+        lengths[2] = appendRate(line, n, PipelineMetrics.CATEGORY_OTHER, perSecond);
+
+        // Parse time on the reader thread
+        line = lines[3];
+        long timed = metrics.getMessagesTimed() - lastMessagesTimed;
+        long parseNanos = metrics.getParseNanos() - lastParseNanos;
+        n = TextChars.append(line, 0, "Parse ");
+        n = TextChars.appendInt(line, n, timed > 0 && parseNanos > 0 ? (int) (parseNanos / timed / 1000) : 0);
+        n = TextChars.append(line, n, " us avg, ");
+        n = TextChars.appendInt(line, n, (int) (metrics.takeMaxParseNanos() / 1000));
+        lengths[3] = TextChars.append(line, n, " max");
+
+        // Link
+        line = lines[4];
+        LatencyHistogram rtt = bluetoothService.getLinkLatency();
+        n = TextChars.append(line, 0, "Queue ");
+        n = TextChars.appendInt(line, n, bluetoothService.getOutboundQueueDepth());
+        n = TextChars.append(line, n, ", RTT ");
+        if (rtt.getCount() > 0) {
+            n = TextChars.appendInt(line, n, (int) rtt.getLastMs());
+            n = TextChars.append(line, n, " ms");
+        } else {
+            n = TextChars.append(line, n, "-");
+        }
+        lengths[4] = n;
+
+        takeCounters();
+        arenaMapView.setHudText(lines, lengths, LINE_COUNT);
+    }
+
+    private int appendAveragePercentile(char[] line, int n, FrameTimeWindow window) {
+        n = TextChars.appendTenths(line, n, window.getAverageMs());
+        line[n++] = '/';
+        n = TextChars.appendTenths(line, n, window.getPercentileMs(95));
+        return TextChars.append(line, n, " ms");
+    }
+
+    private int appendRate(char[] line, int n, int category, float perSecond) {
+        return TextChars.appendInt(line, n, Math.round(Math.max(0, metrics.getMessages(category) - lastMessages[category]) * perSecond));
+    }
+
+    /**
+     * Remember the counters, so the next refresh shows rates since now
+     */
+    private void takeCounters() {
+        for (int i = 0; i < PipelineMetrics.CATEGORY_COUNT; i++) {
+            lastMessages[i] = metrics.getMessages(i);
+        }
+        lastDraws = drawTimes.getTotalCount();
+        lastMessagesTimed = metrics.getMessagesTimed();
+        lastParseNanos = metrics.getParseNanos();
+        metrics.takeMaxParseNanos();
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.mdp_14;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for the inbound message pipeline, from frame arrival on the reader
+ * thread to the event being applied on the UI thread. Recording is allocation-free
+ * so the counters can stay on during runs and benchmarks.
+ *
+ * UI frame pacing is tracked separately through {@link #onUiFrame}, fed from a
+ * Choreographer callback by whoever wants it (benchmarks, the HUD).
+ *
+ * Parse time costs two clock reads per message, so it is only measured while
+ * {@link #setDetailedTiming detailed timing} is on; the plain counters always run.
+ */
+public class PipelineMetrics {
+    /** Frame interval of a 60 Hz display */
+    public static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L;
+
+    /** Inbound message categories, for per-category counts */
+    public static final int CATEGORY_LOCATION = 0;
+    public static final int CATEGORY_STATUS = 1;
+    public static final int CATEGORY_IMAGE_REC = 2;
+    public static final int CATEGORY_OTHER = 3;
+    public static final int CATEGORY_COUNT = 4;
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong eventsApplied = new AtomicLong();
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+    private final AtomicLongArray messagesByCategory = new AtomicLongArray(CATEGORY_COUNT);
+
+    // Parse time, measured only with detailed timing on
+    private volatile boolean detailedTiming = false;
+    private final AtomicLong messagesTimed = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong maxParseNanos = new AtomicLong();
+
+    // UI frames; written on the main thread only
+    private final long frameIntervalNanos;
+    private long lastFrameTimeNanos = 0;
+    private volatile long uiFrames = 0;
+    private volatile long droppedFrames = 0;
+
+    public PipelineMetrics() {
+        this(DEFAULT_FRAME_INTERVAL_NANOS);
+    }
+
+    public PipelineMetrics(long frameIntervalNanos) {
+        this.frameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * An application frame arrived (reader thread)
+     */
+    public void onFrameReceived() {
+        framesReceived.incrementAndGet();
+    }
+
+    /**
+     * Start timing the parse of a message (reader thread). Returns the start time
+     * to pass to {@link #onMessageParsed}, or 0 when detailed timing is off.
+     */
+    public long startParse() {
+        return detailedTiming ? System.nanoTime() : 0;
+    }
+
+    /**
+     * A message of the given category was parsed; parseStartNanos is from
+     * {@link #startParse()}
+     */
+    public void onMessageParsed(int category, long parseStartNanos) {
+        messagesByCategory.incrementAndGet(category);
+        if (parseStartNanos != 0) {
+            long nanos = System.nanoTime() - parseStartNanos;
+            messagesTimed.incrementAndGet();
+            parseNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxParseNanos.get()) && !maxParseNanos.compareAndSet(max, nanos)) {
+                // Raced with another update; retry
+            }
+        }
+    }
+
+    /**
+     * The category an inbound event is counted under
+     */
+    public static int categoryOf(InboundEvent event) {
+        if (event instanceof InboundEvent.PoseUpdated || event instanceof InboundEvent.Location) {
+            return CATEGORY_LOCATION;
+        } else if (event instanceof InboundEvent.Status) {
+            return CATEGORY_STATUS;
+        } else if (event instanceof InboundEvent.ImageRec) {
+            return CATEGORY_IMAGE_REC;
+        }
+        return CATEGORY_OTHER;
+    }
+
+    /**
+     * Measure parse time from now on (for the HUD), or stop measuring it
+     */
+    public void setDetailedTiming(boolean enabled) {
+        detailedTiming = enabled;
+    }
+
+    /**
+     * An event was applied to the UI; receivedAtNanos is when its frame arrived
+     */
+    public void onEventApplied(long receivedAtNanos) {
+        eventsApplied.incrementAndGet();
+        dispatchLatency.record(System.nanoTime() - receivedAtNanos);
+    }
+
+    /**
+     * A UI frame started (main thread). A gap of more than one and a half frame
+     * intervals counts the missing frames as dropped.
+     */
+    public void onUiFrame(long frameTimeNanos) {
+        if (lastFrameTimeNanos != 0) {
+            long gap = frameTimeNanos - lastFrameTimeNanos;
+            if (gap > frameIntervalNanos + frameIntervalNanos / 2) {
+                droppedFrames += (gap + frameIntervalNanos / 2) / frameIntervalNanos - 1;
+            }
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        uiFrames++;
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    public long getEventsApplied() {
+        return eventsApplied.get();
+    }
+
+    /**
+     * Time from frame arrival to the event being applied on the UI thread
+     */
+    public LatencyHistogram getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+    public long getMessages(int category) {
+        return messagesByCategory.get(category);
+    }
+
+    /**
+     * Messages whose parse time was measured, and their total parse time
+     */
+    public long getMessagesTimed() {
+        return messagesTimed.get();
+    }
+
+    public long getParseNanos() {
+        return parseNanos.get();
+    }
+
+    /**
+     * Longest parse time since the last call, which starts a new maximum
+     */
+    public long takeMaxParseNanos() {
+        return maxParseNanos.getAndSet(0);
+    }
+
+    public long getUiFrames() {
+        return uiFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * UI frames stop being reported for a while; the gap until the next one isn't
+     * counted as dropped frames
+     */
+    public void onUiFramesPaused() {
+        lastFrameTimeNanos = 0;
+    }
+
+    /**
+     * Start a new measurement. Call on the main thread, like {@link #onUiFrame}.
+     */
+    public void reset() {
+        framesReceived.set(0);
+        eventsApplied.set(0);
+        dispatchLatency.reset();
+        for (int i = 0; i < CATEGORY_COUNT; i++) {
+            messagesByCategory.set(i, 0);
+        }
+        messagesTimed.set(0);
+        parseNanos.set(0);
+        maxParseNanos.set(0);
+        lastFrameTimeNanos = 0;
+        uiFrames = 0;
+        droppedFrames = 0;
+    }
+}
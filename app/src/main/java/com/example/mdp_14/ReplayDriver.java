@@ -0,0 +1,187 @@
+package com.example.mdp_14;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a {@link TrafficRecorder} file back into a {@link LinkSession.Listener}, so a
+ * recorded run goes through the same decode/dispatch pipeline as live traffic.
+ * Inbound frames are delivered in order, either paced like the original (speed 1.0)
+ * or as fast as possible ({@link #SPEED_MAX}). Outbound frames are reported to an
+ * optional {@link OutboundListener} for comparison.
+ *
+ * Runs on the calling thread.
+ */
+public class ReplayDriver {
+    /** Deliver frames back to back without waiting */
+    public static final double SPEED_MAX = 0;
+
+    /**
+     * Receives the recorded outbound frames
+     */
+    public interface OutboundListener {
+        void onOutbound(long timestampNanos, byte[] buffer, int offset, int length);
+    }
+
+    /**
+     * Sequential reader for the recording format. The frame buffer is reused, so
+     * {@link #getData()} is only valid until the next call to {@link #next()}.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long startedAtMillis;
+        private byte[] data = new byte[256];
+        private int direction;
+        private int length;
+        private long timestampNanos;
+
+        public Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                for (byte expected : TrafficRecorder.MAGIC) {
+                    if (in.readByte() != expected) {
+                        throw new IOException("Not a traffic recording: " + file);
+                    }
+                }
+                int version = in.readUnsignedByte();
+                if (version != TrafficRecorder.VERSION) {
+                    throw new IOException("Unsupported recording version " + version);
+                }
+                startedAtMillis = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Advance to the next record. Returns false at the end of the file, including
+         * a final record cut short because recording was interrupted.
+         */
+        public boolean next() throws IOException {
+            try {
+                direction = in.readUnsignedByte();
+                timestampNanos += readVarint() * 1000;
+                long size = readVarint();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Corrupt record length " + size);
+                }
+                length = (int) size;
+                if (data.length < length) {
+                    data = new byte[Math.max(data.length * 2, length)];
+                }
+                in.readFully(data, 0, length);
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        /** Wall-clock time the recording started, in ms since the epoch */
+        public long getStartedAtMillis() {
+            return startedAtMillis;
+        }
+
+        /** {@link TrafficRecorder#DIRECTION_INBOUND} or {@link TrafficRecorder#DIRECTION_OUTBOUND} */
+        public int getDirection() {
+            return direction;
+        }
+
+        /** Time of the current record since recording started */
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt varint");
+        }
+    }
+
+    private final File file;
+    private final LinkSession.Listener target;
+    private double speed = 1.0;
+    private OutboundListener outboundListener;
+    private volatile boolean cancelled = false;
+
+    public ReplayDriver(File file, LinkSession.Listener target) {
+        this.file = file;
+        this.target = target;
+    }
+
+    /**
+     * Playback speed relative to the recording: 1.0 for real time, 2.0 for twice as
+     * fast, or {@link #SPEED_MAX}
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must not be negative");
+        }
+        this.speed = speed;
+    }
+
+    public void setOutboundListener(OutboundListener outboundListener) {
+        this.outboundListener = outboundListener;
+    }
+
+    /**
+     * Stop a replay running on another thread after its current frame
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Play the recording. Returns the number of inbound frames delivered.
+     */
+    public long run() throws IOException, InterruptedException {
+        long delivered = 0;
+        long startNanos = System.nanoTime();
+
+        try (Reader reader = new Reader(file)) {
+            while (!cancelled && reader.next()) {
+                if (speed != SPEED_MAX) {
+                    long dueNanos = startNanos + (long) (reader.getTimestampNanos() / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                }
+
+                if (reader.getDirection() == TrafficRecorder.DIRECTION_INBOUND) {
+                    target.onFrame(reader.getData(), 0, reader.getLength());
+                    delivered++;
+                } else if (outboundListener != null) {
+                    outboundListener.onOutbound(reader.getTimestampNanos(), reader.getData(), 0, reader.getLength());
+                }
+            }
+        }
+        return delivered;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.mdp_14;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link Transport} over a connected Bluetooth RFCOMM socket
+ */
+public class RfcommTransport implements Transport {
+    private final BluetoothSocket socket;
+
+    public RfcommTransport(BluetoothSocket socket) {
+        this.socket = socket;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public String getRemoteName() {
+        try {
+            BluetoothDevice device = socket.getRemoteDevice();
+            if (device == null) {
+                return null;
+            }
+            String name = device.getName();
+            return (name == null || name.isEmpty()) ? device.getAddress() : name;
+        } catch (SecurityException e) {
+            // BLUETOOTH_CONNECT not granted
+            return "Connected Device";
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -19,6 +19,9 @@ public class Robot {
         SOUTH("S", 4),
         WEST("W", 6);
 
+        // values() clones the array on every call; pose decoding runs per message
+        private static final Direction[] VALUES = values();
+
         private final String code;
         private final int numeric;
 
@@ -35,7 +38,7 @@ public class Robot {
         }
 
         public static Direction fromCode(String code) {
-            for (Direction d : values()) {
+            for (Direction d : VALUES) {
                 if (d.code.equalsIgnoreCase(code)) {
                     return d;
                 }
@@ -44,7 +47,7 @@ public class Robot {
         }
 
         public static Direction fromNumeric(int numeric) {
-            for (Direction d : values()) {
+            for (Direction d : VALUES) {
                 if (d.numeric == numeric) {
                     return d;
                 }
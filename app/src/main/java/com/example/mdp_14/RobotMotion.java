@@ -0,0 +1,207 @@
+package com.example.mdp_14;
+
+/**
+ * Smooths the drawn robot between location updates, so telemetry at 5-10 Hz still
+ * looks like continuous motion at the display rate. Positions are in grid cells
+ * (fractional while moving), heading in degrees clockwise from north. Pure Java and
+ * allocation-free; the view samples it once per vsync.
+ *
+ * By default each received pose is eased to over the measured update interval, which
+ * delays the drawn robot by about one update. With dead reckoning on, the drawn
+ * robot instead snaps to each authoritative pose and keeps moving at the last
+ * observed velocity for a short while, so it tracks the real robot with no delay
+ * at the cost of small corrections when the robot turns or stops.
+ *
+ * Jumps of more than {@link #SNAP_DISTANCE} cells (a reset or a manual move) are
+ * never animated.
+ */
+public class RobotMotion {
+    public static final float SNAP_DISTANCE = 2f;
+
+    static final long INITIAL_INTERVAL_NANOS = 100_000_000L;
+    static final long MIN_INTERVAL_NANOS = 16_000_000L;
+    static final long MAX_INTERVAL_NANOS = 250_000_000L;
+    // Longer gaps mean the robot paused; they don't say anything about the rate
+    static final long MAX_GAP_NANOS = 1_000_000_000L;
+    static final long MAX_DEAD_RECKON_NANOS = 300_000_000L;
+
+    private boolean deadReckoning = false;
+    private float maxPosition = Float.MAX_VALUE;
+
+    // Last authoritative pose
+    private boolean hasPose = false;
+    private float poseX, poseY, poseHeading;
+    private long poseAtNanos;
+    private long intervalNanos = INITIAL_INTERVAL_NANOS;
+
+    // Current segment: eased from (fromX, fromY) to the pose, or extrapolated from it
+    private float fromX, fromY, fromHeading;
+    private long startNanos;
+    private float velocityX, velocityY;  // Cells per nanosecond, dead reckoning only
+
+    // Drawn pose, updated by sample()
+    private float x, y, heading;
+
+    /**
+     * Extrapolate from the last pose instead of easing towards it
+     */
+    public void setDeadReckoning(boolean enabled) {
+        deadReckoning = enabled;
+    }
+
+    public boolean isDeadReckoning() {
+        return deadReckoning;
+    }
+
+    /**
+     * Largest position dead reckoning may reach (grid size minus robot size)
+     */
+    public void setMaxPosition(float maxPosition) {
+        this.maxPosition = maxPosition;
+    }
+
+    /**
+     * Make this an exact copy of another motion, so it can be sampled elsewhere
+     * (e.g. on a render thread) without touching the original
+     */
+    public void copyFrom(RobotMotion other) {
+        deadReckoning = other.deadReckoning;
+        maxPosition = other.maxPosition;
+        hasPose = other.hasPose;
+        poseX = other.poseX;
+        poseY = other.poseY;
+        poseHeading = other.poseHeading;
+        poseAtNanos = other.poseAtNanos;
+        intervalNanos = other.intervalNanos;
+        fromX = other.fromX;
+        fromY = other.fromY;
+        fromHeading = other.fromHeading;
+        startNanos = other.startNanos;
+        velocityX = other.velocityX;
+        velocityY = other.velocityY;
+        x = other.x;
+        y = other.y;
+        heading = other.heading;
+    }
+
+    /**
+     * Jump straight to a pose, e.g. when the robot is placed or dragged by hand
+     */
+    public void snap(int gridX, int gridY, float headingDegrees) {
+        hasPose = false;
+        x = poseX = fromX = gridX;
+        y = poseY = fromY = gridY;
+        heading = poseHeading = fromHeading = normalize(headingDegrees);
+        velocityX = velocityY = 0;
+    }
+
+    /**
+     * A location update arrived at nowNanos (System.nanoTime() clock)
+     */
+    public void onPose(int gridX, int gridY, float headingDegrees, long nowNanos) {
+        headingDegrees = normalize(headingDegrees);
+        long gap = nowNanos - poseAtNanos;
+        boolean continuous = hasPose && gap > 0 && gap < MAX_GAP_NANOS
+                && Math.abs(gridX - x) <= SNAP_DISTANCE && Math.abs(gridY - y) <= SNAP_DISTANCE;
+
+        if (continuous) {
+            // Smoothed update interval, so a segment lasts about as long as the next gap
+            long estimate = intervalNanos + (gap - intervalNanos) / 4;
+            intervalNanos = Math.max(MIN_INTERVAL_NANOS, Math.min(MAX_INTERVAL_NANOS, estimate));
+        }
+
+        if (!continuous) {
+            snap(gridX, gridY, headingDegrees);
+        } else if (deadReckoning) {
+            velocityX = (gridX - poseX) / gap;
+            velocityY = (gridY - poseY) / gap;
+            x = fromX = gridX;
+            y = fromY = gridY;
+            heading = fromHeading = headingDegrees;
+        } else {
+            fromX = x;
+            fromY = y;
+            fromHeading = heading;
+        }
+
+        hasPose = true;
+        poseX = gridX;
+        poseY = gridY;
+        poseHeading = headingDegrees;
+        poseAtNanos = nowNanos;
+        startNanos = nowNanos;
+    }
+
+    /**
+     * Update the drawn pose for a frame at nowNanos. Returns true while it is still
+     * changing, i.e. another frame is needed.
+     */
+    public boolean sample(long nowNanos) {
+        if (!hasPose) {
+            return false;
+        }
+        long elapsed = nowNanos - startNanos;
+
+        if (deadReckoning) {
+            long limit = Math.min(MAX_DEAD_RECKON_NANOS, intervalNanos + intervalNanos / 2);
+            if (velocityX == 0 && velocityY == 0) {
+                return false;
+            }
+            long t = Math.max(0, Math.min(elapsed, limit));
+            x = clamp(poseX + velocityX * t);
+            y = clamp(poseY + velocityY * t);
+            return elapsed < limit;
+        }
+
+        if (fromX == poseX && fromY == poseY && fromHeading == poseHeading) {
+            x = poseX;
+            y = poseY;
+            heading = poseHeading;
+            return false;
+        }
+        float fraction = intervalNanos > 0 ? Math.min(1f, Math.max(0f, (float) elapsed / intervalNanos)) : 1f;
+        x = fromX + (poseX - fromX) * fraction;
+        y = fromY + (poseY - fromY) * fraction;
+        heading = normalize(fromHeading + shortestTurn(fromHeading, poseHeading) * fraction);
+        return fraction < 1f;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    /**
+     * Drawn heading in degrees clockwise from north, in [0, 360)
+     */
+    public float getHeading() {
+        return heading;
+    }
+
+    /**
+     * Current estimate of the time between location updates
+     */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    private float clamp(float position) {
+        return Math.max(0f, Math.min(maxPosition, position));
+    }
+
+    /**
+     * Signed turn from one heading to another, in (-180, 180]
+     */
+    static float shortestTurn(float from, float to) {
+        float turn = normalize(to - from);
+        return turn > 180f ? turn - 360f : turn;
+    }
+
+    static float normalize(float degrees) {
+        float result = degrees % 360f;
+        return result < 0 ? result + 360f : result;
+    }
+}
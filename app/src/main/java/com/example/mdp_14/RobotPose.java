@@ -0,0 +1,56 @@
+package com.example.mdp_14;
+
+/**
+ * Mutable robot pose holder, preallocated and reused so that decoding location
+ * telemetry allocates nothing. Access is synchronized because the reader thread
+ * writes a shared instance that the UI thread copies out.
+ */
+public class RobotPose {
+    private int x;
+    private int y;
+    private int d;
+    private long receivedAtNanos;
+
+    /**
+     * Set a newly received pose, stamped with the current time
+     */
+    public synchronized void set(int x, int y, int d) {
+        this.x = x;
+        this.y = y;
+        this.d = d;
+        this.receivedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Copy this pose into target, so the caller can read it without holding the lock
+     */
+    public synchronized void copyTo(RobotPose target) {
+        target.copyFrom(x, y, d, receivedAtNanos);
+    }
+
+    public synchronized int getX() {
+        return x;
+    }
+
+    public synchronized int getY() {
+        return y;
+    }
+
+    public synchronized int getD() {
+        return d;
+    }
+
+    /**
+     * When the pose was received, on the System.nanoTime() clock
+     */
+    public synchronized long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    private synchronized void copyFrom(int x, int y, int d, long receivedAtNanos) {
+        this.x = x;
+        this.y = y;
+        this.d = d;
+        this.receivedAtNanos = receivedAtNanos;
+    }
+}
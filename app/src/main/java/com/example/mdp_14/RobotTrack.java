@@ -0,0 +1,147 @@
+package com.example.mdp_14;
+
+import java.util.Arrays;
+
+/**
+ * History of where the robot has been during a run: a visit count per grid cell
+ * and a bounded trail of its most recent positions. Recording a pose is O(1) and
+ * allocation-free, so it can run on every location update of a full run; the
+ * trail keeps the newest {@code capacity} positions and overwrites the oldest.
+ *
+ * Each move of the robot counts a visit on every cell its footprint then covers.
+ * Repeated poses are ignored, so a robot sitting still or only turning doesn't
+ * inflate the counts.
+ */
+public class RobotTrack {
+    private final int gridSize;
+    private final int[] visits;
+    private int maxVisits = 0;
+
+    // Ring buffer of trail positions (robot bottom-left cell)
+    private final int[] trailX;
+    private final int[] trailY;
+    private int trailStart = 0;
+    private int trailLength = 0;
+
+    // Poses recorded since the last clear, and clears so far, so a copy of the track
+    // (e.g. a renderer's heatmap) can tell which trail positions it hasn't seen yet
+    private long recordCount = 0;
+    private int generation = 0;
+
+    public RobotTrack(int gridSize, int capacity) {
+        this.gridSize = gridSize;
+        this.visits = new int[gridSize * gridSize];
+        this.trailX = new int[capacity];
+        this.trailY = new int[capacity];
+    }
+
+    /**
+     * Record a robot pose (bottom-left cell of its footprint). Returns false if the
+     * robot hasn't moved since the last pose, in which case nothing changes.
+     */
+    public boolean record(int x, int y) {
+        if (trailLength > 0) {
+            int last = (trailStart + trailLength - 1) % trailX.length;
+            if (trailX[last] == x && trailY[last] == y) {
+                return false;
+            }
+        }
+
+        int right = Math.min(gridSize, x + Robot.SIZE);
+        int top = Math.min(gridSize, y + Robot.SIZE);
+        for (int cellY = Math.max(0, y); cellY < top; cellY++) {
+            for (int cellX = Math.max(0, x); cellX < right; cellX++) {
+                int count = ++visits[cellY * gridSize + cellX];
+                if (count > maxVisits) {
+                    maxVisits = count;
+                }
+            }
+        }
+
+        if (trailLength < trailX.length) {
+            int index = (trailStart + trailLength) % trailX.length;
+            trailX[index] = x;
+            trailY[index] = y;
+            trailLength++;
+        } else {
+            trailX[trailStart] = x;
+            trailY[trailStart] = y;
+            trailStart = (trailStart + 1) % trailX.length;
+        }
+        recordCount++;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(visits, 0);
+        maxVisits = 0;
+        trailStart = 0;
+        trailLength = 0;
+        recordCount = 0;
+        generation++;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public int getVisits(int x, int y) {
+        if (x < 0 || x >= gridSize || y < 0 || y >= gridSize) {
+            return 0;
+        }
+        return visits[y * gridSize + x];
+    }
+
+    public int getMaxVisits() {
+        return maxVisits;
+    }
+
+    public int getTrailLength() {
+        return trailLength;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Incremented by every {@link #clear()}
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Copy the trail, oldest first, into xs and ys (at least getTrailLength() long).
+     * Returns the number of positions copied.
+     */
+    public int copyTrail(int[] xs, int[] ys) {
+        int firstPart = Math.min(trailLength, trailX.length - trailStart);
+        System.arraycopy(trailX, trailStart, xs, 0, firstPart);
+        System.arraycopy(trailY, trailStart, ys, 0, firstPart);
+        System.arraycopy(trailX, 0, xs, firstPart, trailLength - firstPart);
+        System.arraycopy(trailY, 0, ys, firstPart, trailLength - firstPart);
+        return trailLength;
+    }
+
+    /**
+     * Copy the visit counts, row by row from y = 0, into out (gridSize * gridSize long)
+     */
+    public void copyVisits(int[] out) {
+        System.arraycopy(visits, 0, out, 0, visits.length);
+    }
+
+    /**
+     * X of the i-th trail position, oldest first
+     */
+    public int getTrailX(int i) {
+        return trailX[(trailStart + i) % trailX.length];
+    }
+
+    /**
+     * Y of the i-th trail position, oldest first
+     */
+    public int getTrailY(int i) {
+        return trailY[(trailStart + i) % trailY.length];
+    }
+}
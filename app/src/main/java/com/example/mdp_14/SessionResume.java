@@ -0,0 +1,297 @@
+package com.example.mdp_14;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sequence numbering and replay buffer that let a dropped link resume without
+ * losing messages or resending the whole arena.
+ *
+ * Once the robot advertises the "resume" feature, every outbound JSON object gets a
+ * "seq" field (binary frames are wrapped in a {@link BinaryCodec#CAT_SEQUENCED}
+ * envelope) and is kept until the robot acknowledges it with a cumulative
+ * {"cat": "ack", "value": {"seq": n}}. After reconnecting, the robot reports the
+ * last sequence it received and everything after it is replayed.
+ *
+ * Numbers are assigned by {@link #sequence} as the writer thread takes a message off
+ * the outbound queue, not when it is queued: the priority lanes reorder messages, and
+ * cumulative acks only work if sequence numbers go out in order. Messages queued but
+ * not yet written wait in a pending list so they also survive a dropped link.
+ *
+ * Within a connection, messages not acknowledged in time are retransmitted with
+ * backoff (see {@link #collectRetries}), giving at-least-once delivery; the robot
+ * discards duplicates by seq. Timeouts and ack round-trip times run from when a
+ * message was actually written, not from when it was queued behind paced traffic.
+ *
+ * Plain-text commands such as "move:up" are not sequenced: replaying stale motion
+ * commands after an outage would be worse than dropping them.
+ */
+public class SessionResume {
+    public static final int MAX_ENTRIES = 256;
+    public static final int MAX_BYTES = 64 * 1024;
+
+    /**
+     * A message to deliver reliably. It has no sequence number (seq 0) until
+     * {@link #sequence} encodes it for the wire.
+     */
+    public static final class Entry {
+        private final String text;   // JSON object to stamp, or null for a binary frame
+        private final byte[] frame;  // Binary frame to wrap, or null for text
+        private final String frameLabel;
+        public final int priority;
+
+        // Written under the owning SessionResume's lock
+        volatile long seq = 0;
+        volatile byte[] data;
+        volatile String label;
+        volatile long sentAtNanos = 0; // When last written; 0 while waiting to be (re)written
+        volatile int attempts = 0;     // Times written
+
+        Entry(String text, byte[] frame, String frameLabel, int priority) {
+            this.text = text;
+            this.frame = frame;
+            this.frameLabel = frameLabel;
+            this.priority = priority;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        /** Text shown in the message log; includes the seq once assigned */
+        public String getLabel() {
+            String current = label;
+            return current != null ? current : text != null ? text : frameLabel;
+        }
+    }
+
+    private final String sessionId;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>(); // Queued, not yet sequenced
+    private final ArrayDeque<Entry> unacked = new ArrayDeque<>(); // Sequenced, in seq order
+    private boolean enabled = false;
+    private long nextSeq = 1;
+    private long lastAcked = 0;
+    private long evictedUpTo = 0; // Highest seq dropped from the buffer without an ack
+    private int bufferedBytes = 0;
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    public SessionResume() {
+        sessionId = Long.toHexString(new Random().nextLong() & 0xFFFFFFFFFFFFL);
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            pending.clear();
+            unacked.clear();
+            bufferedBytes = 0;
+        }
+    }
+
+    /**
+     * Highest sequence number assigned so far
+     */
+    public synchronized long getLastSequence() {
+        return nextSeq - 1;
+    }
+
+    public synchronized long getLastAcked() {
+        return lastAcked;
+    }
+
+    public synchronized int getUnackedCount() {
+        return unacked.size();
+    }
+
+    /**
+     * Number of messages queued but not yet given a sequence number
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Whether the robot has confirmed receiving entry; false until it has been sequenced
+     */
+    public synchronized boolean isAcknowledged(Entry entry) {
+        return entry.seq != 0 && entry.seq <= lastAcked;
+    }
+
+    /**
+     * Time from writing a message to its ack. Retransmitted messages are not
+     * sampled, since their ack can't be matched to one particular send.
+     */
+    public LatencyHistogram getAckLatency() {
+        return ackLatency;
+    }
+
+    /**
+     * Queue a JSON object message for sequencing. Returns null for messages that are
+     * not sequenced (plain text).
+     */
+    public synchronized Entry queueText(String message, int priority) {
+        if (!message.startsWith("{")) {
+            return null;
+        }
+        Entry entry = new Entry(message, null, null, priority);
+        pending.addLast(entry);
+        return entry;
+    }
+
+    /**
+     * Queue a binary frame to be wrapped in a sequenced envelope
+     */
+    public synchronized Entry queueFrame(byte[] frame, String label, int priority) {
+        Entry entry = new Entry(null, frame, label, priority);
+        pending.addLast(entry);
+        return entry;
+    }
+
+    /**
+     * Encode entry for writing, giving it the next sequence number if it has none.
+     * Called by the writer in the order messages go on the wire. Returns null if the
+     * entry no longer needs sending: acknowledged already, or dropped with the buffer
+     * after being sequenced. While resume is off the message is sent without a seq.
+     */
+    public synchronized byte[] sequence(Entry entry) {
+        if (entry.seq != 0) {
+            return entry.seq > lastAcked && unacked.contains(entry) ? entry.data : null;
+        }
+        pending.removeFirstOccurrence(entry);
+        if (!enabled) {
+            return entry.text != null ? textBytes(entry.text) : entry.frame;
+        }
+
+        long seq = nextSeq++;
+        if (entry.text != null) {
+            String rest = entry.text.substring(1).trim();
+            String stamped = "{\"seq\": " + seq + (rest.startsWith("}") ? "" : ", ") + rest;
+            entry.data = textBytes(stamped);
+            entry.label = stamped;
+        } else {
+            entry.data = BinaryCodec.wrapSequenced(entry.frame, seq);
+            entry.label = "#" + seq + " " + entry.frameLabel;
+        }
+        entry.seq = seq;
+        buffer(entry);
+        return entry.data;
+    }
+
+    /**
+     * The writer has flushed entry to the link; retry timeouts and ack latency run from now
+     */
+    public synchronized void markWritten(Entry entry, long nowNanos) {
+        entry.sentAtNanos = nowNanos;
+        entry.attempts++;
+    }
+
+    /**
+     * Cumulative acknowledgement: the robot has everything up to and including seq.
+     * Returns whether this acknowledged any message not acknowledged before.
+     */
+    public synchronized boolean acknowledge(long seq) {
+        if (seq > lastAcked) {
+            lastAcked = seq;
+        }
+        long now = System.nanoTime();
+        boolean any = false;
+        while (!unacked.isEmpty() && unacked.peekFirst().seq <= seq) {
+            Entry acked = unacked.removeFirst();
+            bufferedBytes -= acked.data.length;
+            if (acked.attempts == 1 && acked.sentAtNanos != 0) {
+                ackLatency.record(now - acked.sentAtNanos);
+            }
+            any = true;
+        }
+        return any;
+    }
+
+    /**
+     * Written messages whose ack is overdue, to be sent again. The timeout doubles with
+     * each attempt up to maxTimeoutNanos. Returned entries count as unwritten until the
+     * writer flushes them again, so a resend stuck in the queue is not resent again.
+     */
+    public synchronized List<Entry> collectRetries(long nowNanos, long timeoutNanos, long maxTimeoutNanos) {
+        List<Entry> due = null;
+        for (Entry entry : unacked) {
+            if (entry.sentAtNanos == 0) {
+                continue;
+            }
+            long timeout = Math.min(maxTimeoutNanos, timeoutNanos << Math.min(entry.attempts - 1, 16));
+            if (nowNanos - entry.sentAtNanos >= timeout) {
+                if (due == null) {
+                    due = new ArrayList<>();
+                }
+                entry.sentAtNanos = 0;
+                due.add(entry);
+            }
+        }
+        return due != null ? due : Collections.emptyList();
+    }
+
+    /**
+     * Messages to send after the robot reports the last sequence it received: the
+     * unacknowledged ones in seq order, then those never sequenced. Returns null if
+     * some were already evicted and the session can't be resumed.
+     */
+    public synchronized List<Entry> replayAfter(long received) {
+        if (received < evictedUpTo) {
+            return null;
+        }
+        acknowledge(received);
+        List<Entry> replay = new ArrayList<>(unacked.size() + pending.size());
+        for (Entry entry : unacked) {
+            entry.sentAtNanos = 0;
+            replay.add(entry);
+        }
+        replay.addAll(pending);
+        return replay;
+    }
+
+    /**
+     * Messages queued but not yet sequenced, in queue order
+     */
+    public synchronized List<Entry> getPending() {
+        return new ArrayList<>(pending);
+    }
+
+    /**
+     * Forget all sequenced messages, e.g. when the robot no longer knows our session.
+     * Messages not sequenced yet are kept; they will be numbered after the new base.
+     */
+    public synchronized void clear() {
+        unacked.clear();
+        bufferedBytes = 0;
+        evictedUpTo = nextSeq - 1;
+    }
+
+    private void buffer(Entry entry) {
+        unacked.addLast(entry);
+        bufferedBytes += entry.data.length;
+        while (unacked.size() > MAX_ENTRIES || bufferedBytes > MAX_BYTES) {
+            Entry evicted = unacked.removeFirst();
+            bufferedBytes -= evicted.data.length;
+            evictedUpTo = evicted.seq;
+        }
+    }
+
+    private static byte[] textBytes(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, data, 0, bytes.length);
+        data[bytes.length] = '\n';
+        return data;
+    }
+}
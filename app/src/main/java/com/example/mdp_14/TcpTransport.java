@@ -0,0 +1,54 @@
+package com.example.mdp_14;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * {@link Transport} over a TCP socket, e.g. to a robot simulator on a desktop
+ */
+public class TcpTransport implements Transport {
+    private final Socket socket;
+
+    public TcpTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        // Telemetry frames are tiny; don't let Nagle hold them back
+        socket.setTcpNoDelay(true);
+    }
+
+    /**
+     * Open a connection to host:port (blocking)
+     */
+    public static TcpTransport connect(String host, int port, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            return new TcpTransport(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public String getRemoteName() {
+        return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
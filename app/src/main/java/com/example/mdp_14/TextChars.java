@@ -0,0 +1,47 @@
+package com.example.mdp_14;
+
+/**
+ * Formats numbers into reusable char buffers, for text that is redrawn every frame
+ * and must not allocate a String each time.
+ */
+public final class TextChars {
+    private TextChars() {}
+
+    /**
+     * Write a non-negative int as decimal digits at pos; returns the end position
+     */
+    public static int appendInt(char[] buffer, int pos, int value) {
+        int start = pos;
+        do {
+            buffer[pos++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // Digits were written least significant first
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            char tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+        return pos;
+    }
+
+    /**
+     * Write a string's chars at pos; returns the end position
+     */
+    public static int append(char[] buffer, int pos, String text) {
+        text.getChars(0, text.length(), buffer, pos);
+        return pos + text.length();
+    }
+
+    /**
+     * Write a non-negative value rounded to one decimal place at pos; returns the
+     * end position
+     */
+    public static int appendTenths(char[] buffer, int pos, float value) {
+        int tenths = Math.round(value * 10);
+        pos = appendInt(buffer, pos, tenths / 10);
+        buffer[pos++] = '.';
+        buffer[pos++] = (char) ('0' + tenths % 10);
+        return pos;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.mdp_14;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every inbound and outbound frame of a session to a compact append-only
+ * file, for replay with {@link ReplayDriver}.
+ *
+ * File layout (integers big-endian, varints unsigned LEB128):
+ *   header : "MDPR" magic, u8 version, u64 wall-clock start time in ms
+ *   record : u8 direction (0 = inbound, 1 = outbound),
+ *            varint microseconds since the previous record (monotonic clock),
+ *            varint length, frame bytes
+ *
+ * Link threads only copy the frame into a bounded queue; a background thread encodes
+ * records and writes them through a buffered FileChannel. If the writer falls
+ * behind, frames are dropped and counted rather than stalling the link.
+ *
+ * The reader and writer threads timestamp frames before queueing them, so records
+ * can reach the writer slightly out of order; such a record gets a zero delta and
+ * the timeline keeps running from the newest timestamp seen.
+ */
+public class TrafficRecorder implements LinkSession.Tap {
+    public static final byte[] MAGIC = {'M', 'D', 'P', 'R'};
+    public static final int VERSION = 1;
+    public static final int DIRECTION_INBOUND = 0;
+    public static final int DIRECTION_OUTBOUND = 1;
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_INTERVAL_MS = 500;
+
+    private static final class Record {
+        final int direction;
+        final long timestampNanos;
+        final byte[] data;
+
+        Record(int direction, long timestampNanos, byte[] data) {
+            this.direction = direction;
+            this.timestampNanos = timestampNanos;
+            this.data = data;
+        }
+    }
+
+    private static final Record END_OF_RECORDING = new Record(-1, 0, new byte[0]);
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ArrayBlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+    private final AtomicLong droppedFrames = new AtomicLong(); // Counted by both link threads
+    private volatile long recordedFrames = 0;
+    private long lastTimestampNanos;
+
+    public TrafficRecorder(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.lastTimestampNanos = System.nanoTime();
+
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putLong(System.currentTimeMillis());
+
+        writerThread = new Thread(this::runWriter, "TrafficRecorder");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void onInbound(byte[] buffer, int offset, int length) {
+        enqueue(DIRECTION_INBOUND, buffer, offset, length);
+    }
+
+    @Override
+    public void onOutbound(byte[] buffer, int offset, int length) {
+        enqueue(DIRECTION_OUTBOUND, buffer, offset, length);
+    }
+
+    public long getRecordedFrames() {
+        return recordedFrames;
+    }
+
+    /**
+     * Frames lost because the writer could not keep up
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Stop recording. Returns at once; the writer thread writes out everything
+     * queued and closes the file (see {@link #awaitClosed}).
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Wake the writer with a marker rather than an interrupt, which would close
+        // the FileChannel under it. If the queue is full the writer stops once it has
+        // drained it anyway.
+        queue.offer(END_OF_RECORDING);
+    }
+
+    /**
+     * Wait up to timeoutMs for the file to be complete after {@link #close()}.
+     * Returns true if it is.
+     */
+    public boolean awaitClosed(long timeoutMs) throws InterruptedException {
+        writerThread.join(timeoutMs);
+        return !writerThread.isAlive();
+    }
+
+    private void enqueue(int direction, byte[] data, int offset, int length) {
+        if (closed) {
+            return;
+        }
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        if (!queue.offer(new Record(direction, System.nanoTime(), copy))) {
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                Record record = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (record == END_OF_RECORDING) {
+                    break;
+                }
+                if (record == null) {
+                    flush();
+                    if (closed) {
+                        break;
+                    }
+                    continue;
+                }
+                write(record);
+            }
+            flush();
+        } catch (IOException | InterruptedException e) {
+            closed = true;
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing more can be saved
+            }
+        }
+    }
+
+    private void write(Record record) throws IOException {
+        int maxSize = 1 + 10 + 5 + record.data.length;
+        if (buffer.remaining() < maxSize) {
+            flush();
+        }
+        if (buffer.remaining() < maxSize) {
+            // Larger than the buffer: write it on its own
+            ByteBuffer single = ByteBuffer.allocate(maxSize);
+            encode(record, single);
+            single.flip();
+            while (single.hasRemaining()) {
+                channel.write(single);
+            }
+            return;
+        }
+        encode(record, buffer);
+    }
+
+    private void encode(Record record, ByteBuffer out) {
+        long deltaMicros = Math.max(0, (record.timestampNanos - lastTimestampNanos) / 1000);
+        lastTimestampNanos = Math.max(lastTimestampNanos, record.timestampNanos);
+        out.put((byte) record.direction);
+        putVarint(out, deltaMicros);
+        putVarint(out, record.data.length);
+        out.put(record.data);
+        recordedFrames++;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.mdp_14;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A bidirectional byte stream to the robot (or a stand-in for it).
+ * The message pipeline in {@link LinkSession} only depends on this interface, so
+ * it runs unchanged over RFCOMM, TCP or an in-memory loopback.
+ */
+public interface Transport {
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Human-readable name of the remote end, shown as the connected device
+     */
+    String getRemoteName();
+
+    void close() throws IOException;
+}
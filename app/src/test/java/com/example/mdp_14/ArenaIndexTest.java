@@ -0,0 +1,116 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link ArenaIndex}.
+ */
+public class ArenaIndexTest {
+
+    @Test
+    public void findsObstaclesByCellAndId() {
+        ArenaIndex index = new ArenaIndex(20);
+        Obstacle obstacle = new Obstacle(3, 4, 2, 3);
+        index.add(obstacle);
+
+        assertSame(obstacle, index.obstacleAt(3, 4));
+        assertSame(obstacle, index.obstacleAt(4, 6));
+        assertNull(index.obstacleAt(5, 4));
+        assertNull(index.obstacleAt(3, 7));
+        assertNull(index.obstacleAt(-1, 25));
+        assertSame(obstacle, index.findById(obstacle.getId()));
+    }
+
+    @Test
+    public void followsMovesAndResizes() {
+        ArenaIndex index = new ArenaIndex(20);
+        Obstacle obstacle = new Obstacle(3, 4);
+        index.add(obstacle);
+
+        obstacle.setGridX(10);
+        obstacle.setWidth(2);
+        index.update(obstacle);
+
+        assertNull(index.obstacleAt(3, 4));
+        assertSame(obstacle, index.obstacleAt(10, 4));
+        assertSame(obstacle, index.obstacleAt(11, 4));
+    }
+
+    @Test
+    public void removingAnObstacleFreesItsCells() {
+        ArenaIndex index = new ArenaIndex(20);
+        Obstacle obstacle = new Obstacle(3, 4);
+        index.add(obstacle);
+
+        index.remove(obstacle);
+
+        assertNull(index.obstacleAt(3, 4));
+        assertNull(index.findById(obstacle.getId()));
+    }
+
+    @Test
+    public void overlappingCellsBelongToTheFirstObstacleAdded() {
+        ArenaIndex index = new ArenaIndex(20);
+        Obstacle first = new Obstacle(0, 0, 3, 3);
+        Obstacle second = new Obstacle(2, 2, 3, 3);
+        index.add(first);
+        index.add(second);
+
+        assertSame(first, index.obstacleAt(2, 2));
+        assertSame(second, index.obstacleAt(3, 3));
+
+        // Moving the first one away hands the shared cell over, moving it back takes it again
+        first.setGridX(10);
+        index.update(first);
+        assertSame(second, index.obstacleAt(2, 2));
+        first.setGridX(0);
+        index.update(first);
+        assertSame(first, index.obstacleAt(2, 2));
+
+        index.remove(first);
+        assertSame(second, index.obstacleAt(2, 2));
+    }
+
+    @Test
+    public void clipsObstaclesToTheGrid() {
+        ArenaIndex index = new ArenaIndex(20);
+        Obstacle obstacle = new Obstacle(18, 18, 5, 5);
+        index.add(obstacle);
+
+        assertSame(obstacle, index.obstacleAt(19, 19));
+        index.remove(obstacle);
+        assertNull(index.obstacleAt(19, 19));
+    }
+
+    @Test
+    public void keepsManyObstaclesInOrderAcrossRemovalsAndReAdds() {
+        ArenaIndex index = new ArenaIndex(200);
+        Obstacle[] obstacles = new Obstacle[150];
+        for (int i = 0; i < obstacles.length; i++) {
+            obstacles[i] = new Obstacle(i, i);
+            index.add(obstacles[i]);
+        }
+        for (int i = 0; i < obstacles.length; i += 3) {
+            index.remove(obstacles[i]);
+        }
+
+        assertEquals(100, index.size());
+        for (int i = 0; i < obstacles.length; i++) {
+            Obstacle expected = i % 3 == 0 ? null : obstacles[i];
+            assertSame(expected, index.findById(obstacles[i].getId()));
+            assertSame(expected, index.obstacleAt(i, i));
+        }
+
+        // Adding an indexed obstacle again makes it the newest, so it loses shared cells
+        Obstacle first = obstacles[1];
+        Obstacle overlapping = new Obstacle(1, 1);
+        index.add(overlapping);
+        index.add(first);
+        assertSame(overlapping, index.obstacleAt(1, 1));
+        assertSame(first, index.findById(first.getId()));
+    }
+}
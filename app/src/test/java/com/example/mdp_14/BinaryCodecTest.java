@@ -0,0 +1,135 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for {@link BinaryCodec}.
+ */
+public class BinaryCodecTest {
+    private final List<String> decoded = new ArrayList<>();
+
+    private final BinaryCodec.Listener recorder = new BinaryCodec.Listener() {
+        @Override
+        public void onLocation(int x, int y, int d) {
+            decoded.add("location " + x + "," + y + "," + d);
+        }
+
+        @Override
+        public void onImageRec(String imageId, int obstacleId) {
+            decoded.add("image-rec " + imageId + "@" + obstacleId);
+        }
+
+        @Override
+        public void onStatus(String status) {
+            decoded.add("status " + status);
+        }
+
+        @Override
+        public void onObstacles(long version, int count, int[] ids, int[] xs, int[] ys, int[] ds) {
+            decoded.add("obstacles v" + version + " n=" + count + " #" + ids[0] + "(" + xs[0] + "," + ys[0] + ")d" + ds[0]);
+        }
+
+        @Override
+        public void onControl(String value) {
+            decoded.add("control " + value);
+        }
+    };
+
+    private void roundTrip(byte[] frame) {
+        assertTrue(BinaryCodec.decode(frame, 0, frame.length, recorder));
+    }
+
+    @Test
+    public void locationFitsInSevenBytes() {
+        byte[] frame = BinaryCodec.encodeLocation(12, 7, 6);
+        assertEquals(7, frame.length);
+        roundTrip(frame);
+        assertEquals("location 12,7,6", decoded.get(0));
+    }
+
+    @Test
+    public void roundTripsAllCategories() {
+        roundTrip(BinaryCodec.encodeImageRec("UP", 3));
+        roundTrip(BinaryCodec.encodeStatus("finished"));
+        roundTrip(BinaryCodec.encodeControl("stop"));
+
+        List<Obstacle> obstacles = new ArrayList<>();
+        Obstacle obstacle = new Obstacle(4, 9);
+        obstacle.setTargetFace(Obstacle.Direction.WEST);
+        obstacles.add(obstacle);
+        roundTrip(BinaryCodec.encodeObstacles(obstacles, 42));
+
+        assertEquals("image-rec UP@3", decoded.get(0));
+        assertEquals("status finished", decoded.get(1));
+        assertEquals("control stop", decoded.get(2));
+        assertEquals("obstacles v42 n=1 #" + obstacle.getId() + "(4,9)d6", decoded.get(3));
+    }
+
+    @Test
+    public void rejectsTruncatedFrames() {
+        byte[] frame = BinaryCodec.encodeStatus("running");
+        assertFalse(BinaryCodec.decode(frame, 0, frame.length - 1, recorder));
+        assertNull(BinaryCodec.encodeControl("pause"));
+    }
+
+    @Test
+    public void refusesMessagesThatDontFit() {
+        assertNull(BinaryCodec.encodeLocation(256, 0, 0));
+        assertNull(BinaryCodec.encodeLocation(-1, 0, 0));
+        assertNull(BinaryCodec.encodeImageRec("UP", 300));
+
+        StringBuilder longStatus = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            longStatus.append('x');
+        }
+        assertNull(BinaryCodec.encodeStatus(longStatus.toString()));
+        assertEquals(5 + 255, BinaryCodec.encodeStatus(longStatus.substring(1)).length);
+
+        List<Obstacle> obstacles = new ArrayList<>();
+        obstacles.add(new Obstacle(199, 3));
+        assertTrue(BinaryCodec.encodeObstacles(obstacles, 1) != null);
+        obstacles.add(new Obstacle(256, 3));
+        assertNull(BinaryCodec.encodeObstacles(obstacles, 1));
+
+        List<Obstacle> many = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            many.add(new Obstacle(i % 20, i / 20));
+        }
+        assertNull(BinaryCodec.encodeObstacles(many, 1));
+    }
+
+    @Test
+    public void frameDecoderSplitsBinaryFromJson() {
+        byte[] location = BinaryCodec.encodeLocation(1, 2, 0);
+        byte[] json = "{\"cat\": \"status\"}".getBytes();
+        byte[] stream = new byte[location.length + json.length + location.length];
+        System.arraycopy(location, 0, stream, 0, location.length);
+        System.arraycopy(json, 0, stream, location.length, json.length);
+        System.arraycopy(location, 0, stream, location.length + json.length, location.length);
+
+        List<String> kinds = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder((buffer, offset, length) -> {
+            if (BinaryCodec.isBinaryFrame(buffer, offset, length)) {
+                kinds.add("bin");
+                BinaryCodec.decode(buffer, offset, length, recorder);
+            } else {
+                kinds.add("json");
+            }
+        });
+
+        // Byte-at-a-time delivery exercises every split point
+        for (int i = 0; i < stream.length; i++) {
+            decoder.feed(stream, i, 1);
+        }
+        assertEquals("[bin, json, bin]", kinds.toString());
+        assertEquals("location 1,2,0", decoded.get(1));
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for {@link FrameDecoder}.
+ */
+public class FrameDecoderTest {
+    private final List<String> frames = new ArrayList<>();
+    private final FrameDecoder decoder = new FrameDecoder((buffer, offset, length) ->
+            frames.add(new String(buffer, offset, length, StandardCharsets.UTF_8)));
+
+    private void feed(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        decoder.feed(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void splitsCoalescedJsonObjects() {
+        feed("{\"cat\": \"location\"}{\"cat\": \"status\"}");
+        assertEquals(2, frames.size());
+        assertEquals("{\"cat\": \"location\"}", frames.get(0));
+        assertEquals("{\"cat\": \"status\"}", frames.get(1));
+    }
+
+    @Test
+    public void joinsMessageSplitAcrossReads() {
+        feed("{\"cat\": \"loc");
+        assertEquals(0, frames.size());
+        feed("ation\", \"value\": {\"x\": 1}}");
+        assertEquals(1, frames.size());
+        assertEquals("{\"cat\": \"location\", \"value\": {\"x\": 1}}", frames.get(0));
+    }
+
+    @Test
+    public void ignoresBracesInsideStrings() {
+        feed("{\"value\": \"a}b\\\"{\"}");
+        assertEquals(1, frames.size());
+        assertEquals("{\"value\": \"a}b\\\"{\"}", frames.get(0));
+    }
+
+    @Test
+    public void splitsPlainTextOnNewlines() {
+        feed("hello\r\nworld\n\n");
+        assertEquals(2, frames.size());
+        assertEquals("hello", frames.get(0));
+        assertEquals("world", frames.get(1));
+    }
+
+    @Test
+    public void handlesFramesLargerThanReadBuffer() {
+        StringBuilder sb = new StringBuilder("{\"data\": \"");
+        for (int i = 0; i < 5000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        sb.append("\"}");
+        String big = sb.toString();
+
+        // Deliver in 1024-byte chunks like the reader thread does
+        byte[] bytes = big.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += 1024) {
+            decoder.feed(bytes, i, Math.min(1024, bytes.length - i));
+        }
+        assertEquals(1, frames.size());
+        assertEquals(big, frames.get(0));
+    }
+
+    @Test
+    public void dropsOversizedFrames() {
+        FrameDecoder small = new FrameDecoder((buffer, offset, length) ->
+                frames.add(new String(buffer, offset, length, StandardCharsets.UTF_8)), 16);
+        byte[] bytes = "{\"too\": \"long for sixteen\"}{\"ok\": 1}".getBytes(StandardCharsets.UTF_8);
+        small.feed(bytes, 0, bytes.length);
+        assertEquals(1, frames.size());
+        assertEquals("{\"ok\": 1}", frames.get(0));
+        assertEquals(1, small.getDroppedFrames());
+    }
+
+    @Test
+    public void unterminatedStringEndsAtNewline() {
+        feed("{\"value\": \"oops}\n{\"cat\": \"status\"}\nhello\n");
+        assertEquals(3, frames.size());
+        assertEquals("{\"value\": \"oops}", frames.get(0));
+        assertEquals("{\"cat\": \"status\"}", frames.get(1));
+        assertEquals("hello", frames.get(2));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link FrameTimeWindow}.
+ */
+public class FrameTimeWindowTest {
+    private static final long MS = 1_000_000L;
+    private static final float EPSILON = 0.001f;
+
+    @Test
+    public void averagesAndRanksTheWindow() {
+        FrameTimeWindow window = new FrameTimeWindow(20);
+        for (int i = 1; i <= 20; i++) {
+            window.record(i * MS);
+        }
+
+        assertEquals(10.5f, window.getAverageMs(), EPSILON);
+        assertEquals(19f, window.getPercentileMs(95), EPSILON);
+        assertEquals(20f, window.getPercentileMs(100), EPSILON);
+    }
+
+    @Test
+    public void keepsOnlyTheNewestSamples() {
+        FrameTimeWindow window = new FrameTimeWindow(2);
+        window.record(100 * MS);
+        window.record(2 * MS);
+        window.record(4 * MS);
+
+        assertEquals(3f, window.getAverageMs(), EPSILON);
+        assertEquals(3, window.getTotalCount());
+
+        window.clear();
+        assertEquals(0f, window.getAverageMs(), EPSILON);
+        assertEquals(0, window.getTotalCount());
+    }
+}
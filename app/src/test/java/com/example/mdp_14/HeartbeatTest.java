@@ -0,0 +1,83 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local unit tests for {@link Heartbeat} and {@link LatencyHistogram}.
+ */
+public class HeartbeatTest {
+
+    @Test
+    public void histogramReportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+        histogram.record(5_000_000_000L); // 5 s, beyond the last bucket
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(51, histogram.getPercentileMs(50));
+        assertEquals(100, histogram.getPercentileMs(99));
+        assertEquals(5000, histogram.getMaxMs());
+        assertEquals(5000, histogram.getPercentileMs(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getPercentileMs(50));
+    }
+
+    @Test
+    public void measuresRoundTripOfEchoedPing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        AtomicLong lastPing = new AtomicLong();
+        CountDownLatch pinged = new CountDownLatch(1);
+        Heartbeat heartbeat = new Heartbeat(1000, 3000, histogram, new Heartbeat.Listener() {
+            @Override
+            public void onPingDue(long sentAtNanos) {
+                lastPing.set(sentAtNanos);
+                pinged.countDown();
+            }
+
+            @Override
+            public void onDeadLink(long silenceMs) {
+            }
+        });
+        heartbeat.start();
+
+        assertTrue(pinged.await(1, TimeUnit.SECONDS));
+        heartbeat.onPong(lastPing.get());
+        heartbeat.stop();
+
+        assertEquals(1, histogram.getCount());
+    }
+
+    @Test
+    public void detectsSilentLinkOnlyAfterFirstPong() throws InterruptedException {
+        CountDownLatch dead = new CountDownLatch(1);
+        Heartbeat heartbeat = new Heartbeat(10, 80, new LatencyHistogram(), new Heartbeat.Listener() {
+            @Override
+            public void onPingDue(long sentAtNanos) {
+            }
+
+            @Override
+            public void onDeadLink(long silenceMs) {
+                dead.countDown();
+            }
+        });
+        heartbeat.start();
+
+        // Never answered a ping: silence alone is not fatal
+        assertFalse(dead.await(200, TimeUnit.MILLISECONDS));
+
+        heartbeat.onPong(System.nanoTime());
+        assertTrue(dead.await(1, TimeUnit.SECONDS));
+        heartbeat.stop();
+    }
+}
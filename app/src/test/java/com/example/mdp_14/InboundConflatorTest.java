@@ -0,0 +1,63 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for {@link InboundConflator}.
+ */
+public class InboundConflatorTest {
+    private final InboundConflator<String> conflator = new InboundConflator<>(2);
+    private final List<String> delivered = new ArrayList<>();
+
+    @Test
+    public void keepsOnlyNewestTelemetry() {
+        conflator.offerLatest(0, "loc1");
+        conflator.offerLatest(0, "loc2");
+        conflator.offerLatest(0, "loc3");
+        conflator.offerLatest(1, "status");
+
+        conflator.drain(8, delivered::add);
+
+        assertEquals(2, delivered.size());
+        assertEquals("loc3", delivered.get(0));
+        assertEquals("status", delivered.get(1));
+        assertEquals(2, conflator.getConflatedCount());
+    }
+
+    @Test
+    public void neverDropsMustDeliverMessages() {
+        for (int i = 0; i < 20; i++) {
+            conflator.offerOrdered("img" + i);
+            conflator.offerLatest(0, "loc" + i);
+        }
+
+        // Capped per drain; the remainder carries over in order
+        assertTrue(conflator.drain(8, delivered::add));
+        assertEquals(9, delivered.size());
+        assertEquals("img0", delivered.get(0));
+        assertEquals("loc19", delivered.get(8));
+
+        assertTrue(conflator.drain(8, delivered::add));
+        assertFalse(conflator.drain(8, delivered::add));
+        assertEquals(21, delivered.size());
+        assertEquals("img19", delivered.get(20));
+    }
+
+    @Test
+    public void requestsOneDrainAtATime() {
+        assertTrue(conflator.offerLatest(0, "a"));
+        assertFalse(conflator.offerLatest(0, "b"));
+        assertFalse(conflator.offerOrdered("c"));
+
+        conflator.drain(8, delivered::add);
+
+        assertTrue(conflator.offerOrdered("d"));
+    }
+}
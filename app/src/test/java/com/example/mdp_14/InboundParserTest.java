@@ -0,0 +1,76 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link InboundParser}.
+ */
+public class InboundParserTest {
+
+    @Test
+    public void dispatchesOnCategoryField() {
+        // Mentions "status" in a value; must still be treated as a location
+        InboundEvent event = InboundParser.parseText(
+                "{\"cat\": \"location\", \"value\": {\"x\": 4, \"y\": 7, \"d\": 2, \"note\": \"status\"}}");
+
+        assertTrue(event instanceof InboundEvent.Location);
+        InboundEvent.Location location = (InboundEvent.Location) event;
+        assertEquals(4, location.x);
+        assertEquals(7, location.y);
+        assertEquals(2, location.d);
+    }
+
+    @Test
+    public void parsesImageRecAndStatus() {
+        InboundEvent.ImageRec imageRec = (InboundEvent.ImageRec) InboundParser.parseText(
+                "{\"cat\": \"image-rec\", \"value\": {\"image_id\": \"11\", \"obstacle_id\": 3}}");
+        assertEquals("11", imageRec.imageId);
+        assertEquals(3, imageRec.obstacleId);
+
+        InboundEvent.Status status = (InboundEvent.Status) InboundParser.parseText(
+                "{\"cat\": \"status\", \"value\": {\"robot_status\": \"finished\"}}");
+        assertEquals("finished", status.status);
+    }
+
+    @Test
+    public void parsesHelloWithResume() {
+        InboundEvent.Hello hello = (InboundEvent.Hello) InboundParser.parseText(
+                "{\"cat\": \"hello\", \"value\": {\"codec\": \"bin1\", \"features\": [\"resume\"],"
+                        + " \"resume\": {\"session\": \"ab12\", \"received\": 17}}}");
+
+        assertEquals("bin1", hello.codec);
+        assertTrue(hello.supportsResume);
+        assertEquals("ab12", hello.resumeSession);
+        assertEquals(17, hello.resumeReceived);
+
+        InboundEvent.Hello plain = (InboundEvent.Hello) InboundParser.parseText(
+                "{\"cat\": \"hello\", \"value\": {}}");
+        assertEquals("json", plain.codec);
+        assertFalse(plain.supportsResume);
+        assertNull(plain.resumeSession);
+    }
+
+    @Test
+    public void unknownOrMalformedBecomeOther() {
+        assertTrue(InboundParser.parseText("hello robot") instanceof InboundEvent.Other);
+        assertTrue(InboundParser.parseText("{\"cat\": \"location\", \"value\": {\"x\": 1}}")
+                instanceof InboundEvent.Other);
+        assertTrue(InboundParser.parseText("{\"cat\": \"location\"") instanceof InboundEvent.Other);
+    }
+
+    @Test
+    public void parsesBinaryFrames() {
+        byte[] frame = BinaryCodec.encodeLocation(5, 6, 4);
+        InboundEvent.Location location = (InboundEvent.Location) InboundParser.parseBinary(frame, 0, frame.length);
+        assertEquals(5, location.x);
+        assertNull(location.logText);
+
+        byte[] truncated = {BinaryCodec.MAGIC, 0, 9, 1, 1};
+        assertTrue(InboundParser.parseBinary(truncated, 0, truncated.length) instanceof InboundEvent.Other);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local unit tests running {@link LinkSession} over the non-Bluetooth transports.
+ */
+public class LinkSessionTest {
+
+    /**
+     * Collects frames as strings and counts down once the expected number arrived
+     */
+    private static class Collector implements LinkSession.Listener {
+        final List<String> frames = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch;
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        Collector(int expected) {
+            latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            frames.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+            latch.countDown();
+        }
+
+        @Override
+        public void onSent(String label) {
+        }
+
+        @Override
+        public void onSendFailed(String label, IOException e) {
+        }
+
+        @Override
+        public void onClosed(IOException cause) {
+            closed.countDown();
+        }
+    }
+
+    private void exchange(Transport appSide, Transport robotSide) throws Exception {
+        Collector robot = new Collector(3);
+        Collector app = new Collector(1);
+        LinkSession robotSession = new LinkSession(robotSide, robot);
+        LinkSession appSession = new LinkSession(appSide, app);
+        robotSession.start();
+        appSession.start();
+
+        appSession.send("{\"cat\": \"control\", \"value\": \"start\"}");
+        appSession.send("move:up");
+        appSession.send("move:left");
+        robotSession.send("{\"cat\": \"location\", \"value\": {\"x\": 1, \"y\": 2, \"d\": 0}}");
+
+        assertTrue(robot.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(app.latch.await(5, TimeUnit.SECONDS));
+        assertEquals("move:up", robot.frames.get(1));
+        assertEquals("move:left", robot.frames.get(2));
+        assertEquals("{\"cat\": \"location\", \"value\": {\"x\": 1, \"y\": 2, \"d\": 0}}", app.frames.get(0));
+
+        // Closing one end is seen as a disconnect by the other
+        robotSession.close();
+        assertTrue(app.closed.await(5, TimeUnit.SECONDS));
+        appSession.close();
+    }
+
+    @Test
+    public void exchangesMessagesOverLoopback() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        exchange(pair[0], pair[1]);
+    }
+
+    @Test
+    public void exchangesMessagesOverTcp() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            TcpTransport appSide = TcpTransport.connect("127.0.0.1", server.getLocalPort(), 5000);
+            Socket accepted = server.accept();
+            exchange(appSide, new TcpTransport(accepted));
+        }
+    }
+
+    @Test
+    public void sequenceNumbersFollowWireOrder() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        Collector robot = new Collector(8);
+        LinkSession robotSession = new LinkSession(pair[1], robot);
+        LinkSession appSession = new LinkSession(pair[0], new Collector(0));
+        appSession.useDefaultRateLimits();
+        SessionResume resume = new SessionResume();
+        resume.setEnabled(true);
+
+        // More arena messages than the lane's burst, then a stop that overtakes them
+        for (int i = 0; i < 7; i++) {
+            appSession.sendSequenced(resume, resume.queueText("{\"cat\": \"obstacles\"}",
+                    OutboundScheduler.PRIORITY_ARENA), OutboundScheduler.PRIORITY_ARENA);
+        }
+        appSession.sendSequenced(resume, resume.queueText("{\"cat\": \"control\", \"value\": \"stop\"}",
+                OutboundScheduler.PRIORITY_CONTROL), OutboundScheduler.PRIORITY_CONTROL);
+        robotSession.start();
+        appSession.start();
+
+        assertTrue(robot.latch.await(5, TimeUnit.SECONDS));
+        int stopIndex = -1;
+        for (int i = 0; i < robot.frames.size(); i++) {
+            byte[] frame = robot.frames.get(i).getBytes(StandardCharsets.UTF_8);
+            assertEquals(i + 1, JsonScanner.longField(frame, 0, frame.length, JsonScanner.key("seq")));
+            if (robot.frames.get(i).contains("stop")) {
+                stopIndex = i;
+            }
+        }
+        assertTrue("stop should overtake the paced arena messages", stopIndex >= 0 && stopIndex < 7);
+        appSession.close();
+        robotSession.close();
+    }
+}
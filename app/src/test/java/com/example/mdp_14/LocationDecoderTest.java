@@ -0,0 +1,115 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local unit tests for {@link LocationDecoder}, including an allocation regression
+ * test for the framing, decoding and conflation it sits between. The service and UI
+ * sides are covered on a device by LocationPipelineAllocationTest.
+ */
+public class LocationDecoderTest {
+
+    @Test
+    public void decodesJsonLocation() {
+        byte[] frame = bytes("{\"cat\": \"location\", \"value\": {\"x\": 12, \"y\": \"3\", \"d\": 6}}");
+        RobotPose pose = new RobotPose();
+
+        assertTrue(LocationDecoder.decode(frame, 0, frame.length, pose));
+        assertEquals(12, pose.getX());
+        assertEquals(3, pose.getY());
+        assertEquals(6, pose.getD());
+    }
+
+    @Test
+    public void decodesBinaryLocation() {
+        byte[] frame = BinaryCodec.encodeLocation(9, 10, 2);
+        RobotPose pose = new RobotPose();
+
+        assertTrue(LocationDecoder.decode(frame, 0, frame.length, pose));
+        assertEquals(9, pose.getX());
+        assertEquals(10, pose.getY());
+        assertEquals(2, pose.getD());
+    }
+
+    @Test
+    public void leavesOtherMessagesUntouched() {
+        RobotPose pose = new RobotPose();
+        pose.set(1, 2, 4);
+
+        byte[] status = bytes("{\"cat\": \"status\", \"value\": {\"robot_status\": \"location\"}}");
+        byte[] partial = bytes("{\"cat\": \"location\", \"value\": {\"x\": 5}}");
+        byte[] binaryStatus = BinaryCodec.encodeStatus("hi");
+
+        assertFalse(LocationDecoder.decode(status, 0, status.length, pose));
+        assertFalse(LocationDecoder.decode(partial, 0, partial.length, pose));
+        assertFalse(LocationDecoder.decode(binaryStatus, 0, binaryStatus.length, pose));
+        assertEquals(1, pose.getX());
+    }
+
+    @Test
+    public void steadyStateTelemetryAllocatesNothing() {
+        // Reader side: framing, decoding and conflation, wired up like the service's
+        // reader thread but without its metrics, heartbeat or handler
+        final RobotPose latest = new RobotPose();
+        final InboundConflator<InboundEvent> inbound = new InboundConflator<>(2);
+        FrameDecoder decoder = new FrameDecoder((buffer, offset, length) -> {
+            if (LocationDecoder.decode(buffer, offset, length, latest)) {
+                inbound.offerLatest(0, InboundEvent.PoseUpdated.INSTANCE);
+            }
+        });
+
+        // Stand-in for the UI side: copy the pose out once per drain
+        final RobotPose uiPose = new RobotPose();
+        InboundConflator.Sink<InboundEvent> sink = event -> latest.copyTo(uiPose);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 200; i++) {
+            byte[] json = bytes("{\"cat\": \"location\", \"value\": {\"x\": " + (i % 17) + ", \"y\": 4, \"d\": 2}}\n");
+            stream.write(json, 0, json.length);
+            byte[] binary = BinaryCodec.encodeLocation(i % 17, 5, 4);
+            stream.write(binary, 0, binary.length);
+        }
+        byte[] wire = stream.toByteArray();
+
+        // Warm up so buffers reach their steady-state size
+        runTelemetry(wire, decoder, inbound, sink);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int round = 0; round < 50; round++) {
+            runTelemetry(wire, decoder, inbound, sink);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // 20,000 messages; allow only a little slack for the measurement itself
+        assertTrue("steady-state telemetry allocated " + allocated + " bytes", allocated < 1024);
+        assertEquals(199 % 17, uiPose.getX());
+        assertEquals(4, uiPose.getD());
+    }
+
+    private static void runTelemetry(byte[] wire, FrameDecoder decoder,
+                                     InboundConflator<InboundEvent> inbound,
+                                     InboundConflator.Sink<InboundEvent> sink) {
+        // Arrives in read-sized chunks that split frames arbitrarily
+        for (int pos = 0; pos < wire.length; pos += 61) {
+            decoder.feed(wire, pos, Math.min(61, wire.length - pos));
+            inbound.drain(8, sink);
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for {@link ObstacleSyncTracker}.
+ */
+public class ObstacleSyncTrackerTest {
+    private final ObstacleSyncTracker tracker = new ObstacleSyncTracker();
+
+    @Test
+    public void firstSyncIsFullSnapshot() {
+        assertTrue(tracker.needsFullSnapshot());
+        tracker.markFullSnapshotSent(new ArrayList<>());
+        assertFalse(tracker.needsFullSnapshot());
+        assertEquals(1, tracker.getVersion());
+    }
+
+    @Test
+    public void reportsOnlyChangedObstacles() {
+        Obstacle a = new Obstacle(1, 1);
+        Obstacle b = new Obstacle(5, 5);
+        List<Obstacle> obstacles = new ArrayList<>();
+        obstacles.add(a);
+        obstacles.add(b);
+        tracker.markFullSnapshotSent(obstacles);
+
+        a.setGridX(2);
+        b.setTargetFace(Obstacle.Direction.EAST);
+        List<ObstacleSyncTracker.Op> ops = tracker.computeDelta(obstacles);
+
+        assertEquals(2, ops.size());
+        assertEquals(ObstacleSyncTracker.OP_MOVE, ops.get(0).type);
+        assertEquals(a.getId(), ops.get(0).id);
+        assertEquals(2, ops.get(0).x);
+        assertEquals(ObstacleSyncTracker.OP_FACE, ops.get(1).type);
+        assertEquals(2, ops.get(1).d);
+    }
+
+    @Test
+    public void reportsAddAndRemove() {
+        Obstacle a = new Obstacle(1, 1);
+        List<Obstacle> obstacles = new ArrayList<>();
+        obstacles.add(a);
+        tracker.markFullSnapshotSent(obstacles);
+
+        obstacles.remove(a);
+        Obstacle c = new Obstacle(3, 4);
+        obstacles.add(c);
+        List<ObstacleSyncTracker.Op> ops = tracker.computeDelta(obstacles);
+
+        assertEquals(2, ops.size());
+        assertEquals(ObstacleSyncTracker.OP_ADD, ops.get(0).type);
+        assertEquals(c.getId(), ops.get(0).id);
+        assertEquals(ObstacleSyncTracker.OP_REMOVE, ops.get(1).type);
+        assertEquals(a.getId(), ops.get(1).id);
+
+        tracker.markDeltaSent(obstacles);
+        assertTrue(tracker.computeDelta(obstacles).isEmpty());
+    }
+
+    @Test
+    public void forcesPeriodicFullSnapshot() {
+        List<Obstacle> obstacles = new ArrayList<>();
+        tracker.markFullSnapshotSent(obstacles);
+        for (int i = 0; i < ObstacleSyncTracker.FULL_SNAPSHOT_INTERVAL; i++) {
+            assertFalse(tracker.needsFullSnapshot());
+            tracker.markDeltaSent(obstacles);
+        }
+        assertTrue(tracker.needsFullSnapshot());
+        assertEquals(ObstacleSyncTracker.FULL_SNAPSHOT_INTERVAL + 1, tracker.getVersion());
+    }
+}
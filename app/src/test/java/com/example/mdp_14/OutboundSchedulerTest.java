@@ -0,0 +1,68 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local unit tests for {@link OutboundScheduler} and {@link TokenBucket}.
+ */
+public class OutboundSchedulerTest {
+    private final OutboundScheduler<String> scheduler = new OutboundScheduler<>();
+
+    @Before
+    public void setUp() {
+        scheduler.useDefaultRateLimits();
+    }
+
+    @Test
+    public void controlOvertakesBacklog() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            scheduler.offer("obstacles" + i, OutboundScheduler.PRIORITY_ARENA);
+            scheduler.offer("move" + i, OutboundScheduler.PRIORITY_MOTION);
+        }
+        scheduler.offer("stop", OutboundScheduler.PRIORITY_CONTROL);
+
+        assertEquals("stop", scheduler.take());
+        assertEquals("move0", scheduler.take());
+    }
+
+    @Test
+    public void rateLimitsLowerLanes() throws InterruptedException {
+        scheduler.setRateLimit(OutboundScheduler.PRIORITY_ARENA, new TokenBucket(10, 2));
+        for (int i = 0; i < 3; i++) {
+            scheduler.offer("obstacles" + i, OutboundScheduler.PRIORITY_ARENA);
+        }
+
+        // Burst of two, then the third waits for a token (100 ms at 10/s)
+        assertEquals("obstacles0", scheduler.poll());
+        assertEquals("obstacles1", scheduler.poll());
+        assertNull(scheduler.poll());
+
+        long start = System.nanoTime();
+        assertEquals("obstacles2", scheduler.take());
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("waited " + waitedMs + " ms", waitedMs >= 50);
+    }
+
+    @Test
+    public void controlIsNeverThrottled() {
+        for (int i = 0; i < 100; i++) {
+            scheduler.offer("stop" + i, OutboundScheduler.PRIORITY_CONTROL);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("stop" + i, scheduler.poll());
+        }
+    }
+
+    @Test
+    public void pollTimesOutWhenEmpty() throws InterruptedException {
+        assertNull(scheduler.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, scheduler.size());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link PipelineMetrics}.
+ */
+public class PipelineMetricsTest {
+    private static final long FRAME = PipelineMetrics.DEFAULT_FRAME_INTERVAL_NANOS;
+
+    @Test
+    public void countsFramesMissedInGaps() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        long t = 1_000_000_000L;
+
+        metrics.onUiFrame(t);
+        metrics.onUiFrame(t += FRAME);
+        metrics.onUiFrame(t += FRAME + FRAME / 3); // late, but not a whole frame
+        metrics.onUiFrame(t += 3 * FRAME);         // two frames missed
+
+        assertEquals(4, metrics.getUiFrames());
+        assertEquals(2, metrics.getDroppedFrames());
+    }
+
+    @Test
+    public void recordsDispatchLatency() {
+        PipelineMetrics metrics = new PipelineMetrics();
+
+        metrics.onFrameReceived();
+        metrics.onEventApplied(System.nanoTime() - 5_000_000L);
+
+        assertEquals(1, metrics.getFramesReceived());
+        assertEquals(1, metrics.getEventsApplied());
+        assertEquals(5, metrics.getDispatchLatency().getPercentileMs(50));
+
+        metrics.reset();
+        assertEquals(0, metrics.getEventsApplied());
+        assertEquals(0, metrics.getDispatchLatency().getCount());
+    }
+
+    @Test
+    public void timesParsingOnlyWhenDetailed() {
+        PipelineMetrics metrics = new PipelineMetrics();
+
+        metrics.onMessageParsed(PipelineMetrics.CATEGORY_STATUS, metrics.startParse());
+        assertEquals(1, metrics.getMessages(PipelineMetrics.CATEGORY_STATUS));
+        assertEquals(0, metrics.getMessagesTimed());
+
+        metrics.setDetailedTiming(true);
+        long start = metrics.startParse();
+        assertTrue(start != 0);
+        metrics.onMessageParsed(PipelineMetrics.CATEGORY_LOCATION, start);
+        assertEquals(1, metrics.getMessages(PipelineMetrics.CATEGORY_LOCATION));
+        assertEquals(1, metrics.getMessagesTimed());
+        assertTrue(metrics.takeMaxParseNanos() >= 0);
+        assertEquals(0, metrics.takeMaxParseNanos());
+    }
+}
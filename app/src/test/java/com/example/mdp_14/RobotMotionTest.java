@@ -0,0 +1,102 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link RobotMotion}.
+ */
+public class RobotMotionTest {
+    private static final long MS = 1_000_000L;
+    private static final float EPSILON = 0.001f;
+
+    @Test
+    public void easesTowardsEachPoseOverTheUpdateInterval() {
+        RobotMotion motion = new RobotMotion();
+        motion.onPose(5, 5, 0, 0);
+        motion.onPose(6, 5, 0, 100 * MS);
+
+        assertTrue(motion.sample(150 * MS));
+        assertEquals(5.5f, motion.getX(), EPSILON);
+        assertEquals(5f, motion.getY(), EPSILON);
+
+        assertFalse(motion.sample(200 * MS));
+        assertEquals(6f, motion.getX(), EPSILON);
+    }
+
+    @Test
+    public void turnsTheShortWayRound() {
+        RobotMotion motion = new RobotMotion();
+        motion.onPose(5, 5, 0, 0);
+        motion.onPose(5, 5, 270, 100 * MS);
+
+        motion.sample(150 * MS);
+        assertEquals(315f, motion.getHeading(), EPSILON);
+    }
+
+    @Test
+    public void snapsLargeJumps() {
+        RobotMotion motion = new RobotMotion();
+        motion.onPose(1, 1, 0, 0);
+        motion.onPose(10, 10, 90, 100 * MS);
+
+        assertFalse(motion.sample(101 * MS));
+        assertEquals(10f, motion.getX(), EPSILON);
+        assertEquals(10f, motion.getY(), EPSILON);
+        assertEquals(90f, motion.getHeading(), EPSILON);
+    }
+
+    @Test
+    public void deadReckoningExtrapolatesBrieflyThenHolds() {
+        RobotMotion motion = new RobotMotion();
+        motion.setDeadReckoning(true);
+        motion.setMaxPosition(17);
+        motion.onPose(5, 5, 0, 0);
+        motion.onPose(5, 6, 0, 100 * MS);
+
+        // Snapped to the authoritative pose, then moving at one cell per 100 ms
+        assertTrue(motion.sample(100 * MS));
+        assertEquals(6f, motion.getY(), EPSILON);
+        motion.sample(150 * MS);
+        assertEquals(6.5f, motion.getY(), EPSILON);
+
+        // Stops after one and a half update intervals
+        assertFalse(motion.sample(1000 * MS));
+        assertEquals(7.5f, motion.getY(), EPSILON);
+
+        // The next pose corrects the overshoot immediately
+        motion.onPose(5, 7, 0, 1050 * MS);
+        motion.sample(1050 * MS);
+        assertEquals(7f, motion.getY(), EPSILON);
+    }
+
+    @Test
+    public void deadReckoningStaysInsideTheArena() {
+        RobotMotion motion = new RobotMotion();
+        motion.setDeadReckoning(true);
+        motion.setMaxPosition(17);
+        motion.onPose(5, 16, 0, 0);
+        motion.onPose(5, 17, 0, 100 * MS);
+
+        motion.sample(200 * MS);
+        assertEquals(17f, motion.getY(), EPSILON);
+    }
+
+    @Test
+    public void copiesSampleIndependently() {
+        RobotMotion motion = new RobotMotion();
+        motion.onPose(5, 5, 0, 0);
+        motion.onPose(6, 5, 0, 100 * MS);
+
+        RobotMotion copy = new RobotMotion();
+        copy.copyFrom(motion);
+        assertTrue(copy.sample(150 * MS));
+        assertEquals(5.5f, copy.getX(), EPSILON);
+
+        // The original hasn't been sampled since the first pose
+        assertEquals(5f, motion.getX(), EPSILON);
+    }
+}
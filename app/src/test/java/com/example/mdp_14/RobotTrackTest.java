@@ -0,0 +1,95 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link RobotTrack}.
+ */
+public class RobotTrackTest {
+
+    @Test
+    public void countsVisitsUnderTheFootprint() {
+        RobotTrack track = new RobotTrack(20, 16);
+        track.record(0, 0);
+        track.record(1, 0);
+
+        assertEquals(1, track.getVisits(0, 0));
+        assertEquals(2, track.getVisits(1, 2));
+        assertEquals(2, track.getVisits(2, 2));
+        assertEquals(1, track.getVisits(3, 0));
+        assertEquals(0, track.getVisits(0, 3));
+        assertEquals(2, track.getMaxVisits());
+    }
+
+    @Test
+    public void ignoresRepeatedPoses() {
+        RobotTrack track = new RobotTrack(20, 16);
+        assertTrue(track.record(4, 4));
+        assertFalse(track.record(4, 4));
+
+        assertEquals(1, track.getVisits(4, 4));
+        assertEquals(1, track.getTrailLength());
+    }
+
+    @Test
+    public void trailKeepsTheNewestPositions() {
+        RobotTrack track = new RobotTrack(20, 3);
+        for (int x = 0; x < 5; x++) {
+            track.record(x, 1);
+        }
+
+        assertEquals(3, track.getTrailLength());
+        assertEquals(2, track.getTrailX(0));
+        assertEquals(4, track.getTrailX(2));
+        assertEquals(1, track.getTrailY(2));
+        // Visits are kept for the whole run
+        assertEquals(1, track.getVisits(0, 1));
+    }
+
+    @Test
+    public void clipsFootprintAtTheEdge() {
+        RobotTrack track = new RobotTrack(5, 4);
+        track.record(4, 4);
+
+        assertEquals(1, track.getVisits(4, 4));
+        assertEquals(0, track.getVisits(5, 5));
+
+        track.clear();
+        assertEquals(0, track.getVisits(4, 4));
+        assertEquals(0, track.getTrailLength());
+    }
+
+    @Test
+    public void copiesTheTrailInOrderAcrossTheWrap() {
+        RobotTrack track = new RobotTrack(20, 3);
+        for (int x = 0; x < 5; x++) {
+            track.record(x, 1);
+        }
+
+        int[] xs = new int[3];
+        int[] ys = new int[3];
+        assertEquals(3, track.copyTrail(xs, ys));
+        assertEquals(2, xs[0]);
+        assertEquals(3, xs[1]);
+        assertEquals(4, xs[2]);
+        assertEquals(1, ys[2]);
+    }
+
+    @Test
+    public void countsRecordsUntilCleared() {
+        RobotTrack track = new RobotTrack(20, 3);
+        track.record(1, 1);
+        track.record(1, 1);
+        track.record(2, 1);
+        assertEquals(2, track.getRecordCount());
+
+        int generation = track.getGeneration();
+        track.clear();
+        assertEquals(0, track.getRecordCount());
+        assertEquals(generation + 1, track.getGeneration());
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Local unit tests for {@link SessionResume}, {@link JsonScanner} and {@link Backoff}.
+ */
+public class SessionResumeTest {
+    private SessionResume resume;
+
+    @Before
+    public void setUp() {
+        resume = new SessionResume();
+        resume.setEnabled(true);
+    }
+
+    /**
+     * Queue, sequence and write a text message, as the writer thread would
+     */
+    private SessionResume.Entry send(String message, long nowNanos) {
+        SessionResume.Entry entry = resume.queueText(message, OutboundScheduler.PRIORITY_ARENA);
+        resume.sequence(entry);
+        resume.markWritten(entry, nowNanos);
+        return entry;
+    }
+
+    @Test
+    public void stampsJsonWithSequenceWhenWritten() {
+        SessionResume.Entry entry = resume.queueText("{\"cat\": \"control\", \"value\": \"start\"}",
+                OutboundScheduler.PRIORITY_CONTROL);
+
+        assertNotNull(entry);
+        assertEquals(0, entry.getSeq());
+        assertEquals(1, resume.getPendingCount());
+
+        String text = new String(resume.sequence(entry), StandardCharsets.UTF_8);
+        assertEquals(1, entry.getSeq());
+        assertEquals("{\"seq\": 1, \"cat\": \"control\", \"value\": \"start\"}\n", text);
+        assertEquals(0, resume.getPendingCount());
+        assertEquals(1, resume.getUnackedCount());
+    }
+
+    @Test
+    public void numbersFollowWriteOrderNotQueueOrder() {
+        SessionResume.Entry arena = resume.queueText("{\"cat\": \"obstacles\"}", OutboundScheduler.PRIORITY_ARENA);
+        SessionResume.Entry stop = resume.queueFrame(BinaryCodec.encodeControl("stop"), "stop",
+                OutboundScheduler.PRIORITY_CONTROL);
+
+        // The control lane overtakes the arena lane
+        resume.sequence(stop);
+        resume.sequence(arena);
+
+        assertEquals(1, stop.getSeq());
+        assertEquals(2, arena.getSeq());
+        assertEquals("#1 stop", stop.getLabel());
+    }
+
+    @Test
+    public void plainTextIsNotSequenced() {
+        assertNull(resume.queueText("move:up", OutboundScheduler.PRIORITY_ARENA));
+        assertEquals(0, resume.getLastSequence());
+    }
+
+    @Test
+    public void ackReleasesBufferedMessages() {
+        send("{\"a\": 1}", 1);
+        SessionResume.Entry second = send("{\"a\": 2}", 1);
+        send("{\"a\": 3}", 1);
+
+        assertTrue(resume.acknowledge(2));
+
+        assertEquals(1, resume.getUnackedCount());
+        assertEquals(2, resume.getLastAcked());
+        assertTrue(resume.isAcknowledged(second));
+        assertNull(resume.sequence(second));
+        // A repeated ack releases nothing new
+        assertFalse(resume.acknowledge(2));
+    }
+
+    @Test
+    public void replaysUnackedThenUnsequenced() {
+        send("{\"a\": 1}", 1);
+        send("{\"a\": 2}", 1);
+        SessionResume.Entry stop = resume.queueFrame(BinaryCodec.encodeControl("stop"), "stop",
+                OutboundScheduler.PRIORITY_CONTROL);
+        resume.sequence(stop);
+        SessionResume.Entry queued = resume.queueText("{\"a\": 4}", OutboundScheduler.PRIORITY_ARENA);
+
+        List<SessionResume.Entry> replay = resume.replayAfter(1);
+
+        assertNotNull(replay);
+        assertEquals(3, replay.size());
+        assertEquals(2, replay.get(0).getSeq());
+        assertEquals(3, replay.get(1).getSeq());
+        assertEquals(queued, replay.get(2));
+        assertEquals(0, queued.getSeq());
+    }
+
+    @Test
+    public void clearKeepsMessagesNotYetSequenced() {
+        send("{\"a\": 1}", 1);
+        SessionResume.Entry held = resume.queueText("{\"a\": 2}", OutboundScheduler.PRIORITY_ARENA);
+
+        resume.clear();
+
+        assertEquals(0, resume.getUnackedCount());
+        assertEquals(1, resume.getPendingCount());
+        assertEquals(held, resume.getPending().get(0));
+        assertNotNull(resume.sequence(held));
+        assertEquals(2, held.getSeq());
+    }
+
+    @Test
+    public void cannotResumeAfterEviction() {
+        for (int i = 0; i < SessionResume.MAX_ENTRIES + 10; i++) {
+            send("{\"i\": " + i + "}", 1);
+        }
+
+        assertNull(resume.replayAfter(0));
+        assertNotNull(resume.replayAfter(SessionResume.MAX_ENTRIES));
+    }
+
+    @Test
+    public void sequencedFrameDecodesWrappedMessage() {
+        SessionResume.Entry entry = resume.queueFrame(BinaryCodec.encodeLocation(3, 4, 2), "loc",
+                OutboundScheduler.PRIORITY_MOTION);
+        byte[] data = resume.sequence(entry);
+        final long[] seen = new long[4];
+
+        boolean ok = BinaryCodec.decode(data, 0, data.length, new BinaryCodec.Listener() {
+            @Override
+            public void onSequence(long seq) {
+                seen[0] = seq;
+            }
+
+            @Override
+            public void onLocation(int x, int y, int d) {
+                seen[1] = x;
+                seen[2] = y;
+                seen[3] = d;
+            }
+        });
+
+        assertTrue(ok);
+        assertEquals(1, seen[0]);
+        assertEquals(3, seen[1]);
+        assertEquals(4, seen[2]);
+        assertEquals(2, seen[3]);
+    }
+
+    @Test
+    public void retransmitsOverdueMessagesWithBackoff() {
+        long sent = 1000;
+        SessionResume.Entry entry = send("{\"a\": 1}", sent);
+        long timeout = 100;
+
+        assertTrue(resume.collectRetries(sent + 99, timeout, 1000).isEmpty());
+        assertEquals(1, resume.collectRetries(sent + 100, timeout, 1000).size());
+
+        // Not due again until the resend has actually been written
+        assertTrue(resume.collectRetries(sent + 10_000, timeout, 1000).isEmpty());
+        long resent = sent + 500;
+        resume.markWritten(entry, resent);
+        assertEquals(2, entry.attempts);
+
+        // Second retry waits twice as long
+        assertTrue(resume.collectRetries(resent + 199, timeout, 1000).isEmpty());
+        assertEquals(1, resume.collectRetries(resent + 200, timeout, 1000).size());
+
+        resume.acknowledge(entry.getSeq());
+        assertTrue(resume.isAcknowledged(entry));
+        assertTrue(resume.collectRetries(resent + 10_000, timeout, 1000).isEmpty());
+    }
+
+    @Test
+    public void queuedMessagesAreNotRetried() {
+        SessionResume.Entry entry = resume.queueText("{\"a\": 1}", OutboundScheduler.PRIORITY_ARENA);
+        resume.sequence(entry);
+
+        // Sequenced but still waiting behind paced traffic: no timeout runs yet
+        assertTrue(resume.collectRetries(Long.MAX_VALUE / 2, 100, 1000).isEmpty());
+    }
+
+    @Test
+    public void recordsAckLatencyOnlyForFirstAttempts() {
+        SessionResume.Entry retried = send("{\"a\": 1}", System.nanoTime());
+        resume.collectRetries(retried.sentAtNanos + 1000, 1, 1000);
+        resume.markWritten(retried, System.nanoTime());
+        send("{\"a\": 2}", System.nanoTime());
+
+        resume.acknowledge(2);
+
+        assertEquals(1, resume.getAckLatency().getCount());
+    }
+
+    @Test
+    public void scannerReadsAckFields() {
+        byte[] frame = "{\"cat\": \"ack\", \"value\": {\"seq\": 42}}".getBytes(StandardCharsets.UTF_8);
+        String[] categories = {"status", "ack"};
+
+        assertEquals(1, JsonScanner.category(frame, 0, frame.length, categories));
+        assertEquals(42, JsonScanner.longField(frame, 0, frame.length, JsonScanner.key("seq")));
+        assertEquals(JsonScanner.MISSING, JsonScanner.longField(frame, 0, frame.length, JsonScanner.key("x")));
+    }
+
+    @Test
+    public void backoffDoublesUpToCap() {
+        Backoff backoff = new Backoff(25, 100);
+
+        assertEquals(25, backoff.nextDelay());
+        assertEquals(50, backoff.nextDelay());
+        assertEquals(100, backoff.nextDelay());
+        assertEquals(100, backoff.nextDelay());
+
+        backoff.reset();
+        assertEquals(25, backoff.nextDelay());
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local unit tests running {@link StandInRobot} in-process over a loopback link.
+ */
+public class StandInRobotTest {
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+    private StandInRobot robot;
+    private LinkSession app;
+
+    @Before
+    public void setUp() throws IOException {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        robot = new StandInRobot(true);
+        robot.connect(pair[1]);
+        app = new LinkSession(pair[0], new LinkSession.Listener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(new String(buffer, offset, length, StandardCharsets.ISO_8859_1));
+            }
+
+            @Override
+            public void onSent(String label) {}
+
+            @Override
+            public void onSendFailed(String label, IOException e) {}
+
+            @Override
+            public void onClosed(IOException cause) {}
+        });
+        app.start();
+    }
+
+    @After
+    public void tearDown() {
+        robot.close();
+        app.close();
+    }
+
+    @Test
+    public void answersHandshakeWithBinaryCodec() throws Exception {
+        app.send("{\"cat\": \"hello\", \"value\": {\"codecs\": [\"json\", \"bin1\"], \"features\": [\"resume\"], "
+                + "\"session\": \"abc\", \"last_seq\": 0}}");
+
+        String reply = awaitFrameContaining("\"hello\"");
+        assertTrue(reply.contains("\"codec\": \"bin1\""));
+        assertTrue(reply.contains("\"resume\"]"));
+    }
+
+    @Test
+    public void ignoresRetransmittedMessages() throws Exception {
+        app.send("{\"cat\": \"hello\", \"value\": {\"codecs\": [\"json\"], \"session\": \"abc\", \"last_seq\": 5}}");
+        awaitFrameContaining("\"hello\"");
+
+        String control = "{\"seq\": 6, \"cat\": \"control\", \"value\": \"start\"}";
+        app.send(control);
+        app.send(control);
+        app.send("{\"seq\": 7, \"cat\": \"obstacles\", \"value\": {\"obstacles\": []}}");
+
+        awaitFrameContaining("\"seq\": 7");
+        // The ack goes out just before the message is counted
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (robot.getObstacleMessages() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, robot.getControlMessages());
+        assertEquals(1, robot.getObstacleMessages());
+        assertEquals(1, robot.getDuplicatesIgnored());
+        assertEquals("start", robot.getLastControl());
+    }
+
+    @Test
+    public void offersResumeToKnownSession() throws Exception {
+        app.send("{\"cat\": \"hello\", \"value\": {\"session\": \"abc\", \"last_seq\": 0}}");
+        awaitFrameContaining("\"hello\"");
+        app.send("{\"seq\": 1, \"cat\": \"control\", \"value\": \"stop\"}");
+        awaitFrameContaining("\"ack\"");
+        frames.clear();
+
+        app.send("{\"cat\": \"hello\", \"value\": {\"session\": \"abc\", \"last_seq\": 1}}");
+
+        String reply = awaitFrameContaining("\"hello\"");
+        assertTrue(reply.contains("\"resume\": {\"session\": \"abc\", \"received\": 1}"));
+    }
+
+    @Test
+    public void answersPings() throws Exception {
+        app.send("{\"cat\": \"ping\", \"value\": {\"t\": 12345}}");
+
+        assertEquals("{\"cat\": \"pong\", \"value\": {\"t\": 12345}}", awaitFrameContaining("pong"));
+    }
+
+    @Test
+    public void scriptEmitsBurstsCoalescedAndMalformedFrames() throws Exception {
+        StandInRobot.Phase phase = new StandInRobot.Phase()
+                .rate(2000)
+                .duration(200)
+                .burst(10)
+                .coalesce(5)
+                .malformedEvery(10)
+                .statusEvery(7);
+
+        long emitted = robot.play(phase);
+
+        assertTrue(emitted >= 300);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (frames.size() < emitted && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // Every message, malformed or not, still arrives as exactly one frame
+        assertEquals(emitted, frames.size());
+
+        int locations = 0;
+        int statuses = 0;
+        for (String frame : frames) {
+            if (frame.contains("\"location\"") && !frame.contains("oops")) {
+                locations++;
+            } else if (frame.contains("\"status\"")) {
+                statuses++;
+            }
+        }
+        assertTrue(locations > emitted / 2);
+        assertTrue(statuses > 0);
+    }
+
+    private String awaitFrameContaining(String text) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (String frame : frames) {
+                if (frame.contains(text)) {
+                    return frame;
+                }
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("No frame containing " + text + " in " + frames);
+    }
+}
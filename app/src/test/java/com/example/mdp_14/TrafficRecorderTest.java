@@ -0,0 +1,134 @@
+package com.example.mdp_14;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Local unit tests for {@link TrafficRecorder} and {@link ReplayDriver}.
+ */
+public class TrafficRecorderTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("traffic", ".mdprec");
+        file.deleteOnExit();
+    }
+
+    @Test
+    public void recordingRoundTrips() throws Exception {
+        byte[] location = BinaryCodec.encodeLocation(3, 4, 2);
+        byte[] sent = "{\"cat\": \"control\", \"value\": \"start\"}\n".getBytes(StandardCharsets.UTF_8);
+        byte[] status = "xx{\"cat\": \"status\"}".getBytes(StandardCharsets.UTF_8);
+
+        TrafficRecorder recorder = new TrafficRecorder(file);
+        recorder.onInbound(location, 0, location.length);
+        recorder.onOutbound(sent, 0, sent.length);
+        recorder.onInbound(status, 2, status.length - 2);
+        recorder.close();
+        assertTrue(recorder.awaitClosed(2000));
+
+        assertEquals(3, recorder.getRecordedFrames());
+        assertEquals(0, recorder.getDroppedFrames());
+
+        try (ReplayDriver.Reader reader = new ReplayDriver.Reader(file)) {
+            assertTrue(reader.next());
+            assertEquals(TrafficRecorder.DIRECTION_INBOUND, reader.getDirection());
+            assertArrayEquals(location, reader);
+
+            assertTrue(reader.next());
+            assertEquals(TrafficRecorder.DIRECTION_OUTBOUND, reader.getDirection());
+            assertArrayEquals(sent, reader);
+            long sentAt = reader.getTimestampNanos();
+
+            assertTrue(reader.next());
+            assertArrayEquals(Arrays.copyOfRange(status, 2, status.length), reader);
+            assertTrue(reader.getTimestampNanos() >= sentAt);
+
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void replayDeliversInboundFramesInOrder() throws Exception {
+        TrafficRecorder recorder = new TrafficRecorder(file);
+        for (int i = 0; i < 100; i++) {
+            byte[] frame = ("{\"i\": " + i + "}").getBytes(StandardCharsets.UTF_8);
+            recorder.onInbound(frame, 0, frame.length);
+            recorder.onOutbound(frame, 0, frame.length);
+        }
+        recorder.close();
+        assertTrue(recorder.awaitClosed(2000));
+
+        final List<String> frames = new ArrayList<>();
+        final int[] outbound = new int[1];
+        ReplayDriver driver = new ReplayDriver(file, new LinkSession.Listener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onSent(String label) {}
+
+            @Override
+            public void onSendFailed(String label, IOException e) {}
+
+            @Override
+            public void onClosed(IOException cause) {}
+        });
+        driver.setSpeed(ReplayDriver.SPEED_MAX);
+        driver.setOutboundListener((timestampNanos, buffer, offset, length) -> outbound[0]++);
+
+        assertEquals(100, driver.run());
+        assertEquals(100, frames.size());
+        assertEquals(100, outbound[0]);
+        assertEquals("{\"i\": 0}", frames.get(0));
+        assertEquals("{\"i\": 99}", frames.get(99));
+    }
+
+    @Test
+    public void truncatedTailIsIgnored() throws Exception {
+        byte[] frame = "{\"cat\": \"status\"}".getBytes(StandardCharsets.UTF_8);
+        TrafficRecorder recorder = new TrafficRecorder(file);
+        recorder.onInbound(frame, 0, frame.length);
+        recorder.onInbound(frame, 0, frame.length);
+        recorder.close();
+        assertTrue(recorder.awaitClosed(2000));
+
+        // Cut the last record short, as if the app was killed mid-write
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        try (ReplayDriver.Reader reader = new ReplayDriver.Reader(file)) {
+            assertTrue(reader.next());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write("not a recording".getBytes(StandardCharsets.UTF_8));
+        }
+        new ReplayDriver.Reader(file).close();
+    }
+
+    private static void assertArrayEquals(byte[] expected, ReplayDriver.Reader reader) {
+        assertEquals(expected.length, reader.getLength());
+        assertTrue(Arrays.equals(expected, Arrays.copyOf(reader.getData(), reader.getLength())));
+    }
+}
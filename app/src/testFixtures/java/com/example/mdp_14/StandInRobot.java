@@ -0,0 +1,465 @@
+package com.example.mdp_14;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Speaks the robot's side of the protocol without a robot, for load testing the
+ * app's inbound pipeline. Runs in-process, usually over a {@link LoopbackTransport},
+ * from the unit tests and the instrumented benchmark.
+ *
+ * Towards the app it behaves like the real robot: answers the capability handshake
+ * (optionally picking {@link BinaryCodec}), acknowledges sequenced messages and
+ * ignores duplicates, echoes pings, and counts the obstacles and control messages it
+ * receives. Telemetry is driven by a script of {@link Phase}s, each emitting
+ * location, status and image-rec messages at a given rate, in bursts, coalesced
+ * several to a write, and with malformed frames mixed in.
+ */
+public class StandInRobot implements LinkSession.Listener {
+    public static final int GRID_SIZE = 20;
+
+    // Indices into APP_CATEGORIES, as returned by JsonScanner.category
+    private static final String[] APP_CATEGORIES =
+            {"hello", "ping", "control", "obstacles", "obstacles-delta"};
+    private static final int CAT_HELLO = 0;
+    private static final int CAT_PING = 1;
+    private static final int CAT_CONTROL = 2;
+    private static final int CAT_OBSTACLES = 3;
+    private static final int CAT_OBSTACLES_DELTA = 4;
+    private static final byte[] KEY_SEQ = JsonScanner.key("seq");
+    private static final byte[] KEY_T = JsonScanner.key("t");
+    private static final byte[] KEY_VALUE = JsonScanner.key("value");
+    private static final byte[] KEY_SESSION = JsonScanner.key("session");
+    private static final byte[] KEY_LAST_SEQ = JsonScanner.key("last_seq");
+    private static final byte[] CODEC_OFFER = ("\"" + BinaryCodec.NAME + "\"").getBytes(StandardCharsets.US_ASCII);
+
+    private static final String[] IMAGE_IDS = {"11", "12", "13", "20", "21", "30", "38", "39", "40"};
+
+    /**
+     * One step of a telemetry script. Setters return this so phases read as a script:
+     * {@code new Phase().duration(2000).rate(500).burst(10).coalesce(4).malformedEvery(100)}
+     */
+    public static final class Phase {
+        long durationMs = 1000;
+        double rateHz = 10;
+        int burst = 1;
+        int coalesce = 1;
+        int malformedEvery = 0;
+        int statusEvery = 0;
+        int imageRecEvery = 0;
+
+        /** How long the phase lasts */
+        public Phase duration(long durationMs) {
+            this.durationMs = durationMs;
+            return this;
+        }
+
+        /** Messages per second, averaged over bursts */
+        public Phase rate(double rateHz) {
+            if (rateHz <= 0) {
+                throw new IllegalArgumentException("rate must be positive");
+            }
+            this.rateHz = rateHz;
+            return this;
+        }
+
+        /** Messages emitted back to back per tick */
+        public Phase burst(int burst) {
+            this.burst = Math.max(1, burst);
+            return this;
+        }
+
+        /** Messages packed into each write, so the app sees them coalesced */
+        public Phase coalesce(int coalesce) {
+            this.coalesce = Math.max(1, coalesce);
+            return this;
+        }
+
+        /** Replace every n-th message with a malformed frame; 0 for never */
+        public Phase malformedEvery(int n) {
+            this.malformedEvery = n;
+            return this;
+        }
+
+        /** Make every n-th message a status update; 0 for never */
+        public Phase statusEvery(int n) {
+            this.statusEvery = n;
+            return this;
+        }
+
+        /** Make every n-th message an image recognition; 0 for never */
+        public Phase imageRecEvery(int n) {
+            this.imageRecEvery = n;
+            return this;
+        }
+    }
+
+    private final boolean preferBinary;
+    private volatile LinkSession session;
+    private volatile boolean binary = false;
+    private volatile boolean stopped = false;
+    private Thread scriptThread;
+
+    // Session resume state survives reconnects, like on the robot
+    private String resumeSession;
+    private long lastReceived = 0;
+
+    // Telemetry generator state
+    private long emitted = 0;
+    private int step = 0;
+
+    private final AtomicLong obstacleMessages = new AtomicLong();
+    private final AtomicLong controlMessages = new AtomicLong();
+    private final AtomicLong duplicatesIgnored = new AtomicLong();
+    private final AtomicLong pingsAnswered = new AtomicLong();
+    private final AtomicLong messagesEmitted = new AtomicLong();
+    private volatile String lastControl;
+
+    /**
+     * @param preferBinary pick {@link BinaryCodec} if the app offers it
+     */
+    public StandInRobot(boolean preferBinary) {
+        this.preferBinary = preferBinary;
+    }
+
+    /**
+     * Start talking to the app over transport, replacing any previous connection
+     */
+    public void connect(Transport transport) throws IOException {
+        LinkSession previous = session;
+        if (previous != null) {
+            previous.close();
+        }
+        binary = false;
+        stopped = false;
+        LinkSession next = new LinkSession(transport, this);
+        session = next;
+        next.start();
+    }
+
+    public boolean isConnected() {
+        LinkSession current = session;
+        return current != null && !current.isClosed();
+    }
+
+    /**
+     * Play phases on the calling thread. Returns the number of messages emitted.
+     */
+    public long play(Phase... phases) throws InterruptedException {
+        long before = messagesEmitted.get();
+        for (Phase phase : phases) {
+            if (stopped) {
+                break;
+            }
+            playPhase(phase);
+        }
+        return messagesEmitted.get() - before;
+    }
+
+    /**
+     * Play phases on a background thread
+     */
+    public synchronized void start(final Phase... phases) {
+        stop();
+        stopped = false;
+        scriptThread = new Thread(() -> {
+            try {
+                play(phases);
+            } catch (InterruptedException ignored) {
+                // Stopped
+            }
+        }, "StandInRobot");
+        scriptThread.setDaemon(true);
+        scriptThread.start();
+    }
+
+    /**
+     * Stop the script, if any. The connection stays open.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (scriptThread != null) {
+            scriptThread.interrupt();
+            scriptThread = null;
+        }
+    }
+
+    public void close() {
+        stop();
+        LinkSession current = session;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    public long getObstacleMessages() {
+        return obstacleMessages.get();
+    }
+
+    public long getControlMessages() {
+        return controlMessages.get();
+    }
+
+    /** Retransmitted messages that were acknowledged again but not processed twice */
+    public long getDuplicatesIgnored() {
+        return duplicatesIgnored.get();
+    }
+
+    public long getPingsAnswered() {
+        return pingsAnswered.get();
+    }
+
+    public long getMessagesEmitted() {
+        return messagesEmitted.get();
+    }
+
+    /** Last control value received ("start" / "stop"), or null */
+    public String getLastControl() {
+        return lastControl;
+    }
+
+    // ============================================================
+    // INBOUND (from the app)
+    // ============================================================
+
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length) {
+        if (BinaryCodec.isBinaryFrame(buffer, offset, length)) {
+            onBinaryFrame(buffer, offset, length);
+            return;
+        }
+
+        int category = JsonScanner.category(buffer, offset, length, APP_CATEGORIES);
+        if (category == CAT_HELLO) {
+            onHello(buffer, offset, length);
+            return;
+        }
+        if (category == CAT_PING) {
+            long t = JsonScanner.longField(buffer, offset, length, KEY_T);
+            if (t != JsonScanner.MISSING) {
+                pingsAnswered.incrementAndGet();
+                sendText("{\"cat\": \"pong\", \"value\": {\"t\": " + t + "}}");
+            }
+            return;
+        }
+
+        long seq = JsonScanner.longField(buffer, offset, length, KEY_SEQ);
+        if (seq != JsonScanner.MISSING && !accept(seq)) {
+            return;
+        }
+
+        if (category == CAT_OBSTACLES || category == CAT_OBSTACLES_DELTA) {
+            obstacleMessages.incrementAndGet();
+        } else if (category == CAT_CONTROL) {
+            controlMessages.incrementAndGet();
+            lastControl = JsonScanner.stringField(buffer, offset, length, KEY_VALUE);
+        }
+        // Anything else (plain-text motion commands, unknown categories) is ignored
+    }
+
+    private void onBinaryFrame(byte[] buffer, int offset, int length) {
+        final long[] seq = {JsonScanner.MISSING};
+        final BinaryCodec.Listener sequence = new BinaryCodec.Listener() {
+            @Override
+            public void onSequence(long value) {
+                seq[0] = value;
+            }
+        };
+        // First pass only reads the envelope, so duplicates are not processed
+        BinaryCodec.decode(buffer, offset, length, sequence);
+        if (seq[0] != JsonScanner.MISSING && !accept(seq[0])) {
+            return;
+        }
+
+        BinaryCodec.decode(buffer, offset, length, new BinaryCodec.Listener() {
+            @Override
+            public void onObstacles(long version, int count, int[] ids, int[] xs, int[] ys, int[] ds) {
+                obstacleMessages.incrementAndGet();
+            }
+
+            @Override
+            public void onControl(String value) {
+                controlMessages.incrementAndGet();
+                lastControl = value;
+            }
+        });
+    }
+
+    /**
+     * Acknowledge a sequenced message. Returns true if it is new and should be processed.
+     * Acks are cumulative, so anything after a gap is dropped and re-sent by the app.
+     */
+    private boolean accept(long seq) {
+        long ack;
+        boolean fresh;
+        synchronized (this) {
+            fresh = seq == lastReceived + 1;
+            if (fresh) {
+                lastReceived = seq;
+            } else {
+                duplicatesIgnored.incrementAndGet();
+            }
+            ack = lastReceived;
+        }
+        if (ack > 0) {
+            sendText("{\"cat\": \"ack\", \"value\": {\"seq\": " + ack + "}}");
+        }
+        return fresh;
+    }
+
+    /**
+     * Reply with our codec choice, resume support and what we hold for the app's session
+     */
+    private void onHello(byte[] buffer, int offset, int length) {
+        boolean useBinary = preferBinary && indexOf(buffer, offset, length, CODEC_OFFER) >= 0;
+        String session = JsonScanner.stringField(buffer, offset, length, KEY_SESSION);
+        long lastSeq = JsonScanner.longField(buffer, offset, length, KEY_LAST_SEQ);
+
+        String resume = "";
+        synchronized (this) {
+            if (session != null && session.equals(resumeSession)) {
+                resume = ", \"resume\": {\"session\": \"" + session + "\", \"received\": " + lastReceived + "}";
+            } else {
+                // A session we don't know: the app abandons what it sent before and
+                // carries on numbering after last_seq
+                resumeSession = session;
+                lastReceived = lastSeq != JsonScanner.MISSING ? lastSeq : 0;
+            }
+        }
+
+        sendText("{\"cat\": \"hello\", \"value\": {\"codec\": \""
+                + (useBinary ? BinaryCodec.NAME : "json") + "\", \"features\": [\"resume\"]" + resume + "}}");
+        binary = useBinary;
+    }
+
+    @Override
+    public void onSent(String label) {}
+
+    @Override
+    public void onSendFailed(String label, IOException e) {}
+
+    @Override
+    public void onClosed(IOException cause) {
+        stop();
+    }
+
+    // ============================================================
+    // OUTBOUND (telemetry script)
+    // ============================================================
+
+    private void playPhase(Phase phase) throws InterruptedException {
+        long tickNanos = (long) (TimeUnit.SECONDS.toNanos(1) * phase.burst / phase.rateHz);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(phase.durationMs);
+        long nextTick = start;
+
+        while (!stopped && nextTick < end) {
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            int remaining = phase.burst;
+            while (remaining > 0) {
+                int count = Math.min(remaining, phase.coalesce);
+                emit(phase, count);
+                remaining -= count;
+            }
+            nextTick += tickNanos;
+        }
+    }
+
+    /**
+     * Emit count messages in a single write
+     */
+    private void emit(Phase phase, int count) {
+        LinkSession current = session;
+        if (current == null) {
+            return;
+        }
+
+        byte[][] messages = new byte[count][];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            messages[i] = nextMessage(phase);
+            total += messages[i].length;
+        }
+        byte[] write = new byte[total];
+        int pos = 0;
+        for (byte[] message : messages) {
+            System.arraycopy(message, 0, write, pos, message.length);
+            pos += message.length;
+        }
+
+        current.sendFrame(write, null, OutboundScheduler.PRIORITY_ARENA);
+        messagesEmitted.addAndGet(count);
+    }
+
+    private byte[] nextMessage(Phase phase) {
+        long n = ++emitted;
+        if (phase.malformedEvery > 0 && n % phase.malformedEvery == 0) {
+            return malformed(n);
+        }
+        if (phase.imageRecEvery > 0 && n % phase.imageRecEvery == 0) {
+            String imageId = IMAGE_IDS[(int) (n % IMAGE_IDS.length)];
+            int obstacleId = (int) (n % 8) + 1;
+            return binary ? BinaryCodec.encodeImageRec(imageId, obstacleId)
+                    : text("{\"cat\": \"image-rec\", \"value\": {\"image_id\": \"" + imageId
+                            + "\", \"obstacle_id\": " + obstacleId + "}}");
+        }
+        if (phase.statusEvery > 0 && n % phase.statusEvery == 0) {
+            String status = "moving " + n;
+            return binary ? BinaryCodec.encodeStatus(status)
+                    : text("{\"cat\": \"status\", \"value\": {\"robot_status\": \"" + status + "\"}}");
+        }
+
+        // Sweep the arena row by row, turning at each end
+        step = (step + 1) % (GRID_SIZE * GRID_SIZE);
+        int y = step / GRID_SIZE;
+        int x = y % 2 == 0 ? step % GRID_SIZE : GRID_SIZE - 1 - step % GRID_SIZE;
+        int d = (y % 2 == 0 ? Robot.Direction.EAST : Robot.Direction.WEST).getNumeric();
+        return binary ? BinaryCodec.encodeLocation(x, y, d)
+                : text("{\"cat\": \"location\", \"value\": {\"x\": " + x + ", \"y\": " + y + ", \"d\": " + d + "}}");
+    }
+
+    /**
+     * Frames the app must survive: invalid JSON, stray text and unknown binary categories
+     */
+    private static byte[] malformed(long n) {
+        switch ((int) (n % 3)) {
+            case 0:
+                return text("{\"cat\": \"location\", \"value\": {\"x\": oops, \"y\": }}");
+            case 1:
+                return text("@@ line noise " + n + " @@");
+            default:
+                return new byte[]{BinaryCodec.MAGIC, 0, 2, (byte) 0x7F, 0};
+        }
+    }
+
+    private void sendText(String message) {
+        LinkSession current = session;
+        if (current != null) {
+            current.sendFrame(text(message), null, OutboundScheduler.PRIORITY_CONTROL);
+        }
+    }
+
+    private static byte[] text(String message) {
+        return (message + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] buffer, int offset, int length, byte[] needle) {
+        int last = offset + length - needle.length;
+        outer:
+        for (int i = offset; i <= last; i++) {
+            for (int k = 0; k < needle.length; k++) {
+                if (buffer[i + k] != needle[k]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}